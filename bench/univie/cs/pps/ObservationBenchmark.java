@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps;
+
+import java.io.PrintStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the observations of {@link PPSSetup} over the {@link NodeRegistry}
+ * of N nodes, printing the one-line statistics to a discarding stream. Each
+ * observation includes the pass over all nodes for the error quantiles.
+ * <ul>
+ * <li>{@code observe}: an observation without any changes since the last one.</li>
+ * <li>{@code publishAndObserve}: all nodes publish a new state, as after a
+ * step, followed by an observation.</li>
+ * <li>{@code rebuild}: an observation with a pass over all nodes, as done when
+ * the incremental statistics are not accurate any more.</li>
+ * </ul>
+ * This class is in the package of {@link NodeRegistry}, to register and
+ * publish nodes without creating {@link PastryPushSum} applications.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObservationBenchmark
+{
+	@Param({ "100", "10000", "100000" })
+	public int nodes;
+
+	private NodeRegistry registry;
+	private ObservationPrinter printer;
+	private double[] trueValues;
+	private boolean halved;
+
+	@Setup(Level.Trial)
+	public void register()
+	{
+		Random random = new Random(1);
+
+		registry = new NodeRegistry();
+		printer = new ObservationPrinter(new PrintStream(NullOutputStream.NULL_OUTPUT_STREAM));
+		trueValues = new double[nodes];
+
+		for (int i = 0; i < nodes; i++)
+		{
+			trueValues[i] = random.nextGaussian() + 2;
+			registry.publish(registry.register(null), true, trueValues[i], trueValues[i], 1., trueValues[i]);
+		}
+	}
+
+	@Benchmark
+	public void observe()
+	{
+		print(registry.getStatistics());
+	}
+
+	@Benchmark
+	public void publishAndObserve()
+	{
+		// alternate between two states with the same estimates
+		double weight = halved ? 1. : .5;
+		halved = !halved;
+
+		for (int i = 0; i < nodes; i++)
+		{
+			registry.publish(i, true, trueValues[i], trueValues[i] * weight, weight, trueValues[i]);
+		}
+
+		print(registry.getStatistics());
+	}
+
+	@Benchmark
+	public void rebuild()
+	{
+		PushSumStatistics statistics = new PushSumStatistics();
+
+		for (int i = 0; i < nodes; i++)
+		{
+			if (registry.isActive(i))
+			{
+				statistics.add(registry.getTrueValue(i), registry.getValue(i), registry.getWeight(i), registry.getEstimate(i));
+			}
+		}
+
+		print(statistics);
+	}
+
+	private void print(PushSumStatistics statistics)
+	{
+		printer.writePlotStats(1, 0, statistics, registry.getErrorQuantiles(), false, false, 0.);
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rice.p2p.scribe.Topic;
+import univie.cs.pps.bench.SimulatedRing;
+
+/**
+ * Measures {@link PastryPushSum#deliver(rice.p2p.commonapi.Id, rice.p2p.commonapi.Message)}
+ * for timer messages (a step, including routing the outgoing message to the
+ * first hop) and for value-weight messages from other nodes.
+ * <p>
+ * The messages are delivered to one node of a paused {@link SimulatedRing}, in
+ * batches on the selector thread. Each batch ends with a reset, so that the
+ * values and weights of the node do not become subnormal. The messages sent
+ * during an iteration are delivered after the iteration, outside of the
+ * measurement.
+ * <p>
+ * This class is in the package of {@link PastryPushSum}, to create
+ * {@link TimerMessage} and {@link ResetNotification} instances.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PastryPushSumBenchmark
+{
+	private static final int BATCH = 512;
+
+	@Param({ "100" })
+	public int nodes;
+
+	private SimulatedRing ring;
+	private Runnable deliverTimerMessages;
+	private Runnable deliverValueWeightMessages;
+
+	@Setup(Level.Trial)
+	public void boot() throws InterruptedException
+	{
+		ring = new SimulatedRing(nodes);
+
+		final PastryPushSum app = ring.getSetup().getRegistry().getApp(0);
+		final TimerMessage timerMessage = new TimerMessage();
+		final ValueWeightMessage valueWeightMessage = new ValueWeightMessage(app.getId(), app.getId(), 0., 0.);
+		final ResetNotification resetNotification = new ResetNotification();
+
+		deliverTimerMessages = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				for (int i = 0; i < BATCH; i++)
+				{
+					app.deliver(null, timerMessage);
+				}
+
+				app.deliver((Topic) null, resetNotification);
+			}
+		};
+
+		deliverValueWeightMessages = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				for (int i = 0; i < BATCH; i++)
+				{
+					app.deliver(null, valueWeightMessage);
+				}
+
+				app.deliver((Topic) null, resetNotification);
+			}
+		};
+	}
+
+	@TearDown(Level.Iteration)
+	public void deliverPendingMessages() throws InterruptedException
+	{
+		ring.runSteps(2);
+	}
+
+	@TearDown(Level.Trial)
+	public void destroy()
+	{
+		ring.destroy();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void deliverTimerMessage() throws InterruptedException
+	{
+		ring.invokeAndWait(deliverTimerMessages);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void deliverValueWeightMessage() throws InterruptedException
+	{
+		ring.invokeAndWait(deliverValueWeightMessages);
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import univie.cs.pps.ArrayPushSum;
+
+/**
+ * Measures the number of simulated steps per second of {@link ArrayPushSum},
+ * with the default parameters of the simulator.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ArrayStepBenchmark
+{
+	@Param({ "100", "10000", "100000" })
+	public int nodes;
+
+	@Param({ "1" })
+	public int threads;
+
+	@Param({ "UNIFORM" })
+	public ArrayPushSum.TargetSelection targets;
+
+	private ArrayPushSum kernel;
+
+	@Setup(Level.Trial)
+	public void addNodes()
+	{
+		kernel = new ArrayPushSum(1, threads, targets, 100, 2, 1, 1, 0, Double.MAX_VALUE);
+		kernel.addNodes(nodes);
+	}
+
+	@TearDown(Level.Trial)
+	public void shutdown()
+	{
+		kernel.shutdown();
+	}
+
+	@Benchmark
+	public void step()
+	{
+		kernel.step();
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import univie.cs.pps.PPSSetup;
+import univie.cs.pps.utils.GaussianValueReader;
+
+/**
+ * Measures {@link GaussianValueReader#getCurrentValue()}, with and without
+ * reporting the variations to a {@link PPSSetup}.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GaussianValueReaderBenchmark
+{
+	private PPSSetup ppss;
+	private GaussianValueReader reader;
+	private GaussianValueReader reportingReader;
+
+	@Setup(Level.Trial)
+	public void createReaders()
+	{
+		ppss = new PPSSetup(1);
+		reader = new GaussianValueReader(2, 1, ppss.getEnvironment().getRandomSource(), null);
+		reportingReader = new GaussianValueReader(2, 1, ppss.getEnvironment().getRandomSource(), ppss);
+	}
+
+	@TearDown(Level.Trial)
+	public void destroy()
+	{
+		ppss.getEnvironment().destroy();
+	}
+
+	@Benchmark
+	public double getCurrentValue()
+	{
+		return reader.getCurrentValue();
+	}
+
+	@Benchmark
+	public double getCurrentValueReporting()
+	{
+		return reportingReader.getCurrentValue();
+	}
+}
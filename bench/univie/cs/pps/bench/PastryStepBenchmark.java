@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import univie.cs.pps.PastryPushSum;
+
+/**
+ * Measures the number of simulated steps per second of a ring of
+ * {@link PastryPushSum} nodes in the Pastry simulator, i.e. the time for all
+ * nodes to do one step and for all messages to be routed.
+ * <p>
+ * Booting the ring takes time superlinear in the number of nodes, so by
+ * default only 100 nodes are measured. Use {@code -p nodes=...} for more.
+ * {@link ArrayStepBenchmark} measures the same for the ARRAY engine.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PastryStepBenchmark
+{
+	@Param({ "100" })
+	public int nodes;
+
+	private SimulatedRing ring;
+
+	@Setup(Level.Trial)
+	public void boot() throws InterruptedException
+	{
+		ring = new SimulatedRing(nodes);
+	}
+
+	@TearDown(Level.Trial)
+	public void destroy()
+	{
+		ring.destroy();
+	}
+
+	@Benchmark
+	public void step() throws InterruptedException
+	{
+		ring.runSteps(1);
+	}
+}
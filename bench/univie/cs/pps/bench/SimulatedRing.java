@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps.bench;
+
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.commons.io.output.NullOutputStream;
+
+import rice.selector.TimerTask;
+import univie.cs.pps.PPSSetup;
+import univie.cs.pps.PastryPushSum;
+import univie.cs.pps.utils.GaussianValueReaderFactory;
+
+/**
+ * A ring of {@link PastryPushSum} nodes in the direct simulator, for
+ * benchmarks.
+ * <p>
+ * After booting, the simulator is paused: the simulated time does not
+ * advance, so no timers fire and no messages are delivered until the
+ * simulation is resumed with {@link #runSteps(int)}. While paused, code can be
+ * run on the selector thread with {@link #invokeAndWait(Runnable)} without
+ * interfering with the simulation.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class SimulatedRing
+{
+	/**
+	 * The step size of the nodes.
+	 */
+	public static final int STEP_SIZE = 1000;
+
+	private static final int BOOT_PERIOD = 10;
+	private static final int UPDATE_INTERVAL = 100;
+
+	private final PPSSetup ppss;
+
+	/**
+	 * Boots a ring and pauses the simulator. Blocks until all nodes are
+	 * booted.
+	 * 
+	 * @param nodes
+	 *            the number of nodes.
+	 * @throws InterruptedException
+	 *             If the current thread is interrupted while waiting.
+	 */
+	public SimulatedRing(int nodes) throws InterruptedException
+	{
+		final CountDownLatch booted = new CountDownLatch(1);
+
+		ppss = new PPSSetup(1);
+		ppss.setOut(new PrintStream(NullOutputStream.NULL_OUTPUT_STREAM));
+		ppss.scheduleJoiningNodes(BOOT_PERIOD, nodes, new GaussianValueReaderFactory(2, 1, 1, ppss.getEnvironment().getRandomSource(),
+				ppss), STEP_SIZE, UPDATE_INTERVAL, 0, Double.MAX_VALUE, false, new TimerTask()
+		{
+			@Override
+			public void run()
+			{
+				ppss.getSimulator().stop();
+				booted.countDown();
+			}
+		});
+
+		booted.await();
+	}
+
+	/**
+	 * Returns the {@link PPSSetup} of the ring.
+	 */
+	public PPSSetup getSetup()
+	{
+		return ppss;
+	}
+
+	/**
+	 * Runs a task on the selector thread and waits until it is finished.
+	 * 
+	 * @throws InterruptedException
+	 *             If the current thread is interrupted while waiting.
+	 */
+	public void invokeAndWait(final Runnable task) throws InterruptedException
+	{
+		final CountDownLatch done = new CountDownLatch(1);
+
+		ppss.getEnvironment().getSelectorManager().invoke(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					task.run();
+				}
+				finally
+				{
+					done.countDown();
+				}
+			}
+		});
+
+		done.await();
+	}
+
+	/**
+	 * Resumes the simulation for the given number of steps, and pauses it
+	 * again. Blocks until the simulation is paused.
+	 * 
+	 * @throws InterruptedException
+	 *             If the current thread is interrupted while waiting.
+	 */
+	public void runSteps(final int steps) throws InterruptedException
+	{
+		final CountDownLatch paused = new CountDownLatch(1);
+
+		invokeAndWait(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				ppss.getEnvironment().getSelectorManager().getTimer().schedule(new TimerTask()
+				{
+					@Override
+					public void run()
+					{
+						ppss.getSimulator().stop();
+						paused.countDown();
+					}
+				}, steps * STEP_SIZE);
+
+				ppss.getSimulator().start();
+			}
+		});
+
+		paused.await();
+	}
+
+	/**
+	 * Destroys the environment of the ring.
+	 */
+	public void destroy()
+	{
+		ppss.getEnvironment().destroy();
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps.bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+
+import rice.environment.Environment;
+import rice.pastry.standard.RandomNodeIdFactory;
+import rice.selector.TimerTask;
+import univie.cs.pps.PPSSetup;
+import univie.cs.pps.utils.GaussianValueReaderFactory;
+import univie.cs.pps.utils.RandomIdGenerator;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Measures the number of bytes allocated by the step loop of the
+ * {@link univie.cs.pps.PastryPushSum} application.
+ * <p>
+ * The first part compares the allocations of generating the random target id
+ * of a step, with a new {@link RandomNodeIdFactory} per step (as before) and
+ * with a per-node {@link RandomIdGenerator} (as now). The second part runs a
+ * simulation in the direct simulator and reports the bytes allocated by the
+ * selector thread per simulated node step. Run it on two revisions to compare
+ * the whole step loop.
+ * <p>
+ * Usage: {@code StepAllocationBenchmark [nodes [steps]]}
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class StepAllocationBenchmark
+{
+	private static final int ID_ITERATIONS = 200000;
+	private static final int STEP_SIZE = 1000;
+	private static final int WARMUP_STEPS = 20;
+
+	private static final ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) throws InterruptedException
+	{
+		int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int steps = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+		if (!threadBean.isThreadAllocatedMemorySupported())
+		{
+			System.err.println("Thread allocation measurement is not supported by this JVM.");
+			return;
+		}
+
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+
+		benchmarkIds();
+		benchmarkSteps(nodes, steps);
+	}
+
+	private static void benchmarkIds()
+	{
+		final Environment environment = Environment.directEnvironment(1);
+
+		try
+		{
+			final RandomIdGenerator generator = new RandomIdGenerator(environment.getRandomSource());
+
+			Runnable factoryPerStep = new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					(new RandomNodeIdFactory(environment)).generateNodeId();
+				}
+			};
+
+			Runnable generatorPerNode = new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					generator.generateId();
+				}
+			};
+
+			// warm up
+			measure(factoryPerStep);
+			measure(generatorPerNode);
+
+			System.out.format("%-40s %16s%n", "random id", "bytes/op");
+			System.out.format("%-40s %16.1f%n", "RandomNodeIdFactory per step (before)", measure(factoryPerStep));
+			System.out.format("%-40s %16.1f%n", "RandomIdGenerator per node (after)", measure(generatorPerNode));
+			System.out.println();
+		}
+		finally
+		{
+			environment.destroy();
+		}
+	}
+
+	private static double measure(Runnable task)
+	{
+		long before = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+
+		for (int i = 0; i < ID_ITERATIONS; i++)
+		{
+			task.run();
+		}
+
+		long after = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+
+		return (double) (after - before) / ID_ITERATIONS;
+	}
+
+	private static void benchmarkSteps(final int nodes, final int steps) throws InterruptedException
+	{
+		final PPSSetup ppss = new PPSSetup(1);
+		final CountDownLatch done = new CountDownLatch(1);
+		final long[] allocated = new long[1];
+
+		ppss.scheduleJoiningNodes(1, nodes, new GaussianValueReaderFactory(2, 1, 0, ppss.getEnvironment().getRandomSource(), ppss), STEP_SIZE,
+				0, 0, 10, false, new TimerTask()
+				{
+					@Override
+					public void run()
+					{
+						final Environment environment = ppss.getEnvironment();
+
+						// start measuring after the warm up
+						environment.getSelectorManager().getTimer().schedule(new TimerTask()
+						{
+							@Override
+							public void run()
+							{
+								allocated[0] = -threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+							}
+						}, WARMUP_STEPS * STEP_SIZE);
+
+						environment.getSelectorManager().getTimer().schedule(new TimerTask()
+						{
+							@Override
+							public void run()
+							{
+								allocated[0] += threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+								environment.destroy();
+								done.countDown();
+							}
+						}, (WARMUP_STEPS + steps) * STEP_SIZE);
+					}
+				});
+
+		done.await();
+
+		System.out.format("%-40s %16s %16s%n", "simulation", "nodes", "bytes/step");
+		System.out.format("%-40s %16d %16.1f%n", "selector thread, per node and step", nodes, (double) allocated[0] / nodes / steps);
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rice.environment.Environment;
+import rice.p2p.commonapi.Application;
+import rice.p2p.commonapi.Endpoint;
+import rice.p2p.commonapi.Id;
+import rice.p2p.commonapi.Message;
+import rice.p2p.commonapi.NodeHandle;
+import rice.p2p.commonapi.RouteMessage;
+import rice.p2p.commonapi.rawserialization.RawMessage;
+import rice.p2p.util.rawserialization.SimpleInputBuffer;
+import rice.p2p.util.rawserialization.SimpleOutputBuffer;
+import rice.pastry.PastryNode;
+import rice.pastry.direct.DirectNodeHandle;
+import rice.pastry.direct.DirectPastryNodeFactory;
+import rice.pastry.direct.EuclideanNetwork;
+import rice.pastry.standard.RandomNodeIdFactory;
+import univie.cs.pps.ValueWeightMessage;
+import univie.cs.pps.utils.RandomIdGenerator;
+
+/**
+ * Measures the serialization and deserialization of {@link ValueWeightMessage}
+ * instances, as done for each message sent with the socket transport.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValueWeightMessageBenchmark
+{
+	private Environment environment;
+	private Endpoint endpoint;
+	private ValueWeightMessage message;
+	private byte[] serialized;
+
+	@Setup(Level.Trial)
+	public void createNode() throws IOException
+	{
+		environment = Environment.directEnvironment(1);
+
+		PastryNode node = new DirectPastryNodeFactory(new RandomNodeIdFactory(environment), new EuclideanNetwork<DirectNodeHandle, RawMessage>(environment), environment)
+				.newNode();
+
+		endpoint = node.buildEndpoint(new Application()
+		{
+			@Override
+			public void deliver(Id id, Message message)
+			{
+			}
+
+			@Override
+			public boolean forward(RouteMessage message)
+			{
+				return true;
+			}
+
+			@Override
+			public void update(NodeHandle handle, boolean joined)
+			{
+			}
+		}, "benchmark");
+
+		message = new ValueWeightMessage(node.getNodeId(), new RandomIdGenerator(environment.getRandomSource()).generateId(), 1.5, .5);
+		serialized = serialize().getBytes();
+	}
+
+	@TearDown(Level.Trial)
+	public void destroy()
+	{
+		environment.destroy();
+	}
+
+	@Benchmark
+	public SimpleOutputBuffer serialize() throws IOException
+	{
+		SimpleOutputBuffer buf = new SimpleOutputBuffer(64);
+		message.serialize(buf);
+
+		return buf;
+	}
+
+	@Benchmark
+	public ValueWeightMessage deserialize() throws IOException
+	{
+		return ValueWeightMessage.build(new SimpleInputBuffer(serialized), endpoint);
+	}
+}
@@ -0,0 +1,780 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import univie.cs.pps.utils.GaussianValueReader;
+import univie.cs.pps.utils.QuantileSketch;
+
+/**
+ * An implementation of the Push-Sum protocol on primitive arrays, without
+ * Pastry, for simulations with a large number of nodes.
+ * <p>
+ * The nodes follow the same steps as {@link PastryPushSum}: at each step, a
+ * node sums up the values and weights received since the last step, updates
+ * its true value every {@code updateInterval} steps, and sends half of its
+ * value and weight to itself and to a random node. Messages for stopped nodes
+ * are forwarded to another random node. Unlike in the Pastry simulator, all
+ * nodes do their steps in synchronous rounds, and messages are delivered
+ * without delay before the next round.
+ * <p>
+ * The target of a message is either chosen uniformly at random among all
+ * nodes, or by approximating the routing of a random id in Pastry, i.e. by
+ * choosing the node with the closest position on a ring of random 64-bit ids.
+ * In the latter case, nodes with a larger gap to their predecessor and
+ * successor receive more messages, as in the ring.
+ * <p>
+ * The node values are simulated as by {@link GaussianValueReader}: the initial
+ * values are drawn from a normal distribution, and each read changes the value
+ * by a normally distributed random amount.
+ * <p>
+ * The nodes are divided into blocks of fixed size, each with its own random
+ * number generator, which are processed in parallel. Each round consists of
+ * two phases: first each block does the steps of its nodes and sorts the
+ * outgoing messages by the block of the target, then each block adds up the
+ * messages for its nodes from all blocks, in block order. The results
+ * therefore only depend on the random seed, not on the number of threads.
+ * <p>
+ * Instances of this class are not thread-safe. They must be used from a
+ * single thread.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class ArrayPushSum
+{
+	/**
+	 * The methods for choosing the target of a message.
+	 */
+	public enum TargetSelection
+	{
+		/**
+		 * Choose each node with equal probability.
+		 */
+		UNIFORM,
+
+		/**
+		 * Choose the node closest to a random position on a ring of random
+		 * ids, like routing a message to a random id in Pastry.
+		 */
+		ROUTING
+	}
+
+	/**
+	 * The number of nodes in each block. Blocks are the unit of parallel
+	 * work, and each block keeps an offset for every other block, so the
+	 * size is a trade-off between the parallelism for small and the overhead
+	 * for large numbers of nodes.
+	 */
+	private static final int BLOCK_SIZE = 1 << 14;
+
+	private static final int SEND = 0;
+	private static final int RECEIVE = 1;
+	private static final int OBSERVE = 2;
+	private static final int RESET = 3;
+	private static final int ERRORS = 4;
+
+	private final Random random;
+	private final ExecutorService executor;
+	private final TargetSelection targetSelection;
+	private final int updateInterval;
+	private final double mean;
+	private final double std;
+	private final double variateStd;
+	private final double min;
+	private final double max;
+
+	private final List<Block> blocks = new ArrayList<Block>();
+	private final PushSumStatistics statistics = new PushSumStatistics();
+	private final QuantileSketch errorQuantiles = new QuantileSketch();
+
+	private PrintStream out = System.out;
+	private ObservationSink sink;
+
+	private int size = 0;
+	private boolean[] active = new boolean[0];
+	private boolean[] transition = new boolean[0];
+	private int[] steps = new int[0];
+	private int[] targets = new int[0];
+	private double[] trueValues = new double[0];
+	private double[] nextValues = new double[0];
+	private double[] values = new double[0];
+	private double[] weights = new double[0];
+	private double[] valueBuffers = new double[0];
+	private double[] weightBuffers = new double[0];
+
+	// the ids of all nodes in ascending order, and the corresponding nodes
+	private long[] ring = new long[0];
+	private int[] ringNodes = new int[0];
+
+	private double meanEstimate;
+	private double trueMean;
+	private boolean join;
+	private boolean leave;
+	private double variation;
+
+	/**
+	 * Creates a simulation without any nodes.
+	 * 
+	 * @param randomSeed
+	 *            if not null or 0, use this as the random seed. In that case
+	 *            the results will always be the same.
+	 * @param threads
+	 *            the number of threads used to process the nodes.
+	 * @param targetSelection
+	 *            the method for choosing the target of a message.
+	 * @param updateInterval
+	 *            the number of steps between updating node values. If set to 0,
+	 *            the node values will never be updated.
+	 * @param mean
+	 *            the mean of the normal distribution from which the initial
+	 *            values are chosen.
+	 * @param std
+	 *            the standard deviation of the normal distribution from which
+	 *            the initial values are chosen.
+	 * @param variateStd
+	 *            the standard deviation of the random amount by which a value
+	 *            changes after each update.
+	 * @param min
+	 *            the domain-specific minimum possible value, used as a lower
+	 *            bound for the estimates.
+	 * @param max
+	 *            the domain-specific maximum possible value, used as an upper
+	 *            bound for the estimates.
+	 */
+	public ArrayPushSum(Integer randomSeed, int threads, TargetSelection targetSelection, int updateInterval, double mean, double std,
+			double variateStd, double min, double max)
+	{
+		this.random = (randomSeed != null && randomSeed != 0) ? new Random(randomSeed) : new Random();
+		this.executor = (threads > 1) ? Executors.newFixedThreadPool(threads) : null;
+		this.targetSelection = targetSelection;
+		this.updateInterval = updateInterval;
+		this.mean = mean;
+		this.std = std;
+		this.variateStd = variateStd;
+		this.min = min;
+		this.max = max;
+	}
+
+	/**
+	 * Sets the stream to which the observations are written by
+	 * {@link #run(int, int, int, int, int, int, int)}. By default, this is the
+	 * standard output.
+	 */
+	public void setOut(PrintStream out)
+	{
+		this.out = out;
+	}
+
+	/**
+	 * Sets the sink to which the observations are written by
+	 * {@link #run(int, int, int, int, int, int, int)}, instead of printing them
+	 * to the stream set with {@link #setOut(PrintStream)}. The sink is not
+	 * closed by this class.
+	 */
+	public void setObservationSink(ObservationSink sink)
+	{
+		this.sink = sink;
+	}
+
+	/**
+	 * Runs a simulation with the same events and output as a simulation of
+	 * {@link PastryPushSum} nodes by {@link PPSSimulator}, and releases the
+	 * threads afterwards.
+	 * 
+	 * @param nodes
+	 *            the number of initial nodes.
+	 * @param steps
+	 *            the number of steps.
+	 * @param stepSize
+	 *            the simulated time between two steps, used for the output.
+	 * @param joinInterval
+	 *            the number of steps between adding a node, or 0.
+	 * @param leaveInterval
+	 *            the number of steps between stopping a random node, or 0.
+	 * @param resetInterval
+	 *            the number of steps between resetting all nodes, or 0.
+	 * @param verbosity
+	 *            the log level, as in {@link PPSSimulator}.
+	 */
+	public void run(int nodes, int steps, int stepSize, int joinInterval, int leaveInterval, int resetInterval, int verbosity)
+	{
+		ObservationSink printer = (sink != null) ? sink : new ObservationPrinter(out);
+
+		try
+		{
+			addNodes(nodes);
+
+			for (int step = 0; step <= steps; step++)
+			{
+				if (step > 0)
+				{
+					if (joinInterval > 0 && step % joinInterval == 0)
+					{
+						addNodes(1);
+					}
+
+					if (leaveInterval > 0 && step % leaveInterval == 0)
+					{
+						stopRandomNode();
+					}
+
+					if (resetInterval > 0 && step % resetInterval == 0)
+					{
+						reset();
+					}
+
+					step();
+				}
+
+				long time = (long) step * stepSize;
+
+				if (verbosity >= 3)
+				{
+					printer.writeDetailedStats(time, 0, getStatistics());
+				}
+				else if (verbosity == 2)
+				{
+					printer.writePlotStats(time, 0, getStatistics(), collectErrorQuantiles(), join, leave, variation);
+				}
+				else if (verbosity == 1)
+				{
+					printer.writeEstimate(time, 0, getClass().getSimpleName() + "[0]", getMeanEstimate());
+				}
+
+				join = false;
+				leave = false;
+				variation = 0.;
+			}
+		}
+		finally
+		{
+			shutdown();
+		}
+	}
+
+	/**
+	 * Adds new active nodes, with a weight of 1 and a random value.
+	 */
+	public void addNodes(int count)
+	{
+		ensureCapacity(size + count);
+
+		long[] ids = new long[count];
+
+		for (int i = size; i < size + count; i++)
+		{
+			// as obtained from a GaussianValueReaderFactory
+			double initialValue = random.nextGaussian() * std + mean;
+			double v = random.nextGaussian() * variateStd;
+
+			trueValues[i] = initialValue;
+			nextValues[i] = initialValue + v;
+			variation += Math.abs(v);
+
+			values[i] = initialValue;
+			valueBuffers[i] = initialValue;
+			weights[i] = 1.;
+			weightBuffers[i] = 1.;
+
+			active[i] = true;
+
+			ids[i - size] = random.nextLong();
+		}
+
+		// the nodes are interchangeable, so assign the sorted ids in order
+		Arrays.sort(ids);
+		mergeIntoRing(ids, size);
+
+		size += count;
+
+		while (blocks.size() * BLOCK_SIZE < size)
+		{
+			blocks.add(new Block(blocks.size(), random.nextLong()));
+		}
+
+		join = true;
+	}
+
+	/**
+	 * Tells a random node to stop participating, as done by
+	 * {@link PPSSetup#scheduleLeavingNodes(long)}.
+	 */
+	public void stopRandomNode()
+	{
+		active[random.nextInt(size - 1)] = false;
+
+		leave = true;
+	}
+
+	/**
+	 * Resets the values of all nodes to their true values and the weights to
+	 * 1, as done by a reset notification to the {@link PastryPushSum} nodes.
+	 */
+	public void reset()
+	{
+		forEachBlock(RESET);
+	}
+
+	/**
+	 * Does one step of all active nodes and delivers all messages.
+	 */
+	public void step()
+	{
+		forEachBlock(SEND);
+
+		for (Block block : blocks)
+		{
+			variation += block.variation;
+			block.variation = 0.;
+		}
+
+		forEachBlock(RECEIVE);
+	}
+
+	/**
+	 * Returns the number of nodes, including inactive ones.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the statistics of all active nodes. The statistics are collected
+	 * in a pass over all nodes at each call.
+	 */
+	public PushSumStatistics getStatistics()
+	{
+		observe();
+
+		return statistics;
+	}
+
+	/**
+	 * Returns a sketch of the absolute errors of the estimates of all active
+	 * nodes, relative to the mean of their true values. The errors are
+	 * collected in two passes over all nodes at each call, one for the true
+	 * mean and one for the errors, and the sketches of the blocks are merged.
+	 */
+	public QuantileSketch getErrorQuantiles()
+	{
+		observe();
+
+		return collectErrorQuantiles();
+	}
+
+	/**
+	 * Returns the mean of the estimates of all nodes, including inactive ones.
+	 * The estimates are collected in a pass over all nodes at each call.
+	 */
+	public double getMeanEstimate()
+	{
+		observe();
+
+		return meanEstimate;
+	}
+
+	/**
+	 * Stops the threads used by this instance. Afterwards, the nodes can only
+	 * be processed with a single thread.
+	 */
+	public void shutdown()
+	{
+		if (executor != null)
+		{
+			executor.shutdown();
+		}
+	}
+
+	private void observe()
+	{
+		forEachBlock(OBSERVE);
+
+		double estimateSum = 0.;
+		statistics.clear();
+
+		for (Block block : blocks)
+		{
+			statistics.add(block.statistics);
+			estimateSum += block.estimateSum;
+		}
+
+		meanEstimate = estimateSum / size;
+	}
+
+	/**
+	 * Collects the errors relative to the true mean of the last observation.
+	 */
+	private QuantileSketch collectErrorQuantiles()
+	{
+		trueMean = statistics.getTrueValues().getMean();
+		forEachBlock(ERRORS);
+
+		errorQuantiles.clear();
+
+		for (Block block : blocks)
+		{
+			errorQuantiles.add(block.errorQuantiles);
+		}
+
+		return errorQuantiles;
+	}
+
+	private void forEachBlock(final int phase)
+	{
+		if (executor == null || executor.isShutdown() || blocks.size() == 1)
+		{
+			for (Block block : blocks)
+			{
+				block.run(phase);
+			}
+
+			return;
+		}
+
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(blocks.size());
+
+		for (final Block block : blocks)
+		{
+			tasks.add(new Callable<Void>()
+			{
+				@Override
+				public Void call()
+				{
+					block.run(phase);
+					return null;
+				}
+			});
+		}
+
+		try
+		{
+			for (Future<Void> future : executor.invokeAll(tasks))
+			{
+				future.get();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	private void ensureCapacity(int capacity)
+	{
+		if (capacity > active.length)
+		{
+			capacity = Math.max(capacity, 2 * active.length);
+
+			active = Arrays.copyOf(active, capacity);
+			transition = Arrays.copyOf(transition, capacity);
+			steps = Arrays.copyOf(steps, capacity);
+			targets = Arrays.copyOf(targets, capacity);
+			trueValues = Arrays.copyOf(trueValues, capacity);
+			nextValues = Arrays.copyOf(nextValues, capacity);
+			values = Arrays.copyOf(values, capacity);
+			weights = Arrays.copyOf(weights, capacity);
+			valueBuffers = Arrays.copyOf(valueBuffers, capacity);
+			weightBuffers = Arrays.copyOf(weightBuffers, capacity);
+		}
+	}
+
+	/**
+	 * Merges the sorted ids of the nodes starting at {@code first} into the
+	 * ring.
+	 */
+	private void mergeIntoRing(long[] ids, int first)
+	{
+		if (targetSelection != TargetSelection.ROUTING)
+		{
+			return;
+		}
+
+		long[] mergedRing = new long[size + ids.length];
+		int[] mergedNodes = new int[size + ids.length];
+
+		int i = 0;
+		int j = 0;
+
+		for (int k = 0; k < mergedRing.length; k++)
+		{
+			if (j == ids.length || (i < size && ring[i] <= ids[j]))
+			{
+				mergedRing[k] = ring[i];
+				mergedNodes[k] = ringNodes[i];
+				i++;
+			}
+			else
+			{
+				mergedRing[k] = ids[j];
+				mergedNodes[k] = first + j;
+				j++;
+			}
+		}
+
+		ring = mergedRing;
+		ringNodes = mergedNodes;
+	}
+
+	/**
+	 * Returns the node with the id closest to the given id on the ring.
+	 */
+	private int closestNode(long id)
+	{
+		int k = Arrays.binarySearch(ring, id);
+
+		if (k >= 0)
+		{
+			return ringNodes[k];
+		}
+
+		k = -k - 1;
+
+		int successor = (k == size) ? 0 : k;
+		int predecessor = (k == 0) ? size - 1 : k - 1;
+
+		// compare the clockwise and counter-clockwise distances as unsigned
+		long successorDistance = ring[successor] - id;
+		long predecessorDistance = id - ring[predecessor];
+
+		return (successorDistance ^ Long.MIN_VALUE) <= (predecessorDistance ^ Long.MIN_VALUE) ? ringNodes[successor]
+				: ringNodes[predecessor];
+	}
+
+	/**
+	 * Returns a random active node, forwarding the message to another random
+	 * node while the chosen node is inactive.
+	 */
+	private int selectTarget(Random random)
+	{
+		int target;
+
+		do
+		{
+			target = (targetSelection == TargetSelection.ROUTING) ? closestNode(random.nextLong()) : random.nextInt(size);
+		}
+		while (!active[target]);
+
+		return target;
+	}
+
+	/**
+	 * A block of consecutive nodes, processed by a single thread.
+	 */
+	private class Block
+	{
+		private final int index;
+		private final int from;
+		private final Random random;
+		private final PushSumStatistics statistics = new PushSumStatistics();
+		private final QuantileSketch errorQuantiles = new QuantileSketch();
+
+		// the sources of the messages of this step, sorted by target block
+		private final int[] order = new int[BLOCK_SIZE];
+		private int[] offsets = new int[0];
+		private int[] positions = new int[0];
+
+		private double variation;
+		private double estimateSum;
+
+		Block(int index, long seed)
+		{
+			this.index = index;
+			this.from = index * BLOCK_SIZE;
+			this.random = new Random(seed);
+		}
+
+		void run(int phase)
+		{
+			int to = Math.min(from + BLOCK_SIZE, size);
+
+			switch (phase)
+			{
+				case SEND:
+					send(to);
+					break;
+				case RECEIVE:
+					receive();
+					break;
+				case OBSERVE:
+					observe(to);
+					break;
+				case RESET:
+					reset(to);
+					break;
+				case ERRORS:
+					errors(to);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown phase " + phase + ".");
+			}
+		}
+
+		private void send(int to)
+		{
+			int blockCount = blocks.size();
+
+			if (offsets.length != blockCount + 1)
+			{
+				offsets = new int[blockCount + 1];
+				positions = new int[blockCount];
+			}
+			else
+			{
+				Arrays.fill(offsets, 0);
+			}
+
+			for (int i = from; i < to; i++)
+			{
+				if (!active[i])
+				{
+					targets[i] = -1;
+					continue;
+				}
+
+				steps[i]++;
+
+				// sum up received values
+				double value = valueBuffers[i];
+				double weight = weightBuffers[i];
+
+				// update value
+				if (updateInterval > 0 && steps[i] % updateInterval == 0)
+				{
+					double newValue = nextValues[i];
+					double v = random.nextGaussian() * variateStd;
+
+					nextValues[i] = newValue + v;
+					variation += Math.abs(v);
+
+					value += newValue - trueValues[i];
+					transition[i] = newValue != trueValues[i];
+					trueValues[i] = newValue;
+				}
+
+				values[i] = value;
+				weights[i] = weight;
+
+				// send to self
+				valueBuffers[i] = value / 2;
+				weightBuffers[i] = weight / 2;
+
+				// send to random node
+				int target = selectTarget(random);
+				targets[i] = target;
+				offsets[target / BLOCK_SIZE + 1]++;
+			}
+
+			// sort the sources by target block
+			for (int b = 0; b < blockCount; b++)
+			{
+				offsets[b + 1] += offsets[b];
+				positions[b] = offsets[b];
+			}
+
+			for (int i = from; i < to; i++)
+			{
+				if (targets[i] >= 0)
+				{
+					order[positions[targets[i] / BLOCK_SIZE]++] = i;
+				}
+			}
+		}
+
+		private void receive()
+		{
+			for (Block source : blocks)
+			{
+				for (int k = source.offsets[index]; k < source.offsets[index + 1]; k++)
+				{
+					int i = source.order[k];
+					int target = targets[i];
+
+					valueBuffers[target] += values[i] / 2;
+					weightBuffers[target] += weights[i] / 2;
+					transition[target] = false;
+				}
+			}
+		}
+
+		private void observe(int to)
+		{
+			statistics.clear();
+			estimateSum = 0.;
+
+			for (int i = from; i < to; i++)
+			{
+				double estimate = transition[i] ? trueValues[i] : Math.max(min, Math.min(values[i] / weights[i], max));
+
+				estimateSum += estimate;
+
+				if (active[i])
+				{
+					statistics.add(trueValues[i], values[i], weights[i], estimate);
+				}
+			}
+		}
+
+		private void errors(int to)
+		{
+			errorQuantiles.clear();
+
+			for (int i = from; i < to; i++)
+			{
+				double estimate = transition[i] ? trueValues[i] : Math.max(min, Math.min(values[i] / weights[i], max));
+
+				if (active[i] && !Double.isNaN(estimate))
+				{
+					errorQuantiles.add(Math.abs(estimate - trueMean));
+				}
+			}
+		}
+
+		private void reset(int to)
+		{
+			for (int i = from; i < to; i++)
+			{
+				values[i] = trueValues[i];
+				valueBuffers[i] = trueValues[i];
+				weights[i] = 1.;
+				weightBuffers[i] = 1.;
+			}
+		}
+	}
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import rice.p2p.commonapi.Endpoint;
+import rice.p2p.commonapi.Id;
+import rice.p2p.commonapi.Message;
+import rice.p2p.commonapi.rawserialization.InputBuffer;
+import rice.p2p.commonapi.rawserialization.OutputBuffer;
+import rice.p2p.commonapi.rawserialization.RawMessage;
+
+/**
+ * A message carrying several shares of values and weights for the
+ * {@link PastryPushSum} application, which are routed to the same destination.
+ * <p>
+ * Each share consists of {@code dimension} values followed by one weight. The
+ * shares are kept in a packed array and written to the socket transport in a
+ * fixed binary layout:
+ * 
+ * <pre>
+ * byte   version
+ * int    epoch (since version 2)
+ * int    hops (since version 3)
+ * short  sender id type,   sender id
+ * short  receiver id type, receiver id
+ * int    dimension (since version 1)
+ * int    count
+ * double values, double weight   (count times)
+ * </pre>
+ * 
+ * Messages are read back by {@link #build(InputBuffer, Endpoint)}, called from
+ * the deserializer registered in {@link PastryPushSum}. All shares of a batch
+ * belong to the same epoch. Messages written in version 0, with pairs of one
+ * value and one weight, are still accepted as messages of dimension 1, and
+ * messages written in version 0 or 1, without the epoch, as messages of epoch
+ * 0. Messages written before version 3 start with no hops.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class BatchedValueWeightMessage implements RawMessage
+{
+	/**
+	 * The type identifier of this message, unique within the
+	 * {@link PastryPushSum} application.
+	 */
+	public static final short TYPE = 2;
+
+	private static final byte VERSION = 3;
+
+	private final Id sender;
+	private final Id receiver;
+	private final int dimension;
+	private final double[] shares;
+	private final int count;
+	private final int epoch;
+
+	private int hops;
+
+	/**
+	 * Creates a new message of shares with a single value each.
+	 * 
+	 * @param sender
+	 *            the id of the sending node.
+	 * @param receiver
+	 *            the id the message is routed to.
+	 * @param shares
+	 *            the values and weights, packed as {@code value, weight}
+	 *            pairs. The array is not copied and must not be changed
+	 *            afterwards.
+	 * @param count
+	 *            the number of pairs used from {@code shares}.
+	 * @throws IllegalArgumentException
+	 *             If {@code shares} holds less than {@code count} pairs.
+	 */
+	public BatchedValueWeightMessage(Id sender, Id receiver, double[] shares, int count)
+	{
+		this(sender, receiver, 1, shares, count, 0);
+	}
+
+	/**
+	 * Creates a new message.
+	 * 
+	 * @param sender
+	 *            the id of the sending node.
+	 * @param receiver
+	 *            the id the message is routed to.
+	 * @param dimension
+	 *            the number of values in each share.
+	 * @param shares
+	 *            the values and weights, packed as {@code dimension} values
+	 *            followed by the weight for each share. The array is not copied
+	 *            and must not be changed afterwards.
+	 * @param count
+	 *            the number of shares used from {@code shares}.
+	 * @throws IllegalArgumentException
+	 *             If {@code dimension} is not positive or {@code shares} holds
+	 *             less than {@code count} shares.
+	 */
+	public BatchedValueWeightMessage(Id sender, Id receiver, int dimension, double[] shares, int count)
+	{
+		this(sender, receiver, dimension, shares, count, 0);
+	}
+
+	/**
+	 * Creates a new message of the given epoch, as described in
+	 * {@link #BatchedValueWeightMessage(Id, Id, int, double[], int)}.
+	 * 
+	 * @param epoch
+	 *            the epoch of the push-sum instance all shares belong to.
+	 */
+	public BatchedValueWeightMessage(Id sender, Id receiver, int dimension, double[] shares, int count, int epoch)
+	{
+		if (dimension < 1 || count < 0 || shares.length < (dimension + 1) * count)
+		{
+			throw new IllegalArgumentException("Cannot read " + count + " shares of dimension " + dimension + " from an array of length "
+					+ shares.length + ".");
+		}
+
+		this.sender = sender;
+		this.receiver = receiver;
+		this.dimension = dimension;
+		this.shares = shares;
+		this.count = count;
+		this.epoch = epoch;
+	}
+
+	/**
+	 * Reads a message from the given buffer, in the format written by
+	 * {@link #serialize(OutputBuffer)}.
+	 * 
+	 * @param buf
+	 *            the buffer to read from.
+	 * @param endpoint
+	 *            the endpoint used to read the sender and receiver ids.
+	 * @throws IOException
+	 *             If the buffer cannot be read or the message was written in
+	 *             an unknown version.
+	 */
+	public static BatchedValueWeightMessage build(InputBuffer buf, Endpoint endpoint) throws IOException
+	{
+		byte version = buf.readByte();
+
+		if (version < 0 || version > VERSION)
+		{
+			throw new IOException("Unknown version " + version + " of " + BatchedValueWeightMessage.class.getSimpleName() + ".");
+		}
+
+		int epoch = (version > 1) ? buf.readInt() : 0;
+		int hops = (version > 2) ? buf.readInt() : 0;
+		Id sender = endpoint.readId(buf, buf.readShort());
+		Id receiver = endpoint.readId(buf, buf.readShort());
+		int dimension = (version > 0) ? buf.readInt() : 1;
+		int count = buf.readInt();
+		int remaining = buf.bytesRemaining();
+
+		if (dimension < 1 || count < 0 || (remaining != InputBuffer.UNKNOWN && (long) (dimension + 1) * count > remaining / 8))
+		{
+			throw new IOException("Invalid number of shares " + count + " of dimension " + dimension + " in "
+					+ BatchedValueWeightMessage.class.getSimpleName() + ".");
+		}
+
+		double[] shares = new double[(dimension + 1) * count];
+
+		for (int i = 0; i < shares.length; i++)
+		{
+			shares[i] = buf.readDouble();
+		}
+
+		BatchedValueWeightMessage message = new BatchedValueWeightMessage(sender, receiver, dimension, shares, count, epoch);
+		message.hops = hops;
+
+		return message;
+	}
+
+	public Id getSender()
+	{
+		return sender;
+	}
+
+	public Id getReceiver()
+	{
+		return receiver;
+	}
+
+	/**
+	 * Returns the number of values in each share.
+	 */
+	public int getDimension()
+	{
+		return dimension;
+	}
+
+	/**
+	 * Returns the number of shares in this message.
+	 */
+	public int getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Returns the epoch of the push-sum instance all shares belong to.
+	 */
+	public int getEpoch()
+	{
+		return epoch;
+	}
+
+	/**
+	 * Returns the number of hops this message has taken so far, counted by
+	 * {@link PastryPushSum#forward(rice.p2p.commonapi.RouteMessage)} at each
+	 * node it passed through.
+	 */
+	public int getHops()
+	{
+		return hops;
+	}
+
+	/**
+	 * Counts one more hop of this message.
+	 */
+	void hop()
+	{
+		hops++;
+	}
+
+	/**
+	 * Restarts counting the hops, before the message is routed again.
+	 */
+	void clearHops()
+	{
+		hops = 0;
+	}
+
+	/**
+	 * Returns the value of the share at the given index, or the first
+	 * component of its values.
+	 */
+	public double getValue(int index)
+	{
+		return getValue(index, 0);
+	}
+
+	/**
+	 * Returns the given component of the values of the share at the given
+	 * index.
+	 */
+	public double getValue(int index, int component)
+	{
+		return shares[(dimension + 1) * index + component];
+	}
+
+	/**
+	 * Returns the weight of the share at the given index.
+	 */
+	public double getWeight(int index)
+	{
+		return shares[(dimension + 1) * index + dimension];
+	}
+
+	@Override
+	public int getPriority()
+	{
+		return Message.LOW_PRIORITY;
+	}
+
+	@Override
+	public short getType()
+	{
+		return TYPE;
+	}
+
+	@Override
+	public void serialize(OutputBuffer buf) throws IOException
+	{
+		buf.writeByte(VERSION);
+		buf.writeInt(epoch);
+		buf.writeInt(hops);
+
+		buf.writeShort(sender.getType());
+		sender.serialize(buf);
+		buf.writeShort(receiver.getType());
+		receiver.serialize(buf);
+
+		buf.writeInt(dimension);
+		buf.writeInt(count);
+
+		for (int i = 0; i < (dimension + 1) * count; i++)
+		{
+			buf.writeDouble(shares[i]);
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getSimpleName() + "[sender=" + sender + ",receiver=" + receiver + ",dimension=" + dimension + ",shares="
+				+ Arrays.toString(Arrays.copyOf(shares, (dimension + 1) * count)) + ",epoch=" + epoch + ",hops=" + hops + "]";
+	}
+}
@@ -0,0 +1,442 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.commons.io.IOUtils;
+
+import univie.cs.pps.utils.FormattedStatistics;
+import univie.cs.pps.utils.QuantileSketch;
+import univie.cs.pps.utils.RunningStatistics;
+
+/**
+ * An {@link ObservationSink} that appends the observations as binary records
+ * to a file, through a buffered {@link FileChannel}. Writing an observation
+ * does not format any text, so that long simulations at a high verbosity
+ * spend less time on output and produce smaller files.
+ * <p>
+ * The file starts with an int magic number and an int version, followed by
+ * the records. Each record starts with the following fields:
+ * 
+ * <pre>
+ * int    record type (see the TYPE_ constants)
+ * long   time
+ * long   start
+ * </pre>
+ * 
+ * The statistics of a record are written as a long count followed by the
+ * doubles minimum, maximum, mean, standard deviation and root-mean-square:
+ * 
+ * <pre>
+ * TYPE_DETAILED: statistics of the true values, values, weights, estimates and errors
+ * TYPE_PLOT:     statistics of the estimates and errors, double true mean,
+ *                int flags (1 = join, 2 = leave), double variation,
+ *                the quantiles of the absolute errors as four doubles (since version 1)
+ * TYPE_ESTIMATE: double mean estimate, 32 bytes of the boot node name
+ * TYPE_SNAPSHOT: int count, followed by count times
+ *                int node, double true value, double value, double weight, double estimate
+ * </pre>
+ * 
+ * The file can be exported to the text format of {@link ObservationPrinter},
+ * which is the column layout used for plotting, with
+ * {@link #export(File, PrintStream, PrintStream)} or the
+ * {@link #main(String[])} method of this class.
+ * <p>
+ * Like a {@link PrintStream}, this class does not throw exceptions while
+ * writing. If writing fails, all further observations are dropped and the
+ * exception is thrown by {@link #close()}.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class BinaryObservationSink implements ObservationSink
+{
+	public static final int TYPE_DETAILED = 0;
+	public static final int TYPE_PLOT = 1;
+	public static final int TYPE_ESTIMATE = 2;
+	public static final int TYPE_SNAPSHOT = 3;
+
+	private static final int MAGIC = 0x5050534F;
+	private static final int VERSION = 1;
+
+	private static final int RECORD_HEADER_SIZE = 20;
+	private static final int STATISTICS_SIZE = 48;
+	private static final int LABEL_SIZE = 32;
+	private static final int NODE_SIZE = 36;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Exports a file written by this class to the text format of
+	 * {@link ObservationPrinter}.
+	 * 
+	 * @param args
+	 *            the name of the file with the observations, and optionally
+	 *            the name of a file for the snapshots. Without it, snapshots
+	 *            are not exported.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 1 || args.length > 2)
+		{
+			System.err.println("Usage: " + BinaryObservationSink.class.getCanonicalName() + " <observation file> [<snapshot file>]");
+			return;
+		}
+
+		PrintStream snapshotOut = (args.length > 1) ? new PrintStream(new FileOutputStream(args[1])) : null;
+
+		try
+		{
+			export(new File(args[0]), System.out, snapshotOut);
+		}
+		finally
+		{
+			IOUtils.closeQuietly(snapshotOut);
+		}
+	}
+
+	/**
+	 * Exports the records of a file written by this class to the text format
+	 * of {@link ObservationPrinter}. The observations are printed exactly as
+	 * they would have been printed during the simulation.
+	 * 
+	 * @param file
+	 *            the file to read.
+	 * @param out
+	 *            the stream to print the observations to.
+	 * @param snapshotOut
+	 *            the stream to print the snapshots to, or {@code null} to skip
+	 *            the snapshots.
+	 * @throws IOException
+	 *             If the file cannot be read or is not an observation file.
+	 */
+	public static void export(File file, PrintStream out, PrintStream snapshotOut) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+
+		try
+		{
+			int version;
+
+			if (in.readInt() != MAGIC || (version = in.readInt()) > VERSION)
+			{
+				throw new IOException("Not an observation file: " + file);
+			}
+
+			ObservationPrinter printer = new ObservationPrinter(out);
+			ObservationPrinter snapshotPrinter = (snapshotOut != null) ? new ObservationPrinter(snapshotOut) : null;
+			byte[] label = new byte[LABEL_SIZE];
+
+			while (true)
+			{
+				int type;
+
+				try
+				{
+					type = in.readInt();
+				}
+				catch (EOFException e)
+				{
+					break;
+				}
+
+				long time = in.readLong();
+				long start = in.readLong();
+
+				switch (type)
+				{
+				case TYPE_DETAILED:
+					printer.printDetailedStats(time, start, readStatistics(in), readStatistics(in), readStatistics(in), readStatistics(in),
+							readStatistics(in));
+					break;
+				case TYPE_PLOT:
+					String estimates = readStatistics(in);
+					String errors = readStatistics(in);
+					double trueMean = in.readDouble();
+					int flags = in.readInt();
+					double variation = in.readDouble();
+					String errorQuantiles = (version > 0) ? String.format("%16e %16e %16e %16e", in.readDouble(), in.readDouble(),
+							in.readDouble(), in.readDouble()) : String.format("%16s %16s %16s %16s", "-", "-", "-", "-");
+					printer.printPlotStats(time, start, estimates, errors, trueMean, (flags & 1) != 0, (flags & 2) != 0, variation,
+							errorQuantiles);
+					break;
+				case TYPE_ESTIMATE:
+					double meanEstimate = in.readDouble();
+					in.readFully(label);
+					printer.writeEstimate(time, start, new String(label, "US-ASCII").trim(), meanEstimate);
+					break;
+				case TYPE_SNAPSHOT:
+					int count = in.readInt();
+					for (int i = 0; i < count; i++)
+					{
+						int slot = in.readInt();
+						double trueValue = in.readDouble();
+						double value = in.readDouble();
+						double weight = in.readDouble();
+						double estimate = in.readDouble();
+
+						if (snapshotPrinter != null)
+						{
+							snapshotPrinter.printNode(time, start, slot, trueValue, value, weight, estimate);
+						}
+					}
+					if (snapshotOut != null)
+					{
+						snapshotOut.format("%n%n");
+					}
+					break;
+				default:
+					throw new IOException("Unknown record type " + type + " in " + file);
+				}
+			}
+		}
+		finally
+		{
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	private static String readStatistics(DataInputStream in) throws IOException
+	{
+		return FormattedStatistics.format(in.readLong(), in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble(),
+				in.readDouble());
+	}
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final byte[] label = new byte[LABEL_SIZE];
+
+	private IOException exception;
+
+	/**
+	 * Creates the file, replacing an existing file.
+	 * 
+	 * @param file
+	 *            the file to write to.
+	 * @throws IOException
+	 *             If the file cannot be created.
+	 */
+	public BinaryObservationSink(File file) throws IOException
+	{
+		if (file.getParentFile() != null && !file.getParentFile().exists())
+		{
+			file.getParentFile().mkdirs();
+		}
+
+		channel = new FileOutputStream(file).getChannel();
+
+		buffer.putInt(MAGIC).putInt(VERSION);
+	}
+
+	@Override
+	public void writeDetailedStats(long time, long start, PushSumStatistics statistics)
+	{
+		if (reserve(RECORD_HEADER_SIZE + 5 * STATISTICS_SIZE))
+		{
+			double trueMean = statistics.getTrueValues().getMean();
+
+			putHeader(TYPE_DETAILED, time, start);
+			putStatistics(statistics.getTrueValues(), 0.);
+			putStatistics(statistics.getValues(), 0.);
+			putStatistics(statistics.getWeights(), 0.);
+			putStatistics(statistics.getEstimates(), 0.);
+			putStatistics(statistics.getEstimates(), trueMean);
+		}
+	}
+
+	@Override
+	public void writePlotStats(long time, long start, PushSumStatistics statistics, QuantileSketch errorQuantiles, boolean join,
+			boolean leave, double variation)
+	{
+		if (reserve(RECORD_HEADER_SIZE + 2 * STATISTICS_SIZE + 20 + 8 * QuantileSketch.QUANTILES.length))
+		{
+			double trueMean = statistics.getTrueValues().getMean();
+
+			putHeader(TYPE_PLOT, time, start);
+			putStatistics(statistics.getEstimates(), 0.);
+			putStatistics(statistics.getEstimates(), trueMean);
+			buffer.putDouble(trueMean);
+			buffer.putInt((join ? 1 : 0) | (leave ? 2 : 0));
+			buffer.putDouble(variation);
+
+			for (double q : QuantileSketch.QUANTILES)
+			{
+				buffer.putDouble(errorQuantiles.getQuantile(q));
+			}
+		}
+	}
+
+	@Override
+	public void writeEstimate(long time, long start, Object bootNode, double meanEstimate)
+	{
+		if (reserve(RECORD_HEADER_SIZE + 8 + LABEL_SIZE))
+		{
+			String name = String.valueOf(bootNode);
+
+			// the name as ASCII, truncated or padded with spaces
+			for (int i = 0; i < LABEL_SIZE; i++)
+			{
+				char c = (i < name.length()) ? name.charAt(i) : ' ';
+				label[i] = (byte) (c < 128 ? c : '?');
+			}
+
+			putHeader(TYPE_ESTIMATE, time, start);
+			buffer.putDouble(meanEstimate);
+			buffer.put(label);
+		}
+	}
+
+	@Override
+	public void writeSnapshot(long time, long start, NodeRegistry registry)
+	{
+		int count = 0;
+
+		for (int i = 0; i < registry.size(); i++)
+		{
+			if (registry.isActive(i))
+			{
+				count++;
+			}
+		}
+
+		if (reserve(RECORD_HEADER_SIZE + 4))
+		{
+			putHeader(TYPE_SNAPSHOT, time, start);
+			buffer.putInt(count);
+		}
+
+		for (int i = 0; i < registry.size(); i++)
+		{
+			if (registry.isActive(i) && reserve(NODE_SIZE))
+			{
+				buffer.putInt(i);
+				buffer.putDouble(registry.getTrueValue(i));
+				buffer.putDouble(registry.getValue(i));
+				buffer.putDouble(registry.getWeight(i));
+				buffer.putDouble(registry.getEstimate(i));
+			}
+		}
+	}
+
+	/**
+	 * Writes the buffered records and closes the file.
+	 * 
+	 * @throws IOException
+	 *             If writing any of the records failed.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			if (exception == null)
+			{
+				flush();
+			}
+		}
+		catch (IOException e)
+		{
+			exception = e;
+		}
+		finally
+		{
+			channel.close();
+		}
+
+		if (exception != null)
+		{
+			throw exception;
+		}
+	}
+
+	/**
+	 * Makes room for {@code size} bytes in the buffer, writing the buffered
+	 * records to the file if necessary.
+	 * 
+	 * @return {@code false} if writing failed, now or before.
+	 */
+	private boolean reserve(int size)
+	{
+		if (exception != null)
+		{
+			return false;
+		}
+
+		if (buffer.remaining() < size)
+		{
+			try
+			{
+				flush();
+			}
+			catch (IOException e)
+			{
+				exception = e;
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private void flush() throws IOException
+	{
+		buffer.flip();
+
+		while (buffer.hasRemaining())
+		{
+			channel.write(buffer);
+		}
+
+		buffer.clear();
+	}
+
+	private void putHeader(int type, long time, long start)
+	{
+		buffer.putInt(type);
+		buffer.putLong(time);
+		buffer.putLong(start);
+	}
+
+	/**
+	 * Puts the statistics of the values minus {@code offset}, as printed by
+	 * {@link RunningStatistics#toString(double)}.
+	 */
+	private void putStatistics(RunningStatistics statistics, double offset)
+	{
+		buffer.putLong(statistics.getN());
+		buffer.putDouble(statistics.getMin() - offset);
+		buffer.putDouble(statistics.getMax() - offset);
+		buffer.putDouble(statistics.getMean() - offset);
+		buffer.putDouble(statistics.getStandardDeviation());
+		buffer.putDouble(statistics.getRMS(offset));
+	}
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps;
+
+import univie.cs.pps.utils.Log2Histogram;
+
+/**
+ * Counters and histograms of the work done by one {@link PastryPushSum} node,
+ * or by several nodes after merging.
+ * <p>
+ * The metrics of a node are confined to its selector thread, on which all its
+ * messages are processed, so that recording an event increments a plain field
+ * without synchronization. Other threads obtain a copy with
+ * {@link PastryPushSum#getMetrics()}, which must be called on the selector
+ * thread as well, for example from a timer task. Copies of several nodes are
+ * merged with {@link #add(NodeMetrics)}, as done by
+ * {@link PPSSetup#getMetrics()}.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class NodeMetrics
+{
+	private long routed;
+	private long direct;
+	private long received;
+	private long dropped;
+	private long forwarded;
+	private long inactiveForwards;
+	private long resets;
+
+	private final Log2Histogram hops;
+	private final Log2Histogram stepTimes;
+	private final Log2Histogram queueDelays;
+
+	/**
+	 * Creates empty metrics.
+	 */
+	public NodeMetrics()
+	{
+		hops = new Log2Histogram();
+		stepTimes = new Log2Histogram();
+		queueDelays = new Log2Histogram();
+	}
+
+	/**
+	 * Creates a copy of the given metrics.
+	 */
+	public NodeMetrics(NodeMetrics other)
+	{
+		hops = new Log2Histogram();
+		stepTimes = new Log2Histogram();
+		queueDelays = new Log2Histogram();
+
+		add(other);
+	}
+
+	/**
+	 * Adds the counts of other metrics to these.
+	 */
+	public void add(NodeMetrics other)
+	{
+		routed += other.routed;
+		direct += other.direct;
+		received += other.received;
+		dropped += other.dropped;
+		forwarded += other.forwarded;
+		inactiveForwards += other.inactiveForwards;
+		resets += other.resets;
+
+		hops.add(other.hops);
+		stepTimes.add(other.stepTimes);
+		queueDelays.add(other.queueDelays);
+	}
+
+	/**
+	 * Returns the number of messages sent, including the messages forwarded
+	 * while inactive.
+	 */
+	public long getSent()
+	{
+		return routed + direct;
+	}
+
+	/**
+	 * Returns the number of messages routed to an id, including the messages
+	 * forwarded while inactive.
+	 */
+	public long getRouted()
+	{
+		return routed;
+	}
+
+	/**
+	 * Returns the number of messages sent directly to a node handle.
+	 * 
+	 * @see PastryPushSum#setDirectRatio(double)
+	 */
+	public long getDirect()
+	{
+		return direct;
+	}
+
+	/**
+	 * Returns the number of messages delivered to the node, including the
+	 * dropped ones and the ones forwarded because the node was inactive.
+	 */
+	public long getReceived()
+	{
+		return received;
+	}
+
+	/**
+	 * Returns the number of received messages that were dropped because they
+	 * belonged to an older epoch.
+	 * 
+	 * @see PastryPushSum#setEpochs(int)
+	 */
+	public long getDropped()
+	{
+		return dropped;
+	}
+
+	/**
+	 * Returns the number of hops of messages of the application through the
+	 * node, counted whenever Pastry lets the node forward such a message,
+	 * which happens once per hop.
+	 */
+	public long getForwarded()
+	{
+		return forwarded;
+	}
+
+	/**
+	 * Returns the number of messages forwarded to a random id, or queued for
+	 * forwarding, because the node was inactive.
+	 */
+	public long getInactiveForwards()
+	{
+		return inactiveForwards;
+	}
+
+	/**
+	 * Returns the number of times the node restarted its estimates, by a
+	 * reset notification or by switching to a new epoch.
+	 */
+	public long getResets()
+	{
+		return resets;
+	}
+
+	/**
+	 * Returns the average number of hops of the received messages, or
+	 * {@code NaN} if no message was received.
+	 * 
+	 * @see #getHops()
+	 */
+	public double getHopsPerMessage()
+	{
+		return hops.getMean();
+	}
+
+	/**
+	 * Returns the histogram of the number of hops of the received messages,
+	 * carried in each message and counted whenever Pastry lets a node forward
+	 * it. A message forwarded by an inactive node is counted again at its next
+	 * destination, with the hops from the inactive node only.
+	 */
+	public Log2Histogram getHops()
+	{
+		return hops;
+	}
+
+	/**
+	 * Returns the histogram of the processing times of the steps, in
+	 * nanoseconds.
+	 */
+	public Log2Histogram getStepTimes()
+	{
+		return stepTimes;
+	}
+
+	/**
+	 * Returns the histogram of the delays between the time at which a step was
+	 * scheduled and the time at which the selector processed it, in
+	 * milliseconds of the time source of the node.
+	 * <p>
+	 * In the Pastry simulator, the time source is simulated and advances only
+	 * between events, so that the delays are always 0. They are only
+	 * meaningful for peers on a real network.
+	 */
+	public Log2Histogram getQueueDelays()
+	{
+		return queueDelays;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("sent=%d routed=%d direct=%d received=%d dropped=%d forwarded=%d inactiveForwards=%d resets=%d hopsPerMessage=%.3f",
+				getSent(), routed, direct, received, dropped, forwarded, inactiveForwards, resets, getHopsPerMessage());
+	}
+
+	void routed()
+	{
+		routed++;
+	}
+
+	void sentDirectly()
+	{
+		direct++;
+	}
+
+	void received(int messageHops)
+	{
+		received++;
+		hops.add(messageHops);
+	}
+
+	void dropped()
+	{
+		dropped++;
+	}
+
+	void forwarded()
+	{
+		forwarded++;
+	}
+
+	void forwardedInactive()
+	{
+		inactiveForwards++;
+	}
+
+	void reset()
+	{
+		resets++;
+	}
+
+	void step(long nanos)
+	{
+		stepTimes.add(nanos);
+	}
+
+	void queueDelay(long millis)
+	{
+		queueDelays.add(millis);
+	}
+}
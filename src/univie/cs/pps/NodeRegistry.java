@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps;
+
+import java.util.Arrays;
+
+import univie.cs.pps.utils.QuantileSketch;
+import univie.cs.pps.utils.RunningStatistics;
+
+/**
+ * A registry of {@link PastryPushSum} nodes, keeping the state of each node in
+ * parallel primitive arrays, indexed by the slot of the node.
+ * <p>
+ * The nodes publish their active flag, true value, value, weight and estimate
+ * to the registry whenever their state changes. The registry applies the
+ * differences to its {@link PushSumStatistics}, so that observations usually
+ * do not have to visit the nodes at all. When a pass is needed, to rebuild the
+ * statistics or to find a minimum or maximum that became unknown, it scans the
+ * arrays sequentially instead of dereferencing each node.
+ * <p>
+ * Instances of this class are not thread-safe. They must be used from the
+ * selector thread.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class NodeRegistry
+{
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final PushSumStatistics statistics = new PushSumStatistics();
+	private final QuantileSketch errorQuantiles = new QuantileSketch();
+
+	private PastryPushSum[] apps = new PastryPushSum[INITIAL_CAPACITY];
+	private boolean[] active = new boolean[INITIAL_CAPACITY];
+	private double[] trueValues = new double[INITIAL_CAPACITY];
+	private double[] values = new double[INITIAL_CAPACITY];
+	private double[] weights = new double[INITIAL_CAPACITY];
+	private double[] estimates = new double[INITIAL_CAPACITY];
+
+	private int size = 0;
+
+	/**
+	 * Creates an empty registry.
+	 */
+	public NodeRegistry()
+	{
+		statistics.getTrueValues().setExtremesSource(new RunningStatistics.ExtremesSource()
+		{
+			@Override
+			public void findExtremes(RunningStatistics statistics)
+			{
+				setExtremes(statistics, trueValues);
+			}
+		});
+		statistics.getValues().setExtremesSource(new RunningStatistics.ExtremesSource()
+		{
+			@Override
+			public void findExtremes(RunningStatistics statistics)
+			{
+				setExtremes(statistics, values);
+			}
+		});
+		statistics.getWeights().setExtremesSource(new RunningStatistics.ExtremesSource()
+		{
+			@Override
+			public void findExtremes(RunningStatistics statistics)
+			{
+				setExtremes(statistics, weights);
+			}
+		});
+		statistics.getEstimates().setExtremesSource(new RunningStatistics.ExtremesSource()
+		{
+			@Override
+			public void findExtremes(RunningStatistics statistics)
+			{
+				setExtremes(statistics, estimates);
+			}
+		});
+	}
+
+	/**
+	 * Adds a node to the registry, in an inactive state until the node
+	 * publishes its state.
+	 * 
+	 * @return the slot of the node.
+	 */
+	int register(PastryPushSum app)
+	{
+		if (size == apps.length)
+		{
+			int capacity = 2 * apps.length;
+
+			apps = Arrays.copyOf(apps, capacity);
+			active = Arrays.copyOf(active, capacity);
+			trueValues = Arrays.copyOf(trueValues, capacity);
+			values = Arrays.copyOf(values, capacity);
+			weights = Arrays.copyOf(weights, capacity);
+			estimates = Arrays.copyOf(estimates, capacity);
+		}
+
+		apps[size] = app;
+
+		return size++;
+	}
+
+	/**
+	 * Called by the nodes to publish their current state.
+	 */
+	void publish(int slot, boolean active, double trueValue, double value, double weight, double estimate)
+	{
+		statistics.update(this.active[slot], trueValues[slot], values[slot], weights[slot], estimates[slot], active, trueValue, value,
+				weight, estimate);
+
+		this.active[slot] = active;
+		trueValues[slot] = trueValue;
+		values[slot] = value;
+		weights[slot] = weight;
+		estimates[slot] = estimate;
+	}
+
+	/**
+	 * Returns the number of registered nodes, including inactive ones.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the node in the given slot.
+	 */
+	public PastryPushSum getApp(int slot)
+	{
+		return apps[slot];
+	}
+
+	/**
+	 * Returns whether the node in the given slot is active.
+	 */
+	public boolean isActive(int slot)
+	{
+		return active[slot];
+	}
+
+	/**
+	 * Returns the true value of the node in the given slot.
+	 */
+	public double getTrueValue(int slot)
+	{
+		return trueValues[slot];
+	}
+
+	/**
+	 * Returns the value of the node in the given slot.
+	 */
+	public double getValue(int slot)
+	{
+		return values[slot];
+	}
+
+	/**
+	 * Returns the weight of the node in the given slot.
+	 */
+	public double getWeight(int slot)
+	{
+		return weights[slot];
+	}
+
+	/**
+	 * Returns the estimate of the node in the given slot.
+	 */
+	public double getEstimate(int slot)
+	{
+		return estimates[slot];
+	}
+
+	/**
+	 * Returns the mean of the estimates of all nodes, including inactive ones.
+	 */
+	public double getMeanEstimate()
+	{
+		double sum = 0.;
+
+		for (int i = 0; i < size; i++)
+		{
+			sum += estimates[i];
+		}
+
+		return sum / size;
+	}
+
+	/**
+	 * Returns the statistics of all active nodes, rebuilding them first if the
+	 * rounding errors of the incremental updates might be significant. The
+	 * minimum and maximum of each statistic are found when they are read.
+	 */
+	public PushSumStatistics getStatistics()
+	{
+		if (statistics.needsRebuild())
+		{
+			statistics.clear();
+
+			for (int i = 0; i < size; i++)
+			{
+				if (active[i])
+				{
+					statistics.add(trueValues[i], values[i], weights[i], estimates[i]);
+				}
+			}
+		}
+
+		return statistics;
+	}
+
+	/**
+	 * Returns a sketch of the absolute errors of the estimates of all active
+	 * nodes, relative to the mean of their true values. Unlike the statistics,
+	 * the sketch is collected in a pass over all nodes at each call, since the
+	 * errors of all nodes change with the true mean.
+	 */
+	public QuantileSketch getErrorQuantiles()
+	{
+		double trueMean = getStatistics().getTrueValues().getMean();
+
+		errorQuantiles.clear();
+
+		for (int i = 0; i < size; i++)
+		{
+			if (active[i] && !Double.isNaN(estimates[i]))
+			{
+				errorQuantiles.add(Math.abs(estimates[i] - trueMean));
+			}
+		}
+
+		return errorQuantiles;
+	}
+
+	/**
+	 * Scans the given column for the minimum and maximum of all active nodes.
+	 */
+	private void setExtremes(RunningStatistics statistics, double[] column)
+	{
+		double min = Double.NaN;
+		double max = Double.NaN;
+		boolean first = true;
+
+		for (int i = 0; i < size; i++)
+		{
+			if (active[i])
+			{
+				if (first)
+				{
+					min = column[i];
+					max = column[i];
+					first = false;
+				}
+				else
+				{
+					min = Math.min(min, column[i]);
+					max = Math.max(max, column[i]);
+				}
+			}
+		}
+
+		statistics.setExtremes(min, max);
+	}
+}
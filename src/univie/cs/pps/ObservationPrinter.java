@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps;
+
+import java.io.PrintStream;
+
+import univie.cs.pps.utils.FormattedStatistics;
+import univie.cs.pps.utils.QuantileSketch;
+import univie.cs.pps.utils.RunningStatistics;
+
+/**
+ * Prints the observations of a simulation in the formats selected by the
+ * verbosity level of {@link PPSSimulator}. Used by {@link PPSSetup} and
+ * {@link ArrayPushSum}, so that the output of both engines can be compared
+ * and plotted in the same way, and by {@link BinaryObservationSink} to export
+ * binary observations in the same format.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+class ObservationPrinter implements ObservationSink
+{
+	private final PrintStream out;
+
+	private boolean snapshotHeader = true;
+
+	/**
+	 * @param out
+	 *            the stream to which the observations are written.
+	 */
+	ObservationPrinter(PrintStream out)
+	{
+		this.out = out;
+	}
+
+	/**
+	 * Prints the statistics of the true values, values, weights, estimates and
+	 * errors on separate lines (verbosity level 3). A header is printed before
+	 * the first observation, at {@code time == start}.
+	 */
+	@Override
+	public void writeDetailedStats(long time, long start, PushSumStatistics statistics)
+	{
+		double trueMean = statistics.getTrueValues().getMean();
+
+		printDetailedStats(time, start, statistics.getTrueValues().toString(), statistics.getValues().toString(), statistics
+				.getWeights().toString(), statistics.getEstimates().toString(), statistics.getEstimates().toString(trueMean));
+	}
+
+	/**
+	 * Prints the statistics of the estimates and errors on one line, suitable
+	 * for plotting (verbosity level 2). The quantiles of the absolute errors
+	 * follow the columns of the variation, so that the positions of the
+	 * earlier columns are unchanged. A header is printed before the first
+	 * observation, at {@code time == start}.
+	 */
+	@Override
+	public void writePlotStats(long time, long start, PushSumStatistics statistics, QuantileSketch errorQuantiles, boolean join,
+			boolean leave, double variation)
+	{
+		RunningStatistics estimates = statistics.getEstimates();
+		double trueMean = statistics.getTrueValues().getMean();
+
+		printPlotStats(time, start, estimates.toString(), estimates.toString(trueMean), trueMean, join, leave, variation,
+				errorQuantiles.toString());
+	}
+
+	/**
+	 * Prints the mean estimate of all nodes (verbosity level 1). A header is
+	 * printed before the first observation, at {@code time == start}.
+	 */
+	@Override
+	public void writeEstimate(long time, long start, Object bootNode, double meanEstimate)
+	{
+		if (time == start)
+		{
+			String line = FormattedStatistics.repeatChar('-', 66);
+			out.format("#%31s %16s %16s%n#%s%n", "boot node", "time", "estimate", line);
+		}
+
+		out.format("%32s %16d %16e%n", bootNode, time, meanEstimate);
+	}
+
+	/**
+	 * Prints the state of all active nodes, one line per node, followed by two
+	 * empty lines, so that each snapshot is a separate data set for Gnuplot. A
+	 * header is printed before the first snapshot.
+	 */
+	@Override
+	public void writeSnapshot(long time, long start, NodeRegistry registry)
+	{
+		for (int i = 0; i < registry.size(); i++)
+		{
+			if (registry.isActive(i))
+			{
+				printNode(time, start, i, registry.getTrueValue(i), registry.getValue(i), registry.getWeight(i), registry.getEstimate(i));
+			}
+		}
+
+		out.format("%n%n");
+	}
+
+	/**
+	 * Flushes the stream, but does not close it, since it is owned by the
+	 * caller.
+	 */
+	@Override
+	public void close()
+	{
+		out.flush();
+	}
+
+	/**
+	 * Prints the formatted statistics of the true values, values, weights,
+	 * estimates and errors, in the format of
+	 * {@link #writeDetailedStats(long, long, PushSumStatistics)}.
+	 */
+	void printDetailedStats(long time, long start, String trueValues, String values, String weights, String estimates, String errors)
+	{
+		if (time == start)
+		{
+			String line = FormattedStatistics.repeatChar('-', 51 + FormattedStatistics.header().length());
+			out.format("%n%16s %16s %16s %s %n%s%n", "time", "reltime", "", FormattedStatistics.header(), line);
+		}
+
+		out.format("%16d %16d %16s %s%n%16s %16s %16s %s%n%16s %16s %16s %s%n%16s %16s %16s %s%n%16s %16s %16s %s%n%n", time, time
+				- start, "true:", trueValues, "", "", "value:", values, "", "", "weight:", weights, "", "", "estimate:", estimates, "", "",
+				"errors:", errors);
+	}
+
+	/**
+	 * Prints the formatted statistics of the estimates and errors, in the
+	 * format of
+	 * {@link #writePlotStats(long, long, PushSumStatistics, QuantileSketch, boolean, boolean, double)}
+	 * .
+	 */
+	void printPlotStats(long time, long start, String estimates, String errors, double trueMean, boolean join, boolean leave,
+			double variation, String errorQuantiles)
+	{
+		if (time == start)
+		{
+			String line = FormattedStatistics.repeatChar('-', 70 + FormattedStatistics.header().length()
+					+ FormattedStatistics.header("(err)").length() + QuantileSketch.header("(|err|)").length());
+			out.format("#%15s %s %s %16s %8s %8s %16s %s%n#%s%n", "reltime", FormattedStatistics.header(),
+					FormattedStatistics.header("(err)"), "true", "join", "leave", "variation", QuantileSketch.header("(|err|)"), line);
+		}
+
+		out.format("%16d %s %s %16e %8s %8s %16s %s%n", time - start, estimates, errors, trueMean, join ? "1" : "-", leave ? "1"
+				: "-", variation != 0. || time == start ? String.format("%e", variation) : "-", errorQuantiles);
+	}
+
+	/**
+	 * Prints the state of one node of a snapshot, in the format of
+	 * {@link #writeSnapshot(long, long, NodeRegistry)}.
+	 */
+	void printNode(long time, long start, int slot, double trueValue, double value, double weight, double estimate)
+	{
+		if (snapshotHeader)
+		{
+			out.format("#%15s %8s %16s %16s %16s %16s%n", "reltime", "node", "true", "value", "weight", "estimate");
+			snapshotHeader = false;
+		}
+
+		out.format("%16d %8d %16e %16e %16e %16e%n", time - start, slot, trueValue, value, weight, estimate);
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import univie.cs.pps.utils.QuantileSketch;
+
+/**
+ * Receives the observations of a simulation, in the forms selected by the
+ * verbosity level of {@link PPSSimulator}. {@link ObservationPrinter} writes
+ * them as text, {@link BinaryObservationSink} as fixed-size binary records.
+ * <p>
+ * Observations are passed in the order of their time, starting at
+ * {@code time == start}. Implementations need not be thread-safe; all methods
+ * are called from the thread running the simulation.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public interface ObservationSink extends Closeable
+{
+	/**
+	 * Writes the statistics of the true values, values, weights, estimates and
+	 * errors (verbosity level 3).
+	 */
+	void writeDetailedStats(long time, long start, PushSumStatistics statistics);
+
+	/**
+	 * Writes the statistics of the estimates and errors, the true mean, the
+	 * events since the last observation and the quantiles of the absolute
+	 * errors (verbosity level 2).
+	 */
+	void writePlotStats(long time, long start, PushSumStatistics statistics, QuantileSketch errorQuantiles, boolean join, boolean leave,
+			double variation);
+
+	/**
+	 * Writes the mean estimate of all nodes (verbosity level 1).
+	 */
+	void writeEstimate(long time, long start, Object bootNode, double meanEstimate);
+
+	/**
+	 * Writes the state of all active nodes of the registry.
+	 */
+	void writeSnapshot(long time, long start, NodeRegistry registry);
+
+	/**
+	 * Writes any buffered observations and releases the resources of this
+	 * sink.
+	 * 
+	 * @throws IOException
+	 *             If writing any of the observations failed.
+	 */
+	@Override
+	void close() throws IOException;
+}
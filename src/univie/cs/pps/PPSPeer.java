@@ -26,6 +26,8 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 
+import javax.management.JMException;
+
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 import org.apache.commons.lang3.builder.StandardToStringStyle;
@@ -34,6 +36,7 @@ import rice.selector.TimerTask;
 import univie.cs.pps.utils.GaussianValueReaderFactory;
 import univie.cs.pps.utils.ValueReaderFactory;
 import univie.cs.pps.validators.AnyDouble;
+import univie.cs.pps.validators.NonNegativeDouble;
 import univie.cs.pps.validators.NonNegativeInteger;
 import univie.cs.pps.validators.PositiveInteger;
 
@@ -78,6 +81,8 @@ public class PPSPeer
 			}
 			else
 			{
+				peer.validate();
+
 				System.out.println(PPSPeer.class.getCanonicalName() + " " + StringUtils.join(args, " "));
 				System.out.println(peer + "\n");
 
@@ -122,6 +127,39 @@ public class PPSPeer
 	@Parameter(names = { "-t", "--trace" }, description = "If set, the nodes will log all sent and received messages.")
 	private final Boolean traceMessages = false;
 
+	@Parameter(names = { "--exchange" }, description = "How the node exchanges its value at each step: PUSH sends half to one random node, PUSH_PULL also receives half of the state of that node in return, FAN_OUT sends equal parts to --fanOut random nodes, ADAPTIVE sends to up to --fanOut random nodes while the estimate is changing and to fewer nodes once it is stable.")
+	private final PastryPushSum.Exchange exchange = PastryPushSum.Exchange.PUSH;
+
+	@Parameter(names = { "--fanOut" }, description = "The number of random nodes to send to at each step with --exchange=FAN_OUT, or the maximum number with --exchange=ADAPTIVE.", validateWith = PositiveInteger.class)
+	private final Integer fanOut = 2;
+
+	@Parameter(names = { "--directRatio" }, description = "The fraction of the shares that the node sends directly to a random node of its leafset or routing table, in a single hop, instead of routing them to a random id. Higher ratios save hops, but slow down the convergence.", validateWith = NonNegativeDouble.class)
+	private final Double directRatio = 0.;
+
+	@Parameter(names = { "--maxStepSize" }, description = "If set, the node doubles the time between two steps while their estimate is stable, up to this maximum. Set to zero to always use the same step size.", validateWith = NonNegativeInteger.class)
+	private final Integer maxStepSize = 0;
+
+	@Parameter(names = { "--convergenceWindow" }, description = "The number of steps over which the estimate of the node must be stable to increase the step size, if --maxStepSize is set.", validateWith = PositiveInteger.class)
+	private final Integer convergenceWindow = 10;
+
+	@Parameter(names = { "--convergenceTolerance" }, description = "The accepted relative change of the estimate of the stable node, if --maxStepSize is set.", validateWith = NonNegativeDouble.class)
+	private final Double convergenceTolerance = 1e-4;
+
+	@Parameter(names = { "--batch" }, description = "If set, the node forwards the messages received during one step together in a single message, after it stopped participating.")
+	private final Boolean batching = false;
+
+	@Parameter(names = { "--count" }, description = "If set, the node also estimates the number of nodes and the sum of the values, and periodically prints them. All peers in the ring must use this setting, and exactly one of them --countRoot.")
+	private final Boolean counting = false;
+
+	@Parameter(names = { "--countRoot" }, description = "If set, this peer is the designated node for --count, whose count weight starts at 1.")
+	private final Boolean countRoot = false;
+
+	@Parameter(names = { "--jmx" }, description = "If set, the estimates and metrics of the node are exposed as an MBean of the platform MBean server.")
+	private final Boolean jmx = false;
+
+	@Parameter(names = { "--httpPort" }, description = "If set, the estimates and metrics of the node are served as plain text over HTTP on this port of the loopback interface. Set to zero to disable the HTTP server.", validateWith = NonNegativeInteger.class)
+	private final Integer httpPort = 0;
+
 	@Parameter(names = { "-o", "--outFile" }, description = "If set, redirect (tee) output to file.")
 	private final String outFile = null;
 
@@ -134,6 +172,30 @@ public class PPSPeer
 		return ReflectionToStringBuilder.toString(this, StandardToStringStyle.MULTI_LINE_STYLE);
 	}
 
+	/**
+	 * Checks combinations of parameters that cannot be validated separately.
+	 * 
+	 * @throws ParameterException
+	 *             If the parameters are inconsistent.
+	 */
+	private void validate()
+	{
+		if (maxStepSize > 0 && maxStepSize < STEP_SIZE)
+		{
+			throw new ParameterException("Parameter --maxStepSize must not be less than the step size " + STEP_SIZE + ".");
+		}
+
+		if (directRatio > 1.)
+		{
+			throw new ParameterException("Parameter --directRatio must not be greater than 1.");
+		}
+
+		if (countRoot && !counting)
+		{
+			throw new ParameterException("Parameter --countRoot requires --count.");
+		}
+	}
+
 	private void start()
 	{
 		try
@@ -141,8 +203,14 @@ public class PPSPeer
 			// create the environment
 			final PPSSetup ppss = new PPSSetup(bootAddress, bootPort, bindPort);
 
+			ppss.setBatching(batching);
+			ppss.setCounting(counting, countRoot);
+			ppss.setExchange(exchange, fanOut);
+			ppss.setDirectRatio(directRatio);
+			ppss.setAdaptiveStepSize(maxStepSize, convergenceWindow, convergenceTolerance);
+
 			// XXX replace this with the actual data source
-			ValueReaderFactory valueReaderFactory = new GaussianValueReaderFactory(2, 1, 1, ppss.getEnvironment().getRandomSource());
+			ValueReaderFactory valueReaderFactory = new GaussianValueReaderFactory(2, 1, 1, ppss.getEnvironment().getRandomSource(), ppss);
 
 			// boot node
 			ppss.scheduleJoiningNodes(STEP_SIZE, 1, valueReaderFactory, STEP_SIZE, updateInterval, min, max, traceMessages, new TimerTask()
@@ -152,6 +220,16 @@ public class PPSPeer
 				{
 					// schedule logging
 					ppss.scheduleObservation(0, STEP_SIZE, 1);
+
+					if (counting)
+					{
+						scheduleTotals(ppss);
+					}
+
+					if (jmx || httpPort > 0)
+					{
+						startMonitor(ppss);
+					}
 				}
 			});
 		}
@@ -160,4 +238,54 @@ public class PPSPeer
 			e.printStackTrace();
 		}
 	}
+
+	/**
+	 * Starts a {@link PeerMonitor} for this peer, registered as an MBean and
+	 * serving HTTP, as requested.
+	 */
+	private void startMonitor(PPSSetup ppss)
+	{
+		PeerMonitor monitor = new PeerMonitor(ppss.getRegistry().getApp(0), ppss.getEnvironment());
+		monitor.start(STEP_SIZE);
+
+		try
+		{
+			if (jmx)
+			{
+				monitor.registerMBean();
+			}
+
+			if (httpPort > 0)
+			{
+				monitor.startHttpServer(httpPort);
+			}
+		}
+		catch (JMException e)
+		{
+			e.printStackTrace();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Periodically prints the number of nodes and the sum of the values
+	 * estimated by this peer.
+	 */
+	private void scheduleTotals(final PPSSetup ppss)
+	{
+		ppss.getEnvironment().getSelectorManager().getTimer().schedule(new TimerTask()
+		{
+			@Override
+			public void run()
+			{
+				PastryPushSum app = ppss.getRegistry().getApp(0);
+
+				System.out.format("# [%d] size: %e, sum: %e%n", ppss.getEnvironment().getTimeSource().currentTimeMillis(),
+						app.getSizeEstimate(), app.getSumEstimate());
+			}
+		}, 0, STEP_SIZE);
+	}
 }
@@ -23,11 +23,12 @@
 package univie.cs.pps;
 
 import java.io.IOException;
+import java.io.PrintStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.Observable;
 import java.util.Observer;
-import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
 
 import rice.environment.Environment;
 import rice.p2p.commonapi.rawserialization.RawMessage;
@@ -42,10 +43,15 @@ import rice.pastry.direct.NetworkSimulator;
 import rice.pastry.socket.SocketPastryNodeFactory;
 import rice.pastry.standard.RandomNodeIdFactory;
 import rice.selector.TimerTask;
-import univie.cs.pps.utils.FormattedStatistics;
+import univie.cs.pps.events.LoggingEventListener;
+import univie.cs.pps.events.PushSumEventListener;
+import univie.cs.pps.utils.CombinedValueReaderFactory;
 import univie.cs.pps.utils.GaussianValueReader;
 import univie.cs.pps.utils.ValueReader;
 import univie.cs.pps.utils.ValueReaderFactory;
+import univie.cs.pps.utils.VariationAccumulator;
+import univie.cs.pps.utils.VectorValueReader;
+import univie.cs.pps.utils.VectorValueReaderFactory;
 
 /**
  * The PPSSetup class is used by {@link PPSSimulator} and {@link PPSPeer} to
@@ -54,33 +60,42 @@ import univie.cs.pps.utils.ValueReaderFactory;
  * @author Dario Seidl
  * 
  */
-public class PPSSetup
+public class PPSSetup implements VariationAccumulator
 {
-	private static boolean join;
-	private static boolean leave;
-	private static double variation;
-
-	/**
-	 * Used to keep track of value variations from the
-	 * {@link GaussianValueReader} objects, for logging and plotting.
-	 */
-	public static void addVariation(double v)
-	{
-		variation += Math.abs(v);
-	}
-
 	private final Environment environment;
 	private final NetworkSimulator<DirectNodeHandle, RawMessage> simulator;
 	private final NodeIdFactory nodeIdFactory;
 	private final PastryNodeFactory nodeFactory;
 	private final InetSocketAddress socketBootAddress;
 
-	private final Vector<PastryPushSum> apps = new Vector<PastryPushSum>();
+	private final NodeRegistry registry = new NodeRegistry();
+
+	private final CountDownLatch terminated = new CountDownLatch(1);
+
+	private PushSumEventListener eventListener;
+	private PushSumEventListener traceListener;
+	private PrintStream out = System.out;
+	private ObservationSink sink;
+	private boolean batching;
+	private boolean gracefulLeave;
+	private double directRatio;
+	private boolean counting;
+	private boolean countRoot;
+	private int epochSteps;
+	private PastryPushSum.Exchange exchange = PastryPushSum.Exchange.PUSH;
+	private int fanOut = 1;
+	private long maxStepSize;
+	private int convergenceWindow;
+	private double convergenceTolerance;
 
 	private Object bootHandle;
 	private long start = 0;
 	private long time;
 
+	private boolean join;
+	private boolean leave;
+	private double variation;
+
 	/**
 	 * Creates an environment for using the simulator.
 	 */
@@ -141,6 +156,145 @@ public class PPSSetup
 		nodeFactory = new SocketPastryNodeFactory(nodeIdFactory, InetAddress.getByName(bootAddress), bindPort, environment);
 	}
 
+	/**
+	 * Used to keep track of value variations from the
+	 * {@link GaussianValueReader} objects, for logging and plotting.
+	 */
+	@Override
+	public void addVariation(double v)
+	{
+		variation += Math.abs(v);
+	}
+
+	/**
+	 * Sets the stream to which the observations and log messages of this
+	 * class and of all nodes created after this call are written. By default,
+	 * this is the standard output.
+	 */
+	public void setOut(PrintStream out)
+	{
+		this.out = out;
+		this.traceListener = null;
+	}
+
+	/**
+	 * Sets the sink to which the observations scheduled after this call are
+	 * written. By default, they are printed as text to the stream set with
+	 * {@link #setOut(PrintStream)}. The sink is not closed by this class.
+	 * 
+	 * @param sink
+	 *            the sink, or {@code null} to print the observations.
+	 */
+	public void setObservationSink(ObservationSink sink)
+	{
+		this.sink = sink;
+	}
+
+	/**
+	 * Sets a listener for the events of all nodes created after this call.
+	 * 
+	 * @param eventListener
+	 *            the listener, or {@code null} to use the default listener of
+	 *            the nodes.
+	 */
+	public void setEventListener(PushSumEventListener eventListener)
+	{
+		this.eventListener = eventListener;
+	}
+
+	/**
+	 * Enables the estimation of the number of nodes and of the sums of the
+	 * values for all nodes created after this call.
+	 * 
+	 * @param counting
+	 *            {@code true} to enable counting. All nodes of the ring must
+	 *            use the same setting.
+	 * @param root
+	 *            if {@code true}, the first node created by this instance is
+	 *            the designated node of the ring. In a simulation, this is the
+	 *            boot node. Among peers, exactly one must be the designated
+	 *            node.
+	 * @see PastryPushSum#setCounting(boolean)
+	 */
+	public void setCounting(boolean counting, boolean root)
+	{
+		this.counting = counting;
+		this.countRoot = root;
+	}
+
+	/**
+	 * Enables epoch-tagged resets for all nodes created after this call.
+	 * 
+	 * @param mixingSteps
+	 *            the number of steps a new epoch runs along with the current
+	 *            one, or 0 to reset the nodes as soon as they receive the
+	 *            reset notification.
+	 * @see PastryPushSum#setEpochs(int)
+	 */
+	public void setEpochs(int mixingSteps)
+	{
+		this.epochSteps = mixingSteps;
+	}
+
+	/**
+	 * Sets the exchange of all nodes created after this call.
+	 * 
+	 * @see PastryPushSum#setExchange(PastryPushSum.Exchange, int)
+	 */
+	public void setExchange(PastryPushSum.Exchange exchange, int fanOut)
+	{
+		this.exchange = exchange;
+		this.fanOut = fanOut;
+	}
+
+	/**
+	 * Sets the fraction of the shares that all nodes created after this call
+	 * send directly to a neighbor.
+	 * 
+	 * @see PastryPushSum#setDirectRatio(double)
+	 */
+	public void setDirectRatio(double directRatio)
+	{
+		this.directRatio = directRatio;
+	}
+
+	/**
+	 * Enables the adaptive step size of all nodes created after this call.
+	 * 
+	 * @param maxStepSize
+	 *            the maximum time between two steps, or 0 to disable the
+	 *            adaptive step size.
+	 * @see PastryPushSum#setAdaptiveStepSize(long, int, double)
+	 */
+	public void setAdaptiveStepSize(long maxStepSize, int window, double tolerance)
+	{
+		this.maxStepSize = maxStepSize;
+		this.convergenceWindow = window;
+		this.convergenceTolerance = tolerance;
+	}
+
+	/**
+	 * Enables or disables the batching of forwarded shares for all nodes
+	 * created after this call.
+	 * 
+	 * @see PastryPushSum#setBatching(boolean)
+	 */
+	public void setBatching(boolean batching)
+	{
+		this.batching = batching;
+	}
+
+	/**
+	 * Enables or disables the graceful leave of all nodes created after this
+	 * call.
+	 * 
+	 * @see PastryPushSum#setGracefulLeave(boolean)
+	 */
+	public void setGracefulLeave(boolean gracefulLeave)
+	{
+		this.gracefulLeave = gracefulLeave;
+	}
+
 	/**
 	 * Creates new nodes and boot them into the ring.
 	 * 
@@ -172,6 +326,43 @@ public class PPSSetup
 	 */
 	public void scheduleJoiningNodes(long period, final int nodes, final ValueReaderFactory valueReaderFactory, final int stepSize,
 			final int updateInterval, final double min, final double max, final boolean traceMessages, final TimerTask doAfter)
+	{
+		scheduleJoiningNodes(period, nodes, new CombinedValueReaderFactory(valueReaderFactory), stepSize, updateInterval, min, max,
+				traceMessages, doAfter);
+	}
+
+	/**
+	 * Creates new nodes, which estimate the means of a vector of values, and
+	 * boot them into the ring.
+	 * 
+	 * @param period
+	 *            the time to wait between creating each new node.
+	 * @param nodes
+	 *            the number of new nodes.
+	 * @param valueReaderFactory
+	 *            a {@link VectorValueReaderFactory} that creates
+	 *            {@link VectorValueReader} instances for the new nodes.
+	 * @param stepSize
+	 *            the time between sending messages to the node to signal the
+	 *            start of the next step in the Push-Sum protocol.
+	 * @param updateInterval
+	 *            the number of steps between updating node values. If set to 0,
+	 *            the node values will never be updated.
+	 * @param min
+	 *            the domain-specific minimum possible value, used as a lower
+	 *            bound for the estimates.
+	 * @param max
+	 *            the domain-specific maximum possible value, used as an upper
+	 *            bound for the estimates.
+	 * @param traceMessages
+	 *            if set to @code true}, the new nodes will log all sent and
+	 *            received messages.
+	 * @param doAfter
+	 *            a {@link rice.selector.TimerTask} to execute after all nodes
+	 *            have been booted.
+	 */
+	public void scheduleJoiningNodes(long period, final int nodes, final VectorValueReaderFactory valueReaderFactory, final int stepSize,
+			final int updateInterval, final double min, final double max, final boolean traceMessages, final TimerTask doAfter)
 	{
 		// stop simulator to get deterministic results
 		if (simulator != null)
@@ -196,10 +387,39 @@ public class PPSSetup
 					log("Create new node " + node + ".");
 
 					// create push sum application
-					PastryPushSum app = new PastryPushSum(node, stepSize, updateInterval, valueReaderFactory.createValueReader(), min, max,
+					PastryPushSum app = new PastryPushSum(node, stepSize, updateInterval, valueReaderFactory.createVectorValueReader(), min, max,
 							traceMessages);
 
-					apps.add(app);
+					if (counting)
+					{
+						app.setCounting(countRoot && registry.size() == 0);
+					}
+
+					if (epochSteps > 0)
+					{
+						app.setEpochs(epochSteps);
+					}
+
+					app.setBatching(batching);
+					app.setGracefulLeave(gracefulLeave);
+					app.setExchange(exchange, fanOut);
+					app.setDirectRatio(directRatio);
+
+					if (maxStepSize > 0)
+					{
+						app.setAdaptiveStepSize(maxStepSize, convergenceWindow, convergenceTolerance);
+					}
+
+					if (eventListener != null)
+					{
+						app.setEventListener(eventListener);
+					}
+					else if (traceMessages)
+					{
+						app.setEventListener(getTraceListener());
+					}
+
+					app.setRegistry(registry);
 
 					final int lastNode = ++currentNode;
 
@@ -295,6 +515,37 @@ public class PPSSetup
 		scheduleJoiningNodes(period, Integer.MAX_VALUE, valueReaderFactory, stepSize, updateInterval, min, max, traceMessages, null);
 	}
 
+	/**
+	 * Periodically creates new nodes, which estimate the means of a vector of
+	 * values, and boot them into the ring.
+	 * 
+	 * @param period
+	 *            the time to wait between creating each new node.
+	 * @param valueReaderFactory
+	 *            a {@link VectorValueReaderFactory} that creates
+	 *            {@link VectorValueReader} instances for the new nodes.
+	 * @param stepSize
+	 *            the time between sending messages to the node to signal the
+	 *            start of the next step in the Push-Sum protocol.
+	 * @param updateInterval
+	 *            the number of steps between updating node values. If set to 0,
+	 *            the node values will never be updated.
+	 * @param min
+	 *            the minimum possible value, used as a lower bound for the
+	 *            estimates.
+	 * @param max
+	 *            the maximum possible value, used as an upper bound for the
+	 *            estimates.
+	 * @param traceMessages
+	 *            if set to true, the new nodes will log all sent and received
+	 *            messages.
+	 */
+	public void scheduleJoiningNodes(long period, final VectorValueReaderFactory valueReaderFactory, final int stepSize,
+			final int updateInterval, final double min, final double max, final boolean traceMessages)
+	{
+		scheduleJoiningNodes(period, Integer.MAX_VALUE, valueReaderFactory, stepSize, updateInterval, min, max, traceMessages, null);
+	}
+
 	/**
 	 * Periodically tells a random node to stop participating.
 	 */
@@ -305,8 +556,16 @@ public class PPSSetup
 			@Override
 			public void run()
 			{
-				int node = environment.getRandomSource().nextInt(apps.size() - 1);
-				apps.get(node).stop();
+				int node = environment.getRandomSource().nextInt(registry.size() - 1);
+				PastryPushSum app = registry.getApp(node);
+
+				// the trace listener reports the stop itself
+				if (app.isActive() && traceListener == null)
+				{
+					log(app + ": stop.");
+				}
+
+				app.stop();
 
 				leave = true;
 			}
@@ -315,7 +574,8 @@ public class PPSSetup
 
 	/**
 	 * Broadcast a message from the first node to all nodes, initiating a reset
-	 * of the Push-Sum protocol.
+	 * of the Push-Sum protocol. With epochs, the first active node starts the
+	 * next epoch instead.
 	 */
 	public void scheduleReset(long period)
 	{
@@ -324,7 +584,20 @@ public class PPSSetup
 			@Override
 			public void run()
 			{
-				apps.get(0).broadcastReset();
+				if (epochSteps == 0)
+				{
+					registry.getApp(0).broadcastReset();
+					return;
+				}
+
+				for (int i = 0; i < registry.size(); i++)
+				{
+					if (registry.getApp(i).isActive())
+					{
+						registry.getApp(i).broadcastReset();
+						return;
+					}
+				}
 			}
 		}, period, period);
 	}
@@ -339,6 +612,8 @@ public class PPSSetup
 	 */
 	public void scheduleObservation(long delay, long period, final int verbosity)
 	{
+		final ObservationSink sink = getObservationSink();
+
 		environment.getSelectorManager().getTimer().schedule(new TimerTask()
 		{
 			@Override
@@ -353,15 +628,15 @@ public class PPSSetup
 
 				if (verbosity >= 3)
 				{
-					printDetailedStats();
+					sink.writeDetailedStats(time, start, registry.getStatistics());
 				}
 				else if (verbosity == 2)
 				{
-					printPlotStats();
+					sink.writePlotStats(time, start, registry.getStatistics(), registry.getErrorQuantiles(), join, leave, variation);
 				}
 				else if (verbosity == 1)
 				{
-					printEsitmate();
+					sink.writeEstimate(time, start, registry.getApp(0), registry.getMeanEstimate());
 				}
 
 				join = false;
@@ -372,126 +647,181 @@ public class PPSSetup
 	}
 
 	/**
-	 * Destroys the environment after the given delay.
+	 * Schedules a task writing the state of all active nodes to the
+	 * observation sink.
 	 * 
 	 * @param delay
-	 *            the time before the environment is destroyed.
+	 *            Time before the task is run for the first time.
+	 * @param period
+	 *            Interval between subsequent invocations.
 	 */
-	public void scheduleTermination(long delay)
+	public void scheduleSnapshots(long delay, long period)
 	{
+		final ObservationSink sink = getObservationSink();
+
 		environment.getSelectorManager().getTimer().schedule(new TimerTask()
 		{
 			@Override
 			public void run()
 			{
-				environment.destroy();
+				if (start == 0)
+				{
+					start = environment.getTimeSource().currentTimeMillis();
+				}
+
+				sink.writeSnapshot(environment.getTimeSource().currentTimeMillis(), start, registry);
 			}
-		}, delay);
+		}, delay, period);
 	}
 
 	/**
-	 * Returns the Pastry {@link Environment}.
+	 * Schedules a task writing the full state of all nodes, including inactive
+	 * ones, to a {@link SnapshotWriter}. The state is copied on the selector
+	 * thread and written to the file by the background thread of the writer.
+	 * 
+	 * @param delay
+	 *            Time before the task is run for the first time.
+	 * @param period
+	 *            Interval between subsequent invocations.
+	 * @param writer
+	 *            the writer, which is not closed by this class.
 	 */
-	public Environment getEnvironment()
+	public void scheduleSnapshotDumps(long delay, long period, final SnapshotWriter writer)
 	{
-		return environment;
-	}
-
-	private void printDetailedStats()
-	{
-		if (time == start)
-		{
-			String line = FormattedStatistics.repeatChar('-', 51 + FormattedStatistics.header().length());
-			System.out.format("%n%16s %16s %16s %s %n%s%n", "time", "reltime", "", FormattedStatistics.header(), line);
-		}
-
-		FormattedStatistics trueValues = new FormattedStatistics();
-
-		for (int i = 0; i < apps.size(); i++)
+		environment.getSelectorManager().getTimer().schedule(new TimerTask()
 		{
-			if (apps.get(i).isActive())
+			@Override
+			public void run()
 			{
-				trueValues.addValue(apps.get(i).getTrueValue());
+				writer.write(environment.getTimeSource().currentTimeMillis(), registry);
 			}
-		}
+		}, delay, period);
+	}
 
-		FormattedStatistics values = new FormattedStatistics();
-		FormattedStatistics weights = new FormattedStatistics();
-		FormattedStatistics estimates = new FormattedStatistics();
-		FormattedStatistics errors = new FormattedStatistics();
+	/**
+	 * Destroys the environment after the given delay.
+	 * 
+	 * @param delay
+	 *            the time before the environment is destroyed.
+	 */
+	public void scheduleTermination(long delay)
+	{
+		scheduleTermination(delay, null);
+	}
 
-		for (int i = 0; i < apps.size(); i++)
+	/**
+	 * Destroys the environment after the given delay.
+	 * 
+	 * @param delay
+	 *            the time before the environment is destroyed.
+	 * @param doBefore
+	 *            a {@link rice.selector.TimerTask} to execute right before the
+	 *            environment is destroyed.
+	 */
+	public void scheduleTermination(long delay, final TimerTask doBefore)
+	{
+		environment.getSelectorManager().getTimer().schedule(new TimerTask()
 		{
-			if (apps.get(i).isActive())
+			@Override
+			public void run()
 			{
-				values.addValue(apps.get(i).getValue());
-				weights.addValue(apps.get(i).getWeight());
-				estimates.addValue(apps.get(i).getEstimate());
-				errors.addValue(apps.get(i).getEstimate() - trueValues.getMean());
+				// release the threads waiting in awaitTermination, even if the
+				// task or the destruction of the environment fails
+				try
+				{
+					if (doBefore != null)
+					{
+						doBefore.run();
+					}
+				}
+				finally
+				{
+					try
+					{
+						environment.destroy();
+					}
+					finally
+					{
+						terminated.countDown();
+					}
+				}
 			}
-		}
+		}, delay);
+	}
 
-		System.out.format("%16d %16d %16s %s%n%16s %16s %16s %s%n%16s %16s %16s %s%n%16s %16s %16s %s%n%16s %16s %16s %s%n%n", time, time
-				- start, "true:", trueValues, "", "", "value:", values, "", "", "weight:", weights, "", "", "estimate:", estimates, "", "",
-				"errors:", errors);
+	/**
+	 * Blocks until the environment has been destroyed by a task scheduled with
+	 * {@link #scheduleTermination(long)}, or the task has failed.
+	 * 
+	 * @throws InterruptedException
+	 *             If the current thread is interrupted while waiting.
+	 */
+	public void awaitTermination() throws InterruptedException
+	{
+		terminated.await();
 	}
 
-	private void printPlotStats()
+	/**
+	 * Returns the {@link NodeRegistry} holding the state of all nodes created
+	 * by this class.
+	 */
+	public NodeRegistry getRegistry()
 	{
-		if (time == start)
-		{
-			String line = FormattedStatistics.repeatChar('-',
-					69 + FormattedStatistics.header().length() + FormattedStatistics.header("(err)").length());
-			System.out.format("#%15s %s %s %16s %8s %8s %16s%n#%s%n", "reltime", FormattedStatistics.header(),
-					FormattedStatistics.header("(err)"), "true", "join", "leave", "variation", line);
-		}
+		return registry;
+	}
 
-		FormattedStatistics trueValues = new FormattedStatistics();
+	/**
+	 * Returns the sum of the metrics of all nodes created by this class,
+	 * including the stopped ones. Must be called on the selector thread, for
+	 * example from a timer task.
+	 * 
+	 * @see PastryPushSum#getMetrics()
+	 */
+	public NodeMetrics getMetrics()
+	{
+		NodeMetrics metrics = new NodeMetrics();
 
-		for (int i = 0; i < apps.size(); i++)
+		for (int i = 0; i < registry.size(); i++)
 		{
-			if (apps.get(i).isActive())
-			{
-				trueValues.addValue(apps.get(i).getTrueValue());
-			}
+			metrics.add(registry.getApp(i).getMetrics());
 		}
 
-		FormattedStatistics estimates = new FormattedStatistics();
-		FormattedStatistics errors = new FormattedStatistics();
-
-		for (int i = 0; i < apps.size(); i++)
-		{
-			if (apps.get(i).isActive())
-			{
-				estimates.addValue(apps.get(i).getEstimate());
-				errors.addValue(apps.get(i).getEstimate() - trueValues.getMean());
-			}
-		}
+		return metrics;
+	}
 
-		System.out.format("%16d %s %s %16e %8s %8s %16s%n", time - start, estimates, errors, trueValues.getMean(), join ? "1" : "-",
-				leave ? "1" : "-", variation != 0. || time == start ? String.format("%e", variation) : "-");
+	/**
+	 * Returns the Pastry {@link Environment}.
+	 */
+	public Environment getEnvironment()
+	{
+		return environment;
 	}
 
-	private void printEsitmate()
+	/**
+	 * Returns the network simulator, or {@code null} if networking is used.
+	 */
+	public NetworkSimulator<DirectNodeHandle, RawMessage> getSimulator()
 	{
-		if (time == start)
-		{
-			String line = FormattedStatistics.repeatChar('-', 66);
-			System.out.format("#%31s %16s %16s%n#%s%n", "boot node", "time", "estimate", line);
-		}
+		return simulator;
+	}
 
-		FormattedStatistics estimates = new FormattedStatistics();
+	private ObservationSink getObservationSink()
+	{
+		return (sink != null) ? sink : new ObservationPrinter(out);
+	}
 
-		for (int i = 0; i < apps.size(); i++)
+	private PushSumEventListener getTraceListener()
+	{
+		if (traceListener == null)
 		{
-			estimates.addValue(apps.get(i).getEstimate());
+			traceListener = new LoggingEventListener(environment.getTimeSource(), out);
 		}
 
-		System.out.format("%32s %16d %16e%n", apps.get(0), time, estimates.getMean());
+		return traceListener;
 	}
 
 	private void log(String text)
 	{
-		System.out.format("# [%d] %s%n", environment.getTimeSource().currentTimeMillis(), text);
+		out.format("# [%d] %s%n", environment.getTimeSource().currentTimeMillis(), text);
 	}
 }
@@ -27,6 +27,7 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.Arrays;
 
 import org.apache.commons.io.output.TeeOutputStream;
 import org.apache.commons.lang3.StringUtils;
@@ -34,8 +35,15 @@ import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 import org.apache.commons.lang3.builder.StandardToStringStyle;
 
 import rice.selector.TimerTask;
+import univie.cs.pps.events.RingBufferEventRecorder;
+import univie.cs.pps.utils.CombinedValueReaderFactory;
 import univie.cs.pps.utils.GaussianValueReaderFactory;
+import univie.cs.pps.utils.Histogram;
+import univie.cs.pps.utils.HistogramValueReaderFactory;
+import univie.cs.pps.utils.QuantileSketch;
+import univie.cs.pps.utils.TraceValueReaderFactory;
 import univie.cs.pps.utils.ValueReaderFactory;
+import univie.cs.pps.utils.VectorValueReaderFactory;
 import univie.cs.pps.validators.AnyDouble;
 import univie.cs.pps.validators.NonNegativeDouble;
 import univie.cs.pps.validators.NonNegativeInteger;
@@ -99,8 +107,18 @@ public final class PPSSimulator
 			{
 				jc.usage();
 			}
+			else if (sim.sweepFile != null)
+			{
+				sim.validate();
+
+				PPSSweep sweep = new PPSSweep(PPSSweep.readParameterSets(new File(sim.sweepFile), PPSSweep.withoutSweepOptions(args)),
+						new File((sim.sweepDir != null) ? sim.sweepDir : "sweep"), sim.threads);
+				sweep.run();
+			}
 			else
 			{
+				sim.validate();
+
 				System.out.println(PPSSimulator.class.getCanonicalName() + " " + StringUtils.join(args, " "));
 				System.out.println(sim + "\n");
 
@@ -109,7 +127,7 @@ public final class PPSSimulator
 					teeOut(new File(sim.outFile));
 				}
 
-				sim.start();
+				sim.run(System.out);
 			}
 		}
 		catch (ParameterException e)
@@ -118,7 +136,11 @@ public final class PPSSimulator
 
 			jc.usage();
 		}
-		catch (FileNotFoundException e)
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		catch (InterruptedException e)
 		{
 			e.printStackTrace();
 		}
@@ -160,6 +182,15 @@ public final class PPSSimulator
 	@Parameter(names = { "--variateStd" }, description = "Node values variate at each update step by an amount chosen from a normal distribution with mean 0 and this as standard deviation.", validateWith = NonNegativeDouble.class)
 	private final Double variateStd = 1.;
 
+	@Parameter(names = { "--dimensions" }, description = "Number of values per node. Each node estimates the means of all values, sending them in one message per step. The values are chosen independently with the parameters above. The output shows the first value only.", validateWith = PositiveInteger.class)
+	private final Integer dimensions = 1;
+
+	@Parameter(names = { "--histogramBins" }, description = "If set, the nodes also estimate the distribution of the values, in this many bins of equal width between --min and --max, and the quantiles estimated by one node are printed at the end. Set to zero to estimate the mean only.", validateWith = NonNegativeInteger.class)
+	private final Integer histogramBins = 0;
+
+	@Parameter(names = { "--valueFile" }, description = "If set, replay the node values from this value trace file instead of choosing them at random. Each node replays one column, reading the next row at each update. Use ValueTraceFile to convert a CSV file with one column per node and one row per update.")
+	private final String valueFile = null;
+
 	@Parameter(names = { "-j", "--joinInterval" }, description = "Interval at which new nodes join the ring. Set to zero to disable joining of nodes after the initial setup.", validateWith = NonNegativeInteger.class)
 	private final Integer joinInterval = 0;
 
@@ -169,6 +200,9 @@ public final class PPSSimulator
 	@Parameter(names = { "--resetInterval" }, description = "Interval at which a broadcast is sent to all node to initiate a reset of the protocol. Set to zero to disable resetting.", validateWith = NonNegativeInteger.class)
 	private final Integer resetInterval = 0;
 
+	@Parameter(names = { "--epochSteps" }, description = "If set, a reset starts a new epoch of the protocol, which the nodes run along with the current one for this number of steps before switching to it, instead of resetting at once. Must be less than --resetInterval. Set to zero to reset at once.", validateWith = NonNegativeInteger.class)
+	private final Integer epochSteps = 0;
+
 	@Parameter(names = { "-r", "--randomSeed" }, description = "If set to a value different from 0, use this as the random seed for the simulator. Not used if --bootPort is set.")
 	private final Integer randomSeed = null;
 
@@ -178,69 +212,506 @@ public final class PPSSimulator
 	@Parameter(names = { "-t", "--trace" }, description = "If set, the nodes will log all sent and received messages.")
 	private final Boolean traceMessages = false;
 
+	@Parameter(names = { "--traceFile" }, description = "If set, record all sent and received messages in a binary ring buffer and write it to this file at the end of the simulation. Use RingBufferEventRecorder to print the file.")
+	private final String traceFile = null;
+
+	@Parameter(names = { "--traceCapacity" }, description = "The number of events kept in the ring buffer for --traceFile. When the buffer is full, the oldest events are overwritten. At most 53687091.", validateWith = PositiveInteger.class)
+	private final Integer traceCapacity = 1 << 20;
+
+	@Parameter(names = { "--binaryFile" }, description = "If set, write the observations as binary records to this file instead of printing them. Use BinaryObservationSink to export the file to the text format.")
+	private final String binaryFile = null;
+
+	@Parameter(names = { "--snapshotFile" }, description = "If set, write the full state of all nodes every --snapshotInterval steps to this GZIP compressed file, from a background thread. Use SnapshotWriter to print the file.")
+	private final String snapshotFile = null;
+
+	@Parameter(names = { "--snapshotInterval" }, description = "If set, write the state of all nodes to --binaryFile and to --snapshotFile every this many steps. Set to zero to disable the snapshots.", validateWith = NonNegativeInteger.class)
+	private final Integer snapshotInterval = 0;
+
+	@Parameter(names = { "--exchange" }, description = "How nodes exchange their values at each step: PUSH sends half to one random node, PUSH_PULL also receives half of the state of that node in return, FAN_OUT sends equal parts to --fanOut random nodes, ADAPTIVE sends to up to --fanOut random nodes while the estimate is changing and to fewer nodes once it is stable.")
+	private final PastryPushSum.Exchange exchange = PastryPushSum.Exchange.PUSH;
+
+	@Parameter(names = { "--fanOut" }, description = "The number of random nodes to send to at each step with --exchange=FAN_OUT, or the maximum number with --exchange=ADAPTIVE.", validateWith = PositiveInteger.class)
+	private final Integer fanOut = 2;
+
+	@Parameter(names = { "--directRatio" }, description = "The fraction of the shares that nodes send directly to a random node of their leafset or routing table, in a single hop, instead of routing them to a random id. Higher ratios save hops, but slow down the convergence.", validateWith = NonNegativeDouble.class)
+	private final Double directRatio = 0.;
+
+	@Parameter(names = { "--maxStepSize" }, description = "If set, nodes double the time between two steps while their estimate is stable, up to this maximum. Set to zero to always use the same step size.", validateWith = NonNegativeInteger.class)
+	private final Integer maxStepSize = 0;
+
+	@Parameter(names = { "--convergenceWindow" }, description = "The number of steps over which the estimate of a node must be stable to increase the step size, if --maxStepSize is set.", validateWith = PositiveInteger.class)
+	private final Integer convergenceWindow = 10;
+
+	@Parameter(names = { "--convergenceTolerance" }, description = "The accepted relative change of the estimate of a stable node, if --maxStepSize is set.", validateWith = NonNegativeDouble.class)
+	private final Double convergenceTolerance = 1e-4;
+
+	@Parameter(names = { "--batch" }, description = "If set, nodes that stopped participating forward the messages received during one step together in a single message, instead of forwarding each message on its own.")
+	private final Boolean batching = false;
+
+	@Parameter(names = { "--gracefulLeave" }, description = "If set, leaving nodes hand off their values and weights, less their own contribution, to the live nodes of their leafset, so that they are removed from the estimates without a reset.")
+	private final Boolean gracefulLeave = false;
+
+	@Parameter(names = { "--count" }, description = "If set, the nodes also estimate the number of nodes and the sum of the values, with a count weight sent in the same messages, and the totals estimated by one node are printed at the end.")
+	private final Boolean counting = false;
+
 	@Parameter(names = { "-o", "--outFile" }, description = "If set, redirect (tee) output to file.")
 	private final String outFile = null;
 
+	@Parameter(names = { "--sweep" }, description = "If set, run a parameter sweep instead of a single simulation. Each line of this file is a parameter set, given as arguments to this class. Comma-separated values (e.g. -n=10,100 -r=1,2,3) are expanded to all combinations. The other arguments on the command line apply to all runs, unless overridden by the file.")
+	private final String sweepFile = null;
+
+	@Parameter(names = { "--sweepDir" }, description = "The directory to which the results of a sweep are written, one file per run. Defaults to sweep in the working directory.")
+	private final String sweepDir = null;
+
+	@Parameter(names = { "--engine" }, description = "The simulation engine: PASTRY runs PastryPushSum nodes in the Pastry simulator, ARRAY runs the same steps on plain arrays in synchronous rounds, which is much faster for large numbers of nodes. The ARRAY engine ignores the Pastry specific parameters, such as --leafsetSize and --trace.")
+	private final Engine engine = Engine.PASTRY;
+
+	@Parameter(names = { "--targets" }, description = "How the ARRAY engine chooses the target of a message: UNIFORM chooses each node with equal probability, ROUTING chooses the node closest to a random id on a ring, like routing in Pastry.")
+	private final ArrayPushSum.TargetSelection targetSelection = ArrayPushSum.TargetSelection.UNIFORM;
+
+	@Parameter(names = { "--threads" }, description = "The number of runs of a sweep executed in parallel, or the number of threads used by the ARRAY engine.", validateWith = PositiveInteger.class)
+	private final Integer threads = Runtime.getRuntime().availableProcessors();
+
 	@Parameter(names = { "-h", "--help" }, description = "Print this usage message.", help = true)
 	private boolean help;
 
+	/**
+	 * The available simulation engines.
+	 */
+	public enum Engine
+	{
+		/**
+		 * Simulate {@link PastryPushSum} nodes in the Pastry simulator.
+		 */
+		PASTRY,
+
+		/**
+		 * Simulate the nodes with {@link ArrayPushSum}.
+		 */
+		ARRAY
+	}
+
 	@Override
 	public String toString()
 	{
 		return ReflectionToStringBuilder.toString(this, StandardToStringStyle.MULTI_LINE_STYLE);
 	}
 
-	private void start()
+	/**
+	 * Returns {@code true} if the simulation uses networking instead of the
+	 * simulator.
+	 */
+	boolean usesNetwork()
+	{
+		return port != null;
+	}
+
+	/**
+	 * Returns {@code true} if the observations are written to a binary file.
+	 */
+	boolean writesBinaryFile()
+	{
+		return binaryFile != null;
+	}
+
+	/**
+	 * Returns {@code true} if the state of the nodes is written to a snapshot
+	 * file.
+	 */
+	boolean writesSnapshotFile()
+	{
+		return snapshotFile != null;
+	}
+
+	/**
+	 * Checks combinations of parameters that cannot be validated separately.
+	 * 
+	 * @throws ParameterException
+	 *             If the parameters are inconsistent.
+	 */
+	void validate()
+	{
+		if (engine == Engine.ARRAY && usesNetwork())
+		{
+			throw new ParameterException("Parameter --bootPort cannot be used with the ARRAY engine.");
+		}
+
+		if (engine == Engine.ARRAY && exchange != PastryPushSum.Exchange.PUSH)
+		{
+			throw new ParameterException("Parameter --exchange cannot be used with the ARRAY engine.");
+		}
+
+		if (engine == Engine.ARRAY && maxStepSize > 0)
+		{
+			throw new ParameterException("Parameter --maxStepSize cannot be used with the ARRAY engine.");
+		}
+
+		if (maxStepSize > 0 && maxStepSize < stepSize)
+		{
+			throw new ParameterException("Parameter --maxStepSize must not be less than --stepSize.");
+		}
+
+		if (engine == Engine.ARRAY && dimensions > 1)
+		{
+			throw new ParameterException("Parameter --dimensions cannot be used with the ARRAY engine.");
+		}
+
+		if (engine == Engine.ARRAY && valueFile != null)
+		{
+			throw new ParameterException("Parameter --valueFile cannot be used with the ARRAY engine.");
+		}
+
+		if (valueFile != null && dimensions > 1)
+		{
+			throw new ParameterException("Parameter --valueFile cannot be used with --dimensions.");
+		}
+
+		if (engine == Engine.ARRAY && counting)
+		{
+			throw new ParameterException("Parameter --count cannot be used with the ARRAY engine.");
+		}
+
+		if (directRatio > 1.)
+		{
+			throw new ParameterException("Parameter --directRatio must not be greater than 1.");
+		}
+
+		if (engine == Engine.ARRAY && directRatio > 0.)
+		{
+			throw new ParameterException("Parameter --directRatio cannot be used with the ARRAY engine.");
+		}
+
+		if (engine == Engine.ARRAY && gracefulLeave)
+		{
+			throw new ParameterException("Parameter --gracefulLeave cannot be used with the ARRAY engine.");
+		}
+
+		if (engine == Engine.ARRAY && epochSteps > 0)
+		{
+			throw new ParameterException("Parameter --epochSteps cannot be used with the ARRAY engine.");
+		}
+
+		if (epochSteps > 0 && epochSteps >= resetInterval)
+		{
+			throw new ParameterException("Parameter --epochSteps requires a greater --resetInterval.");
+		}
+
+		if (engine == Engine.ARRAY && histogramBins > 0)
+		{
+			throw new ParameterException("Parameter --histogramBins cannot be used with the ARRAY engine.");
+		}
+
+		if (histogramBins > 0 && dimensions > 1)
+		{
+			throw new ParameterException("Parameter --histogramBins cannot be used with --dimensions.");
+		}
+
+		if (histogramBins > 0 && !(max - min > 0. && max - min < Double.POSITIVE_INFINITY))
+		{
+			throw new ParameterException("Parameter --histogramBins requires a finite range between --min and --max.");
+		}
+
+		if (snapshotInterval > 0 && binaryFile == null && snapshotFile == null)
+		{
+			throw new ParameterException("Parameter --snapshotInterval requires --binaryFile or --snapshotFile.");
+		}
+
+		if (snapshotFile != null && snapshotInterval == 0)
+		{
+			throw new ParameterException("Parameter --snapshotFile requires --snapshotInterval.");
+		}
+
+		if (engine == Engine.ARRAY && snapshotInterval > 0)
+		{
+			throw new ParameterException("Parameter --snapshotInterval cannot be used with the ARRAY engine.");
+		}
+
+		if (traceCapacity > RingBufferEventRecorder.MAX_CAPACITY)
+		{
+			throw new ParameterException("Parameter --traceCapacity must not be greater than " + RingBufferEventRecorder.MAX_CAPACITY + ".");
+		}
+	}
+
+	/**
+	 * Runs the simulation with the selected engine and waits until it is
+	 * finished.
+	 * 
+	 * @param out
+	 *            the stream to which the results are written, unless
+	 *            --binaryFile is set.
+	 * @throws IOException
+	 *             If the environment for networking cannot be created, or the
+	 *             binary file cannot be written.
+	 * @throws InterruptedException
+	 *             If the current thread is interrupted while waiting.
+	 */
+	void run(PrintStream out) throws IOException, InterruptedException
 	{
+		ObservationSink sink = (binaryFile != null) ? new BinaryObservationSink(new File(binaryFile)) : null;
+		SnapshotWriter snapshotWriter = (snapshotFile != null) ? new SnapshotWriter(new File(snapshotFile)) : null;
+
 		try
 		{
-			// create the environment
-			final PPSSetup ppss = (port != null) ? new PPSSetup(bootAddress, port, port) : new PPSSetup(randomSeed);
+			if (engine == Engine.ARRAY)
+			{
+				ArrayPushSum kernel = new ArrayPushSum(randomSeed, threads, targetSelection, updateInterval, mean, std, variateStd, min,
+						max);
+				kernel.setOut(out);
+				kernel.setObservationSink(sink);
+				kernel.run(nodes, steps, stepSize, joinInterval, leaveInterval, resetInterval, verbosity);
+			}
+			else
+			{
+				start(out, sink, snapshotWriter).awaitTermination();
+			}
+		}
+		finally
+		{
+			if (sink != null)
+			{
+				sink.close();
+			}
+
+			if (snapshotWriter != null)
+			{
+				snapshotWriter.close();
+
+				if (snapshotWriter.getDropped() > 0)
+				{
+					out.format("# %d of %d snapshots dropped%n", snapshotWriter.getDropped(), snapshotWriter.getDropped()
+							+ snapshotWriter.getWritten());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Starts the simulation in the Pastry simulator, or using networking.
+	 * 
+	 * @param out
+	 *            the stream to which the results are written.
+	 * @param sink
+	 *            the sink to which the observations are written, or
+	 *            {@code null} to print them to {@code out}.
+	 * @param snapshotWriter
+	 *            the writer of the full state of all nodes, or {@code null}.
+	 * @return the {@link PPSSetup} running the simulation, which can be used
+	 *         to wait for the end of the simulation.
+	 * @throws IOException
+	 *             If the environment for networking cannot be created.
+	 */
+	private PPSSetup start(final PrintStream out, final ObservationSink sink, final SnapshotWriter snapshotWriter) throws IOException
+	{
+		// create the environment
+		final PPSSetup ppss = (port != null) ? new PPSSetup(bootAddress, port, port) : new PPSSetup(randomSeed);
 
-			ppss.getEnvironment().getParameters().setInt("pastry_lSetSize", leafsetSize);
+		ppss.setOut(out);
+		ppss.setObservationSink(sink);
+		ppss.setBatching(batching);
+		ppss.setGracefulLeave(gracefulLeave);
+		ppss.setCounting(counting, true);
+		ppss.setEpochs(epochSteps);
+		ppss.setExchange(exchange, fanOut);
+		ppss.setDirectRatio(directRatio);
+		ppss.setAdaptiveStepSize(maxStepSize, convergenceWindow, convergenceTolerance);
 
-			// simulate variable values
-			final ValueReaderFactory valueReaderFactory = new GaussianValueReaderFactory(mean, std, variateStd, ppss.getEnvironment()
-					.getRandomSource());
+		ppss.getEnvironment().getParameters().setInt("pastry_lSetSize", leafsetSize);
 
-			// add initial nodes
-			ppss.scheduleJoiningNodes(stepSize, nodes, valueReaderFactory, stepSize, updateInterval, min, max, traceMessages,
-					new TimerTask()
+		// record messages
+		final RingBufferEventRecorder recorder = (traceFile != null) ? new RingBufferEventRecorder(traceCapacity, ppss
+				.getEnvironment().getTimeSource()) : null;
+
+		ppss.setEventListener(recorder);
+
+		// simulate variable values, or replay recorded values, where only
+		// the variations of the first simulated value are reported
+		ValueReaderFactory[] valueReaderFactories = new ValueReaderFactory[dimensions];
+
+		for (int i = 0; i < dimensions; i++)
+		{
+			if (valueFile != null)
+			{
+				valueReaderFactories[i] = new TraceValueReaderFactory(new File(valueFile));
+			}
+			else
+			{
+				valueReaderFactories[i] = new GaussianValueReaderFactory(mean, std, variateStd, ppss.getEnvironment().getRandomSource(),
+						(i == 0) ? ppss : null);
+			}
+		}
+
+		// estimate the distribution of the first value, if requested
+		final VectorValueReaderFactory valueReaderFactory = (histogramBins > 0) ? new HistogramValueReaderFactory(
+				valueReaderFactories[0], new Histogram(min, max, histogramBins)) : new CombinedValueReaderFactory(valueReaderFactories);
+
+		// add initial nodes
+		ppss.scheduleJoiningNodes(stepSize, nodes, valueReaderFactory, stepSize, updateInterval, min, max, traceMessages,
+				new TimerTask()
+				{
+					@Override
+					public void run()
 					{
-						@Override
-						public void run()
+						// periodically add more nodes
+						if (joinInterval > 0)
 						{
-							// periodically add more nodes
-							if (joinInterval > 0)
-							{
-								ppss.scheduleJoiningNodes(joinInterval * stepSize, valueReaderFactory, stepSize, updateInterval, min, max,
-										traceMessages);
-							}
+							ppss.scheduleJoiningNodes(joinInterval * stepSize, valueReaderFactory, stepSize, updateInterval, min, max,
+									traceMessages);
+						}
 
-							// periodically stop nodes
-							if (leaveInterval > 0)
-							{
-								ppss.scheduleLeavingNodes(leaveInterval * stepSize);
-							}
+						// periodically stop nodes
+						if (leaveInterval > 0)
+						{
+							ppss.scheduleLeavingNodes(leaveInterval * stepSize);
+						}
 
-							// periodically broadcast from root to initiate
-							// resets
-							if (resetInterval > 0)
+						// periodically broadcast from root to initiate
+						// resets
+						if (resetInterval > 0)
+						{
+							ppss.scheduleReset(resetInterval * stepSize);
+						}
+
+						// logging
+						ppss.scheduleObservation(0, stepSize, verbosity);
+
+						if (snapshotInterval > 0 && sink != null)
+						{
+							ppss.scheduleSnapshots(0, snapshotInterval * stepSize);
+						}
+
+						if (snapshotWriter != null)
+						{
+							ppss.scheduleSnapshotDumps(0, snapshotInterval * stepSize, snapshotWriter);
+						}
+
+						// terminate after the given number of steps
+						ppss.scheduleTermination(steps * stepSize, new TimerTask()
+						{
+							@Override
+							public void run()
 							{
-								ppss.scheduleReset(resetInterval * stepSize);
+								if (recorder != null)
+								{
+									try
+									{
+										recorder.dump(new File(traceFile));
+									}
+									catch (IOException e)
+									{
+										e.printStackTrace();
+									}
+								}
+
+								if (histogramBins > 0)
+								{
+									printQuantiles(ppss, out);
+								}
+
+								if (counting)
+								{
+									printTotals(ppss, out);
+								}
+
+								if (verbosity > 0)
+								{
+									printMetrics(ppss, out);
+								}
 							}
+						});
+					}
+				});
 
-							// logging
-							ppss.scheduleObservation(0, stepSize, verbosity);
+		return ppss;
+	}
 
-							// terminate after the given number of steps
-							ppss.scheduleTermination(steps * stepSize);
-						}
-					});
+	/**
+	 * Prints the summed metrics of all nodes, as comments.
+	 */
+	private void printMetrics(PPSSetup ppss, PrintStream out)
+	{
+		NodeMetrics metrics = ppss.getMetrics();
+		long time = ppss.getEnvironment().getTimeSource().currentTimeMillis();
+
+		out.format("# [%d] metrics of all nodes: %s%n", time, metrics);
+		out.format("# [%d] hops per message: %s%n", time, metrics.getHops());
+		out.format("# [%d] step time in ns: %s%n", time, metrics.getStepTimes());
+		out.format("# [%d] timer delay in simulated ms: %s%n", time, metrics.getQueueDelays());
+	}
+
+	/**
+	 * Prints the number of nodes and the sum of the values estimated by the
+	 * first active node, and the true totals of all active nodes, as a
+	 * comment.
+	 */
+	private void printTotals(PPSSetup ppss, PrintStream out)
+	{
+		NodeRegistry registry = ppss.getRegistry();
+		PastryPushSum app = null;
+		int count = 0;
+		double sum = 0.;
+
+		for (int i = 0; i < registry.size(); i++)
+		{
+			if (registry.isActive(i))
+			{
+				count++;
+				sum += registry.getTrueValue(i);
+
+				if (app == null)
+				{
+					app = registry.getApp(i);
+				}
+			}
 		}
-		catch (IOException e)
+
+		if (app != null)
 		{
-			e.printStackTrace();
+			out.format("# [%d] size and sum estimated by %s: %e %e, true size and sum: %d %e%n", ppss.getEnvironment().getTimeSource()
+					.currentTimeMillis(), app, app.getSizeEstimate(), app.getSumEstimate(), count, sum);
 		}
 	}
-}
+
+	/**
+	 * Prints the quantiles estimated by the first active node, and the
+	 * quantiles of the true values of all active nodes, as a comment.
+	 */
+	private void printQuantiles(PPSSetup ppss, PrintStream out)
+	{
+		NodeRegistry registry = ppss.getRegistry();
+		double[] trueValues = new double[registry.size()];
+		PastryPushSum app = null;
+		int count = 0;
+
+		for (int i = 0; i < registry.size(); i++)
+		{
+			if (registry.isActive(i))
+			{
+				trueValues[count++] = registry.getTrueValue(i);
+
+				if (app == null)
+				{
+					app = registry.getApp(i);
+				}
+			}
+		}
+
+		if (app == null)
+		{
+			return;
+		}
+
+		Arrays.sort(trueValues, 0, count);
+
+		StringBuilder estimated = new StringBuilder();
+		StringBuilder exact = new StringBuilder();
+
+		for (double q : QuantileSketch.QUANTILES)
+		{
+			estimated.append(String.format(" %e", app.getQuantile(q)));
+			exact.append(String.format(" %e", trueValues[(int) Math.max(0, Math.ceil(q * count) - 1)]));
+		}
+
+		out.format("# [%d] quantiles %s of %s:%s, of the true values:%s%n", ppss.getEnvironment().getTimeSource().currentTimeMillis(),
+				Arrays.toString(QuantileSketch.QUANTILES), app, estimated, exact);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,386 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.ParameterDescription;
+import com.beust.jcommander.ParameterException;
+
+/**
+ * Runs a sweep over many parameter sets of the {@link PPSSimulator}.
+ * <p>
+ * Each parameter set is run as an independent simulation, with its own
+ * {@link PPSSetup} and Pastry environment, on a thread pool of bounded size.
+ * The results of each run are written to a separate file in the output
+ * directory, together with an index file listing the arguments of each run.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class PPSSweep
+{
+	private static final String[] SWEEP_OPTIONS = { "--sweep", "--sweepDir", "--threads" };
+
+	/**
+	 * Reads the parameter sets of a sweep from a file.
+	 * <p>
+	 * Each line of the file that is not empty and does not start with
+	 * {@code #} is a parameter set, given as whitespace-separated arguments to
+	 * {@link PPSSimulator}. An argument of the form {@code name=a,b,c} is
+	 * expanded to one parameter set for each value, so that a line like
+	 * {@code -n=10,100 -r=1,2,3} results in a grid of six parameter sets.
+	 * 
+	 * @param file
+	 *            the file to read.
+	 * @param defaults
+	 *            arguments that apply to each parameter set, unless the
+	 *            parameter set gives the same option.
+	 * @return the expanded parameter sets.
+	 * @throws IOException
+	 *             If the file cannot be read.
+	 */
+	public static List<String[]> readParameterSets(File file, String[] defaults) throws IOException
+	{
+		Map<String, String> aliases = aliases();
+		List<String[]> parameterSets = new ArrayList<String[]>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+
+		try
+		{
+			String line;
+
+			while ((line = reader.readLine()) != null)
+			{
+				line = line.trim();
+
+				if (line.isEmpty() || line.startsWith("#"))
+				{
+					continue;
+				}
+
+				for (String[] args : expand(StringUtils.split(line)))
+				{
+					parameterSets.add(merge(defaults, args, aliases));
+				}
+			}
+		}
+		finally
+		{
+			IOUtils.closeQuietly(reader);
+		}
+
+		return parameterSets;
+	}
+
+	/**
+	 * Returns the given arguments without the options that control the sweep
+	 * itself.
+	 */
+	public static String[] withoutSweepOptions(String[] args)
+	{
+		List<String> remaining = new ArrayList<String>();
+
+		for (int i = 0; i < args.length; i++)
+		{
+			String name = StringUtils.substringBefore(args[i], "=");
+
+			if (!Arrays.asList(SWEEP_OPTIONS).contains(name))
+			{
+				remaining.add(args[i]);
+			}
+			else if (!args[i].contains("="))
+			{
+				// skip the value given as separate argument
+				i++;
+			}
+		}
+
+		return remaining.toArray(new String[remaining.size()]);
+	}
+
+	/**
+	 * Maps all names of each option of {@link PPSSimulator} to its first name.
+	 */
+	private static Map<String, String> aliases()
+	{
+		Map<String, String> aliases = new HashMap<String, String>();
+
+		for (ParameterDescription description : new JCommander(new PPSSimulator()).getParameters())
+		{
+			String[] names = description.getParameter().names();
+
+			for (String name : names)
+			{
+				aliases.put(name, names[0]);
+			}
+		}
+
+		return aliases;
+	}
+
+	/**
+	 * Returns the default arguments followed by the given arguments, leaving
+	 * out all default options that are also given as argument.
+	 */
+	private static String[] merge(String[] defaults, String[] args, Map<String, String> aliases)
+	{
+		Set<String> given = new HashSet<String>();
+
+		for (String arg : args)
+		{
+			given.add(option(arg, aliases));
+		}
+
+		List<String> merged = new ArrayList<String>();
+
+		for (String arg : defaults)
+		{
+			if (!given.contains(option(arg, aliases)))
+			{
+				merged.add(arg);
+			}
+		}
+
+		merged.addAll(Arrays.asList(args));
+
+		return merged.toArray(new String[merged.size()]);
+	}
+
+	private static String option(String arg, Map<String, String> aliases)
+	{
+		String name = StringUtils.substringBefore(arg, "=");
+
+		return aliases.containsKey(name) ? aliases.get(name) : name;
+	}
+
+	/**
+	 * Expands all arguments with comma-separated values to all combinations.
+	 */
+	private static List<String[]> expand(String[] args)
+	{
+		List<String[]> expanded = new ArrayList<String[]>();
+		expanded.add(new String[args.length]);
+
+		for (int i = 0; i < args.length; i++)
+		{
+			String[] alternatives;
+
+			if (args[i].contains("=") && args[i].contains(","))
+			{
+				String name = StringUtils.substringBefore(args[i], "=");
+				String[] values = StringUtils.split(StringUtils.substringAfter(args[i], "="), ",");
+
+				alternatives = new String[values.length];
+
+				for (int j = 0; j < values.length; j++)
+				{
+					alternatives[j] = name + "=" + values[j];
+				}
+			}
+			else
+			{
+				alternatives = new String[] { args[i] };
+			}
+
+			List<String[]> next = new ArrayList<String[]>(expanded.size() * alternatives.length);
+
+			for (String[] partial : expanded)
+			{
+				for (String alternative : alternatives)
+				{
+					String[] copy = partial.clone();
+					copy[i] = alternative;
+					next.add(copy);
+				}
+			}
+
+			expanded = next;
+		}
+
+		return expanded;
+	}
+
+	private final List<String[]> parameterSets;
+	private final File outDir;
+	private final int threads;
+
+	/**
+	 * Creates a sweep over the given parameter sets. All parameter sets are
+	 * parsed immediately, so that invalid arguments are reported before any
+	 * simulation is started.
+	 * 
+	 * @param parameterSets
+	 *            the arguments of each run, as accepted by {@link PPSSimulator}.
+	 * @param outDir
+	 *            the directory to which the results are written.
+	 * @param threads
+	 *            the maximum number of runs executed in parallel.
+	 * @throws ParameterException
+	 *             If any of the parameter sets is invalid, uses networking or
+	 *             writes a binary or snapshot file, which all runs would
+	 *             share.
+	 */
+	public PPSSweep(List<String[]> parameterSets, File outDir, int threads)
+	{
+		this.parameterSets = parameterSets;
+		this.outDir = outDir;
+		this.threads = threads;
+
+		for (String[] args : parameterSets)
+		{
+			PPSSimulator sim = parse(args);
+
+			if (sim.usesNetwork())
+			{
+				throw new ParameterException("Parameter --bootPort cannot be used in a sweep (found in " + StringUtils.join(args, " ") + ").");
+			}
+
+			if (sim.writesBinaryFile())
+			{
+				throw new ParameterException("Parameter --binaryFile cannot be used in a sweep (found in " + StringUtils.join(args, " ") + ").");
+			}
+
+			if (sim.writesSnapshotFile())
+			{
+				throw new ParameterException("Parameter --snapshotFile cannot be used in a sweep (found in " + StringUtils.join(args, " ") + ").");
+			}
+		}
+	}
+
+	/**
+	 * Runs all parameter sets and waits until all runs are finished.
+	 * 
+	 * @throws IOException
+	 *             If the output directory or the index file cannot be written.
+	 * @throws InterruptedException
+	 *             If the current thread is interrupted while waiting.
+	 */
+	public void run() throws IOException, InterruptedException
+	{
+		if (!outDir.exists())
+		{
+			outDir.mkdirs();
+		}
+
+		PrintStream index = new PrintStream(new FileOutputStream(new File(outDir, "index.txt")));
+
+		try
+		{
+			for (int i = 0; i < parameterSets.size(); i++)
+			{
+				index.format("%s %s%n", runFile(i).getName(), StringUtils.join(parameterSets.get(i), " "));
+			}
+		}
+		finally
+		{
+			index.close();
+		}
+
+		System.out.format("# running %d simulations on %d threads, writing to %s%n", parameterSets.size(), threads, outDir);
+
+		final AtomicInteger finished = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		for (int i = 0; i < parameterSets.size(); i++)
+		{
+			final int run = i;
+
+			executor.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						runSimulation(run);
+
+						System.out.format("# [%d/%d] finished %s%n", finished.incrementAndGet(), parameterSets.size(), runFile(run).getName());
+					}
+					catch (Exception e)
+					{
+						System.err.format("# %s failed: %s%n", runFile(run).getName(), e);
+						e.printStackTrace();
+					}
+				}
+			});
+		}
+
+		executor.shutdown();
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+	}
+
+	private void runSimulation(int run) throws IOException, InterruptedException
+	{
+		String[] args = parameterSets.get(run);
+		PPSSimulator sim = parse(args);
+
+		PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(runFile(run))));
+
+		try
+		{
+			out.println("# " + PPSSimulator.class.getCanonicalName() + " " + StringUtils.join(args, " "));
+
+			sim.run(out);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private File runFile(int run)
+	{
+		return new File(outDir, String.format("run-%04d.data", run));
+	}
+
+	private static PPSSimulator parse(String[] args)
+	{
+		PPSSimulator sim = new PPSSimulator();
+		new JCommander(sim, args);
+		sim.validate();
+
+		return sim;
+	}
+}
@@ -22,8 +22,10 @@
 
 package univie.cs.pps;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import rice.p2p.commonapi.Application;
 import rice.p2p.commonapi.CancellableTask;
@@ -32,15 +34,32 @@ import rice.p2p.commonapi.Id;
 import rice.p2p.commonapi.Message;
 import rice.p2p.commonapi.Node;
 import rice.p2p.commonapi.NodeHandle;
+import rice.p2p.commonapi.NodeHandleSet;
 import rice.p2p.commonapi.RouteMessage;
+import rice.p2p.commonapi.rawserialization.InputBuffer;
+import rice.p2p.commonapi.rawserialization.MessageDeserializer;
+import rice.p2p.commonapi.rawserialization.RawMessage;
 import rice.p2p.scribe.Scribe;
 import rice.p2p.scribe.ScribeContent;
 import rice.p2p.scribe.ScribeImpl;
 import rice.p2p.scribe.ScribeMultiClient;
 import rice.p2p.scribe.Topic;
+import rice.pastry.PastryNode;
 import rice.pastry.commonapi.PastryIdFactory;
-import rice.pastry.standard.RandomNodeIdFactory;
+import rice.pastry.leafset.LeafSet;
+import rice.pastry.routing.RouteSet;
+import rice.pastry.routing.RoutingTable;
+import univie.cs.pps.events.LoggingEventListener;
+import univie.cs.pps.events.NoOpEventListener;
+import univie.cs.pps.events.PushSumEventListener;
+import univie.cs.pps.utils.CombinedValueReader;
+import univie.cs.pps.utils.ConvergenceTracker;
+import univie.cs.pps.utils.HistogramValueReader;
+import univie.cs.pps.utils.RandomIdGenerator;
+import univie.cs.pps.utils.ValueListener;
 import univie.cs.pps.utils.ValueReader;
+import univie.cs.pps.utils.ValueSource;
+import univie.cs.pps.utils.VectorValueReader;
 
 /**
  * An implementation of the Push-Sum protocol as a Pastry application.
@@ -48,6 +67,17 @@ import univie.cs.pps.utils.ValueReader;
  * This class implements the {@link Application} interface to send messages to
  * random nodes in the ring and the {@link ScribeMultiClient} interface to
  * broadcast notifications to all nodes.
+ * <p>
+ * A node may estimate the means of several values at once, obtained from a
+ * {@link VectorValueReader}. All values share one weight and are sent in the
+ * same message, so that one exchange per step updates all estimates. The
+ * methods without a component argument, the event listener and the
+ * {@link NodeRegistry} refer to the first component.
+ * <p>
+ * By default, a reset notification restarts the protocol at each node as soon
+ * as it arrives. With {@link #setEpochs(int)}, the values and weights belong
+ * to numbered epochs instead, and a reset starts the next epoch, which runs
+ * along with the current one until it has mixed.
  * 
  * @author Dario Seidl
  * 
@@ -69,13 +99,57 @@ public class PastryPushSum implements Application, ScribeMultiClient
 	 */
 	public static final String SCRIBE_TOPIC = "push-sum-scribe-topic";
 
+	/**
+	 * The largest relative change of an estimate between two steps, for which
+	 * the estimate is considered stable by the {@link Exchange#ADAPTIVE}
+	 * exchange.
+	 */
+	public static final double ADAPTIVE_TOLERANCE = 1e-3;
+
+	/**
+	 * The ways in which a node exchanges its values and weight with other
+	 * nodes at each step.
+	 */
+	public enum Exchange
+	{
+		/**
+		 * Keep one half and send the other half to one random node.
+		 */
+		PUSH,
+
+		/**
+		 * Like {@link #PUSH}, but the receiving node replies with half of its
+		 * own values and weight in the same step.
+		 */
+		PUSH_PULL,
+
+		/**
+		 * Split the values and weight into {@code k + 1} parts, keep one and
+		 * send one part to each of {@code k} random nodes, where {@code k} is
+		 * the fan-out.
+		 */
+		FAN_OUT,
+
+		/**
+		 * Like {@link #FAN_OUT}, but the fan-out is doubled at each step in
+		 * which the estimate changes by more than {@link #ADAPTIVE_TOLERANCE},
+		 * up to the given fan-out, and halved down to 1 while the estimate is
+		 * stable.
+		 */
+		ADAPTIVE
+	}
+
 	private final Node node;
 	private final Endpoint endpoint;
+	private final RandomIdGenerator randomIdGenerator;
 
 	private final long stepSize;
-	private final boolean trace;
 	private final int updateInterval;
-	private final ValueReader valueReader;
+	private final VectorValueReader valueReader;
+	private final AtomicBoolean valuesChanged;
+	private int lastUpdateStep;
+	private final int dimension;
+	private int components;
 	private final double min;
 	private final double max;
 
@@ -86,13 +160,52 @@ public class PastryPushSum implements Application, ScribeMultiClient
 	private boolean active;
 	private boolean transition;
 
-	private double trueValue;
-	private double value;
+	private double[] trueValues;
+	private double[] values;
 	private double weight;
-	private double valueBuffer;
+	private double[] valueBuffers;
 	private double weightBuffer;
 
+	// reused for the shares of scalar nodes, see share(double[])
+	private final double[] shareScratch = new double[1];
+	private final double[] nextShareScratch = new double[1];
+	private final double[] replyScratch = new double[1];
+
+	private Exchange exchange = Exchange.PUSH;
+	private int fanOut = 1;
+	private int currentFanOut = 1;
+	private double[] lastEstimates;
+
+	private int epochSteps;
+	private int epoch;
+	private int nextEpochStep;
+	private double[] nextValues;
+	private double nextWeight;
+	private double[] nextValueBuffers;
+	private double nextWeightBuffer;
+
+	private boolean batching;
+	private double[] queued = new double[16];
+	private int queuedCount;
+	private int queuedEpoch;
+
+	private boolean gracefulLeave;
+
+	private double directRatio;
+
+	private final NodeMetrics metrics = new NodeMetrics();
+
+	private ConvergenceTracker convergence;
+	private double convergenceTolerance;
+	private long maxStepSize;
+	private long currentStepSize;
+	private long nextStepTime;
+
 	private CancellableTask timer;
+	private PushSumEventListener listener;
+
+	private NodeRegistry registry;
+	private int slot;
 
 	/**
 	 * Constructs and registers a new {@link PastryPushSum} application.
@@ -116,32 +229,99 @@ public class PastryPushSum implements Application, ScribeMultiClient
 	 *            bound for the estimates.
 	 * @param trace
 	 *            if set to {@code true}, the node will print a notice about all
-	 *            sent and received messages to the standard output.
+	 *            sent and received messages to the standard output, using a
+	 *            {@link LoggingEventListener}.
 	 */
 	public PastryPushSum(Node node, int stepSize, int updateInterval, ValueReader valueReader, double min, double max, boolean trace)
+	{
+		this(node, stepSize, updateInterval, new CombinedValueReader(valueReader), min, max, trace);
+	}
+
+	/**
+	 * Constructs and registers a new {@link PastryPushSum} application, which
+	 * estimates the mean of each component of a vector of values.
+	 * 
+	 * @param node
+	 *            the node at which this application will be registered.
+	 * @param stepSize
+	 *            the time between sending messages to the node to signal the
+	 *            start of the next step.
+	 * @param updateInterval
+	 *            the number of steps between updating node values. If set to 0
+	 *            the node values will never be updated. If the value reader is
+	 *            a {@link ValueSource}, this is the minimum number of steps
+	 *            between two updates instead, and 0 means no limit.
+	 * @param valueReader
+	 *            the {@link VectorValueReader} instance from which the node
+	 *            obtains its true values. All nodes in the ring must use the
+	 *            same dimension. If this is a {@link ValueSource}, the node
+	 *            reads the values only at the next step after the source
+	 *            reported a change.
+	 * @param min
+	 *            the domain-specific minimum possible value, used as a lower
+	 *            bound for the estimates of all components.
+	 * @param max
+	 *            the domain-specific maximum possible value, used as an upper
+	 *            bound for the estimates of all components.
+	 * @param trace
+	 *            if set to {@code true}, the node will print a notice about all
+	 *            sent and received messages to the standard output, using a
+	 *            {@link LoggingEventListener}.
+	 */
+	public PastryPushSum(Node node, int stepSize, int updateInterval, VectorValueReader valueReader, double min, double max, boolean trace)
 	{
 		this.node = node;
 		this.stepSize = stepSize;
 		this.updateInterval = updateInterval;
 		this.valueReader = valueReader;
+		this.dimension = valueReader.getDimension();
+		this.components = dimension;
 		this.min = min;
 		this.max = max;
-		this.trace = trace;
+		this.listener = trace ? new LoggingEventListener(node.getEnvironment().getTimeSource(), System.out) : NoOpEventListener.INSTANCE;
+
+		// listen for changes of a value source, before the first read, so
+		// that a change pushed in between is not lost
+		if (valueReader instanceof ValueSource)
+		{
+			valuesChanged = new AtomicBoolean();
+
+			((ValueSource) valueReader).setValueListener(new ValueListener()
+			{
+				@Override
+				public void valuesChanged(ValueSource source)
+				{
+					if (valuesChanged.compareAndSet(false, true))
+					{
+						wakeUp();
+					}
+				}
+			});
+		}
+		else
+		{
+			valuesChanged = null;
+		}
 
-		// obtain true value from the value reader
-		trueValue = valueReader.getCurrentValue();
+		// obtain true values from the value reader
+		trueValues = readValues().clone();
 
-		value = trueValue;
-		valueBuffer = trueValue;
+		values = trueValues.clone();
+		valueBuffers = trueValues.clone();
+		lastEstimates = trueValues.clone();
 		weight = 1.;
 		weightBuffer = 1.;
 
+		randomIdGenerator = new RandomIdGenerator(node.getEnvironment().getRandomSource());
+
 		// register application
 		endpoint = node.buildEndpoint(this, INSTANCE);
+		endpoint.setDeserializer(new PushSumDeserializer(endpoint));
 		endpoint.register();
 
 		// schedule timer messages
-		timer = endpoint.scheduleMessage(new TimerMessage(), 0, stepSize);
+		currentStepSize = stepSize;
+		scheduleTimer(0);
 		active = true;
 
 		// subscribe to a Scribe topic for reset notifications
@@ -155,16 +335,33 @@ public class PastryPushSum implements Application, ScribeMultiClient
 	 * <p>
 	 * There is no way to actually remove an application from the ring. We
 	 * simply stop sending messages. When receiving a message while stopped,
-	 * this node will forward the message to another random node.
+	 * this node will forward the message to another random node. If batching
+	 * is enabled, the timer keeps running to forward the received shares once
+	 * per step. If graceful leave is enabled, the node first hands off its
+	 * values and weight to its neighbors.
+	 * 
+	 * @see #setGracefulLeave(boolean)
 	 */
 	public void stop()
 	{
 		if (active)
 		{
-			log("stop.");
+			listener.stopped(this);
+
+			if (gracefulLeave)
+			{
+				handOff();
+			}
+
+			if (!batching)
+			{
+				timer.cancel();
+				timer = null;
+			}
 
-			timer.cancel();
 			active = false;
+
+			publish();
 		}
 	}
 
@@ -175,320 +372,1749 @@ public class PastryPushSum implements Application, ScribeMultiClient
 	{
 		if (!active)
 		{
-			log("resume.");
+			listener.resumed(this);
+
+			if (timer == null)
+			{
+				currentStepSize = stepSize;
+				scheduleTimer(0);
+			}
 
-			timer = endpoint.scheduleMessage(new TimerMessage(), 0, stepSize);
 			active = true;
+
+			publish();
 		}
 	}
 
 	/**
-	 * Returns whether this node is active.
+	 * Sets the listener notified about the events of this node, replacing the
+	 * listener set in the constructor.
+	 * 
+	 * @param listener
+	 *            the new listener, or {@code null} to ignore all events.
 	 */
-	public boolean isActive()
+	public void setEventListener(PushSumEventListener listener)
 	{
-		return active;
+		this.listener = (listener != null) ? listener : NoOpEventListener.INSTANCE;
 	}
 
 	/**
-	 * Returns the true value of this node. The true value is updated
-	 * periodically with the value returned by the {@link ValueReader} specified
-	 * in the constructor.
+	 * Sets the way in which this node exchanges its values and weight with
+	 * other nodes. By default, the node uses {@link Exchange#PUSH}.
+	 * <p>
+	 * Shares that are forwarded in a batch by a stopped node do not request a
+	 * reply, even if they were sent with {@link Exchange#PUSH_PULL}.
+	 * 
+	 * @param exchange
+	 *            the exchange.
+	 * @param fanOut
+	 *            the number of random nodes to which the node sends at each
+	 *            step with {@link Exchange#FAN_OUT}, or the maximum number with
+	 *            {@link Exchange#ADAPTIVE}. Ignored by the other exchanges.
+	 * @throws IllegalArgumentException
+	 *             If {@code fanOut} is less than 1.
 	 */
-	public double getTrueValue()
+	public void setExchange(Exchange exchange, int fanOut)
 	{
-		return trueValue;
+		if (fanOut < 1)
+		{
+			throw new IllegalArgumentException("The fan-out must be at least 1, but was " + fanOut + ".");
+		}
+
+		this.exchange = exchange;
+		this.fanOut = fanOut;
+		this.currentFanOut = (exchange == Exchange.FAN_OUT) ? fanOut : 1;
 	}
 
 	/**
-	 * Returns the current value, used by the Push-Sum protocol to estimate the
-	 * mean.
+	 * Sets the fraction of the shares that are sent directly to a random
+	 * neighbor of this node, instead of being routed to a random id. By
+	 * default, all shares are routed to random ids.
+	 * <p>
+	 * A share routed to a random id reaches any node of the ring with the same
+	 * probability as its part of the id space, but takes {@code O(log N)}
+	 * hops, and every node on the way forwards it. A share sent directly to a
+	 * node of the leafset or of the routing table of this node takes a single
+	 * hop, but these neighbors are not uniformly random, so that the ring
+	 * mixes more slowly the more shares are sent directly. The ratio trades
+	 * the speed of convergence against the number of hops, which is reported
+	 * by {@link #getMetrics()}.
+	 * <p>
+	 * Replies of {@link Exchange#PUSH_PULL} are routed to the sender as
+	 * before, and stopped nodes forward shares to random ids.
+	 * 
+	 * @param directRatio
+	 *            the probability, between 0 and 1, that a share is sent
+	 *            directly to a neighbor.
+	 * @throws IllegalArgumentException
+	 *             If {@code directRatio} is not between 0 and 1.
+	 * @throws IllegalStateException
+	 *             If {@code directRatio} is positive, but the node is not a
+	 *             {@link PastryNode}, whose routing table is needed.
 	 */
-	public double getValue()
+	public void setDirectRatio(double directRatio)
 	{
-		return value;
+		if (!(directRatio >= 0. && directRatio <= 1.))
+		{
+			throw new IllegalArgumentException("The direct ratio must be between 0 and 1, but was " + directRatio + ".");
+		}
+
+		if (directRatio > 0. && !(node instanceof PastryNode))
+		{
+			throw new IllegalStateException("Direct sends require a " + PastryNode.class.getSimpleName() + ", but " + this + " runs on " + node
+					+ ".");
+		}
+
+		this.directRatio = directRatio;
 	}
 
 	/**
-	 * Returns the current weight, used by the Push-Sum protocol to estimate the
-	 * mean.
+	 * Enables the adaptive step size. By default, a node starts a new step
+	 * every {@code stepSize} milliseconds, as given in the constructor.
+	 * <p>
+	 * With the adaptive step size, the node tracks the relative change of its
+	 * estimates over a sliding window of steps, using a
+	 * {@link ConvergenceTracker}. While the estimates are stable, the time
+	 * until the next step is doubled at each step, up to {@code maxStepSize}.
+	 * The node returns to the base step size when its true value changes, when
+	 * a share from another node would move its estimate by more than the
+	 * tolerance, or on a reset.
+	 * <p>
+	 * Since the true value is read at the steps, a node that backed off also
+	 * reads its value less often.
+	 * 
+	 * @param maxStepSize
+	 *            the maximum time between two steps.
+	 * @param window
+	 *            the number of steps over which the estimates must be stable.
+	 * @param tolerance
+	 *            the accepted relative change of the estimates within the
+	 *            window.
+	 * @throws IllegalArgumentException
+	 *             If {@code maxStepSize} is less than the step size, or
+	 *             {@code window} or {@code tolerance} are invalid.
 	 */
-	public double getWeight()
+	public void setAdaptiveStepSize(long maxStepSize, int window, double tolerance)
 	{
-		return weight;
+		if (maxStepSize < stepSize)
+		{
+			throw new IllegalArgumentException("The maximum step size " + maxStepSize + " is less than the step size " + stepSize + ".");
+		}
+
+		this.convergence = new ConvergenceTracker(window, dimension, tolerance);
+		this.convergenceTolerance = tolerance;
+		this.maxStepSize = maxStepSize;
+		this.currentStepSize = stepSize;
+
+		// replace the periodic timer
+		if (timer != null)
+		{
+			timer.cancel();
+			scheduleTimer(0);
+		}
 	}
 
 	/**
-	 * Returns the average value of all nodes in the ring, as estimated by the
-	 * Push-Sum protocol. The estimate is obtained by {@code value / weight},
-	 * bounded by the {@code min} and {@code max} values given in the
-	 * constructor.
+	 * Enables or disables the batching of forwarded shares. By default,
+	 * batching is disabled and a stopped node forwards every received message
+	 * on its own.
 	 * <p>
-	 * If the true value has been updated recently, this will return the true
-	 * value instead, until one message from another node is received, as in
-	 * this case it serves as a better estimate.
+	 * With batching enabled, the shares received while stopped are queued and
+	 * forwarded once per step, packed into a single
+	 * {@link BatchedValueWeightMessage} that is routed to one random id. If the
+	 * node is resumed before the queue is flushed, the queued shares are sent
+	 * together with its own share of the next step. This reduces the number of
+	 * routed messages on nodes that receive many messages per step.
+	 * 
+	 * @param batching
+	 *            {@code true} to enable batching.
 	 */
-	public double getEstimate()
+	public void setBatching(boolean batching)
 	{
-		return transition ? trueValue : Math.max(min, Math.min(value / weight, max));
+		this.batching = batching;
+
+		if (batching && timer == null)
+		{
+			scheduleTimer(0);
+		}
+		else if (!batching && queuedCount > 0)
+		{
+			forwardQueued(randomIdGenerator.generateId(), false);
+		}
 	}
 
 	/**
-	 * Sends a reset notification to all nodes.
+	 * Enables or disables the graceful leave. By default, a stopped node keeps
+	 * its values and weight, so that its share of the values and weights of
+	 * all nodes is missing from the estimates of the other nodes until the
+	 * next reset.
 	 * <p>
-	 * Since this is not a barrier, the resets introduce an error in the
-	 * accuracy of the estimates. Overall it may be better not to do any resets,
-	 * letting the contribution of stopped nodes "fade out".
+	 * With graceful leave enabled, the node hands off its values and weight,
+	 * less its own contribution, that is its true values and a weight of 1,
+	 * when it stops. The hand-off is split into equal shares, which are sent
+	 * directly to the live nodes of its leafset, one message each, at once.
+	 * The count weight is handed off entirely. This removes the node from the
+	 * estimates without a reset, while the shares it receives after stopping
+	 * are forwarded as before. The node keeps its own contribution, which is
+	 * added back to the ring when the node resumes.
+	 * <p>
+	 * The shares of the hand-off may have negative values and weights, which
+	 * temporarily distorts the estimates of the receiving nodes, until they
+	 * have mixed with the rest of the ring.
+	 * 
+	 * @param gracefulLeave
+	 *            {@code true} to enable the graceful leave.
 	 */
-	public void broadcastReset()
+	public void setGracefulLeave(boolean gracefulLeave)
 	{
-		scribe.publish(resetTopic, new ResetNotification());
+		this.gracefulLeave = gracefulLeave;
 	}
 
-	// == Application methods ============ //
-
 	/**
-	 * Called when this node receives a message.
+	 * Enables the estimation of the number of nodes and of the sums of the
+	 * values, in addition to the means. By default, only the means are
+	 * estimated.
 	 * <p>
-	 * When receiving a timer message, sum up the values and weights from all
-	 * messages received since the last step and send half of the new value and
-	 * weight to itself and to a random neighbor.
+	 * The node adds a count weight to its values, which is sent along with
+	 * them in the same messages and split in the same way. The count weight
+	 * of one designated node starts at 1, and at 0 for all other nodes, so
+	 * that it converges to {@code 1 / N} at every node. Dividing the weight,
+	 * which sums up to {@code N}, and the values by the count weight yields
+	 * the number of nodes and the sums. A reset restores the initial count
+	 * weights. After the designated node stopped, the estimates are only
+	 * correct again after it resumed and the next reset.
 	 * <p>
-	 * When receiving a message from another node, store the received value and
-	 * weight in a buffer for the next step.
+	 * This must be enabled on all nodes of the ring before their first step.
+	 * 
+	 * @param root
+	 *            {@code true} for the designated node, which must be a single
+	 *            node in the ring.
+	 * @throws IllegalStateException
+	 *             If the node has already started.
 	 */
-	@Override
-	public void deliver(Id id, Message message)
+	public void setCounting(boolean root)
 	{
-		if (trace)
+		if (step > 0)
 		{
-			log("received " + message);
+			throw new IllegalStateException(this + " has already started.");
 		}
 
-		// next step
-		if (message instanceof TimerMessage)
-		{
-			step++;
-
-			// sum up received values
-			value = valueBuffer;
-			weight = weightBuffer;
-
-			// update value
-			if (updateInterval > 0 && step % updateInterval == 0)
-			{
-				double newValue = valueReader.getCurrentValue();
-				value += newValue - trueValue;
-				transition = newValue != trueValue;
-				trueValue = newValue;
-			}
-
-			// send to self
-			valueBuffer = value / 2;
-			weightBuffer = weight / 2;
-
-			// send to random neighbor
-			Id randomId = (new RandomNodeIdFactory(node.getEnvironment())).generateNodeId();
-			ValueWeightMessage response = new ValueWeightMessage(endpoint.getId(), randomId, value / 2, weight / 2);
-			endpoint.route(randomId, response, null);
-
-			if (trace)
-			{
-				log("sending " + response);
-			}
-
-		}
+		components = dimension + 1;
 
-		// message from another node
-		else if (message instanceof ValueWeightMessage)
-		{
-			if (active)
-			{
-				ValueWeightMessage vw = (ValueWeightMessage) message;
+		trueValues = Arrays.copyOf(trueValues, components);
+		trueValues[dimension] = root ? 1. : 0.;
 
-				valueBuffer += vw.getValue();
-				weightBuffer += vw.getWeight();
+		values = trueValues.clone();
+		valueBuffers = trueValues.clone();
+		lastEstimates = Arrays.copyOf(lastEstimates, components);
+	}
 
-				transition = false;
-			}
-			else
-			{
-				// if we stopped participating, but are still in the ring,
-				// forward messages to another random node
-				Id randomId = (new RandomNodeIdFactory(node.getEnvironment())).generateNodeId();
-				endpoint.route(randomId, message, null);
-			}
-		}
+	/**
+	 * Returns whether this node estimates the number of nodes and the sums of
+	 * the values.
+	 * 
+	 * @see #setCounting(boolean)
+	 */
+	public boolean isCounting()
+	{
+		return components > dimension;
 	}
 
 	/**
-	 * Called when this node is about to forward a message.
+	 * Enables epoch-tagged resets. By default, a node resets its values and
+	 * weight as soon as it receives a reset notification, while shares sent
+	 * before the reset are still on their way, which introduces an error until
+	 * the ring has mixed again.
 	 * <p>
-	 * All messages are forwarded in this application.
+	 * With epochs, every share is tagged with the epoch of the push-sum
+	 * instance it belongs to. {@link #broadcastReset()} starts the next epoch
+	 * at this node, and every node that receives a share of the next epoch
+	 * starts it as well, with its true values and a weight of 1. The node
+	 * then splits and sends the values and weights of both epochs at each
+	 * step, and keeps estimating from the current epoch, until the next epoch
+	 * has mixed for the given number of steps. Then the node switches to the
+	 * next epoch at once. Shares of older epochs are dropped, and a node that
+	 * missed entire epochs, because it joined or resumed late, starts over in
+	 * the epoch of the first share it receives.
+	 * <p>
+	 * All nodes of the ring must use the same setting, and the time between
+	 * two resets must be longer than the given number of steps.
+	 * 
+	 * @param mixingSteps
+	 *            the number of steps the next epoch runs along with the
+	 *            current one, before the node switches to it.
+	 * @throws IllegalArgumentException
+	 *             If {@code mixingSteps} is less than 1.
 	 */
-	@Override
-	public boolean forward(RouteMessage message)
+	public void setEpochs(int mixingSteps)
 	{
-		if (trace)
+		if (mixingSteps < 1)
 		{
-			log("forward " + message);
+			throw new IllegalArgumentException("The number of mixing steps must be at least 1, but was " + mixingSteps + ".");
 		}
 
-		return true;
+		this.epochSteps = mixingSteps;
 	}
 
 	/**
-	 * Called when a node joins or leaves the neighbor set of this node.
-	 * <p>
-	 * No action is taken when a node joins or leaves the neighbor set of this
-	 * node.
+	 * Returns the epoch from which this node estimates the means, which is
+	 * always 0 if epochs are not enabled.
+	 * 
+	 * @see #setEpochs(int)
 	 */
-	@Override
-	public void update(NodeHandle handle, boolean joined)
+	public int getEpoch()
 	{
-		if (trace)
-		{
-			log("update " + handle + ((joined) ? " joined" : " left"));
-		}
+		return epoch;
 	}
 
-	// == ScribeMultiClient methods ============ //
-
 	/**
-	 * Called when a message is received for a topic this node has subscribed.
-	 * <p>
-	 * This application only uses one topic to broadcast reset notifications.
-	 * When receiving a reset notification, reset the current value to the
-	 * original value and set the weight to 1.
+	 * Registers this node in a {@link NodeRegistry}, to which it publishes all
+	 * changes of its state from now on.
+	 * 
+	 * @param registry
+	 *            the registry.
+	 * @throws IllegalStateException
+	 *             If this node has already been registered.
 	 */
-	@Override
-	public void deliver(Topic topic, ScribeContent content)
+	public void setRegistry(NodeRegistry registry)
 	{
-		if (trace)
+		if (this.registry != null)
 		{
-			log("deliver (" + topic + "," + content + ")");
+			throw new IllegalStateException(this + " is already registered.");
 		}
 
-		if (content instanceof ResetNotification)
-		{
-			this.value = trueValue;
-			this.valueBuffer = trueValue;
-			this.weight = 1.;
-			this.weightBuffer = 1.;
-		}
+		this.slot = registry.register(this);
+		this.registry = registry;
+
+		publish();
 	}
 
 	/**
-	 * Called when an anycast is received for a topic this node has subscribed.
-	 * <p>
-	 * This class never uses anycasts.
+	 * Returns the id of this node.
 	 */
-	@Override
-	public boolean anycast(Topic topic, ScribeContent content)
+	public Id getId()
 	{
-		return false;
+		return endpoint.getId();
 	}
 
 	/**
-	 * Called when an child is added to a topic this node has subscribed.
-	 * <p>
-	 * No action, except logging, is taken in this event.
+	 * Returns a copy of the metrics of this node. Since the metrics are
+	 * recorded without synchronization, this must be called on the selector
+	 * thread of the node.
 	 */
-	@Override
-	public void childAdded(Topic topic, NodeHandle child)
+	public NodeMetrics getMetrics()
 	{
-		if (trace)
-		{
-			log("child added (" + topic + "," + child + ")");
-		}
+		return new NodeMetrics(metrics);
 	}
 
 	/**
-	 * Called when an child is removed to a topic this node has subscribed.
-	 * <p>
-	 * No action, except logging, is taken in this event.
+	 * Returns the number of steps this node has done.
 	 */
-	@Override
-	public void childRemoved(Topic topic, NodeHandle child)
+	public int getStep()
 	{
-		if (trace)
-		{
-			log("child removed (" + topic + "," + child + ")");
-		}
+		return step;
 	}
 
 	/**
-	 * Called when subscribing to a topic failed.
-	 * <p>
-	 * No action, except logging, is taken in this event.
+	 * Returns the current time between two steps of this node, which differs
+	 * from the step size given in the constructor only if the adaptive step
+	 * size is enabled.
 	 */
-	@Override
-	@Deprecated
-	public void subscribeFailed(Topic topic)
+	public long getCurrentStepSize()
 	{
-		if (trace)
-		{
-			log("subscribe failed (" + topic + ")");
-		}
+		return currentStepSize;
 	}
 
 	/**
-	 * Called when subscribing to a topic failed.
-	 * <p>
-	 * No action, except logging, is taken in this event.
+	 * Returns whether the estimates of this node have been stable over the
+	 * convergence window, if the adaptive step size is enabled, or
+	 * {@code false} otherwise.
+	 * 
+	 * @see #setAdaptiveStepSize(long, int, double)
 	 */
-	@Override
-	public void subscribeFailed(Collection<Topic> topics)
+	public boolean isConverged()
 	{
-		if (trace)
-		{
-			log("subscribe failed (" + Arrays.toString(topics.toArray()) + ")");
-		}
+		return convergence != null && convergence.isStable();
 	}
 
 	/**
-	 * Called when subscribing to a topic succeeded.
-	 * <p>
-	 * No action, except logging, is taken in this event.
+	 * Returns whether this node is active.
 	 */
-	@Override
-	public void subscribeSuccess(Collection<Topic> topics)
+	public boolean isActive()
 	{
-		if (trace)
-		{
-			log("subscribe success (" + Arrays.toString(topics.toArray()) + ")");
-		}
+		return active;
 	}
 
-	// ========================================== //
-
-	@Override
-	public String toString()
+	/**
+	 * Returns the number of values of this node.
+	 */
+	public int getDimension()
 	{
-		return this.getClass().getSimpleName() + endpoint.getId();
+		return dimension;
 	}
 
-	private void log(String text)
+	/**
+	 * Returns the true value of this node. The true value is updated
+	 * periodically with the value returned by the {@link ValueReader} specified
+	 * in the constructor.
+	 */
+	public double getTrueValue()
 	{
-		System.out.format("# [%d] %s: %s%n", node.getEnvironment().getTimeSource().currentTimeMillis(), this, text);
+		return trueValues[0];
 	}
-}
 
-class TimerMessage implements Message
-{
-	@Override
-	public int getPriority()
+	/**
+	 * Returns the given component of the true values of this node.
+	 */
+	public double getTrueValue(int component)
 	{
-		return Message.DEFAULT_PRIORITY;
+		return trueValues[component];
 	}
 
-	@Override
+	/**
+	 * Returns the current value, used by the Push-Sum protocol to estimate the
+	 * mean.
+	 */
+	public double getValue()
+	{
+		return values[0];
+	}
+
+	/**
+	 * Returns the given component of the current values.
+	 */
+	public double getValue(int component)
+	{
+		return values[component];
+	}
+
+	/**
+	 * Returns the current weight, used by the Push-Sum protocol to estimate the
+	 * mean.
+	 */
+	public double getWeight()
+	{
+		return weight;
+	}
+
+	/**
+	 * Returns the average value of all nodes in the ring, as estimated by the
+	 * Push-Sum protocol. The estimate is obtained by {@code value / weight},
+	 * bounded by the {@code min} and {@code max} values given in the
+	 * constructor.
+	 * <p>
+	 * If the true value has been updated recently, this will return the true
+	 * value instead, until one message from another node is received, as in
+	 * this case it serves as a better estimate.
+	 */
+	public double getEstimate()
+	{
+		return getEstimate(0);
+	}
+
+	/**
+	 * Returns the estimated average of the given component, as described in
+	 * {@link #getEstimate()}.
+	 */
+	public double getEstimate(int component)
+	{
+		return transition ? trueValues[component] : Math.max(min, Math.min(values[component] / weight, max));
+	}
+
+	/**
+	 * Returns the estimated number of active nodes in the ring, or infinity if
+	 * no share of the designated node has reached this node yet.
+	 * 
+	 * @throws IllegalStateException
+	 *             If counting is not enabled.
+	 * @see #setCounting(boolean)
+	 */
+	public double getSizeEstimate()
+	{
+		return weight / getCountWeight();
+	}
+
+	/**
+	 * Returns the estimated sum of the values of all active nodes in the ring.
+	 * 
+	 * @throws IllegalStateException
+	 *             If counting is not enabled.
+	 * @see #setCounting(boolean)
+	 */
+	public double getSumEstimate()
+	{
+		return getSumEstimate(0);
+	}
+
+	/**
+	 * Returns the estimated sum of the given component, as described in
+	 * {@link #getSumEstimate()}.
+	 */
+	public double getSumEstimate(int component)
+	{
+		return values[component] / getCountWeight();
+	}
+
+	/**
+	 * Returns an estimate of the {@code q}-quantile of the values of all nodes
+	 * in the ring, if the node reads its values from a
+	 * {@link HistogramValueReader}. The quantile is interpolated from the
+	 * estimated fractions of the nodes in each bin of the histogram, or
+	 * obtained from the true values, as described in {@link #getEstimate()}.
+	 * 
+	 * @param q
+	 *            the quantile, between 0 and 1.
+	 * @throws IllegalStateException
+	 *             If the node does not read its values from a
+	 *             {@link HistogramValueReader}.
+	 */
+	public double getQuantile(double q)
+	{
+		if (!(valueReader instanceof HistogramValueReader))
+		{
+			throw new IllegalStateException("Quantiles require a " + HistogramValueReader.class.getSimpleName() + ".");
+		}
+
+		// the fractions are proportional to the values of the bins
+		return ((HistogramValueReader) valueReader).getHistogram().getQuantile(transition ? trueValues : values, 1, q);
+	}
+
+	/**
+	 * Sends a reset notification to all nodes.
+	 * <p>
+	 * Since this is not a barrier, the resets introduce an error in the
+	 * accuracy of the estimates. Overall it may be better not to do any resets,
+	 * letting the contribution of stopped nodes "fade out".
+	 * <p>
+	 * If epochs are enabled, no notification is sent. Instead, this node
+	 * starts the next epoch, unless it is already running, which spreads to
+	 * the other nodes with the shares of the next steps. The node must be
+	 * active in this case.
+	 * 
+	 * @throws IllegalStateException
+	 *             If epochs are enabled and this node is stopped.
+	 * @see #setEpochs(int)
+	 */
+	public void broadcastReset()
+	{
+		if (epochSteps == 0)
+		{
+			scribe.publish(resetTopic, new ResetNotification());
+		}
+		else if (!active)
+		{
+			throw new IllegalStateException(this + " cannot start a new epoch while stopped.");
+		}
+		else if (nextValues == null)
+		{
+			beginNextEpoch();
+		}
+	}
+
+	// == Application methods ============ //
+
+	/**
+	 * Called when this node receives a message.
+	 * <p>
+	 * When receiving a timer message, sum up the values and weights from all
+	 * messages received since the last step and split the new value and
+	 * weight between itself and one or more random neighbors, depending on the
+	 * {@link Exchange}. A stopped node only forwards the shares queued since
+	 * the last step, if batching is enabled.
+	 * <p>
+	 * When receiving a message from another node, store the received values and
+	 * weights in a buffer for the next step.
+	 */
+	@Override
+	public void deliver(Id id, Message message)
+	{
+		// measure the delay of the timer
+		if (message instanceof TimerMessage)
+		{
+			long now = node.getEnvironment().getTimeSource().currentTimeMillis();
+
+			metrics.queueDelay(now - nextStepTime);
+
+			if (convergence == null)
+			{
+				nextStepTime = now + stepSize;
+			}
+		}
+
+		// forward queued shares of a stopped node
+		if (message instanceof TimerMessage && !active)
+		{
+			if (queuedCount > 0)
+			{
+				forwardQueued(randomIdGenerator.generateId(), false);
+			}
+
+			if (convergence != null)
+			{
+				scheduleTimer(stepSize);
+			}
+		}
+
+		// next step
+		else if (message instanceof TimerMessage)
+		{
+			long stepStart = System.nanoTime();
+
+			step++;
+
+			// sum up received values
+			System.arraycopy(valueBuffers, 0, values, 0, components);
+			weight = weightBuffer;
+
+			if (nextValues != null)
+			{
+				System.arraycopy(nextValueBuffers, 0, nextValues, 0, components);
+				nextWeight = nextWeightBuffer;
+			}
+
+			// switch to the next epoch once it has mixed
+			boolean switched = nextValues != null && ++nextEpochStep >= epochSteps;
+
+			if (switched)
+			{
+				switchEpoch();
+			}
+
+			// update values
+			boolean changed = false;
+
+			if (isUpdateStep())
+			{
+				double[] newValues = readValues();
+
+				for (int i = 0; i < dimension; i++)
+				{
+					values[i] += newValues[i] - trueValues[i];
+					changed |= newValues[i] != trueValues[i];
+
+					if (nextValues != null)
+					{
+						nextValues[i] += newValues[i] - trueValues[i];
+					}
+
+					trueValues[i] = newValues[i];
+				}
+
+				transition = changed;
+			}
+
+			listener.step(this, step, values[0], weight);
+
+			publish();
+
+			int targets = nextFanOut();
+
+			// the share is kept apart from the buffers, since messages routed
+			// to this node are delivered before the call to route returns
+			double[] share = share(shareScratch);
+
+			for (int i = 0; i < components; i++)
+			{
+				share[i] = values[i] / (targets + 1);
+			}
+
+			double shareWeight = weight / (targets + 1);
+
+			// send to self
+			System.arraycopy(share, 0, valueBuffers, 0, components);
+			weightBuffer = shareWeight;
+
+			// split the next epoch in the same way
+			double[] nextShare = null;
+			double nextShareWeight = 0.;
+
+			if (nextValues != null)
+			{
+				nextShare = share(nextShareScratch);
+
+				for (int i = 0; i < components; i++)
+				{
+					nextShare[i] = nextValues[i] / (targets + 1);
+				}
+
+				nextShareWeight = nextWeight / (targets + 1);
+
+				System.arraycopy(nextShare, 0, nextValueBuffers, 0, components);
+				nextWeightBuffer = nextShareWeight;
+			}
+
+			// send to random neighbors
+			for (int t = 0; t < targets; t++)
+			{
+				NodeHandle neighbor = (directRatio > 0. && node.getEnvironment().getRandomSource().nextDouble() < directRatio) ? randomNeighbor()
+						: null;
+				Id randomId = (neighbor != null) ? neighbor.getId() : randomIdGenerator.generateId();
+
+				if (queuedCount > 0)
+				{
+					// send the shares queued while stopped along with our own
+					int offset = queue(epoch);
+					System.arraycopy(share, 0, queued, offset, components);
+					queued[offset + components] = shareWeight;
+
+					forwardQueued(randomId, true);
+				}
+				else
+				{
+					send(randomId, neighbor, share, shareWeight, exchange == Exchange.PUSH_PULL, epoch);
+				}
+
+				listener.sent(this, randomId, share[0], shareWeight);
+
+				if (nextShare != null)
+				{
+					send(randomId, neighbor, nextShare, nextShareWeight, exchange == Exchange.PUSH_PULL, epoch + 1);
+
+					listener.sent(this, randomId, nextShare[0], nextShareWeight);
+				}
+			}
+
+			// back off while the estimates are stable
+			if (convergence != null)
+			{
+				if (changed || switched)
+				{
+					convergence.clear();
+				}
+
+				convergence.add(values, weight);
+				currentStepSize = convergence.isStable() ? Math.min(2 * currentStepSize, maxStepSize) : stepSize;
+
+				scheduleTimer(currentStepSize);
+			}
+
+			metrics.step(System.nanoTime() - stepStart);
+		}
+
+		// message from another node
+		else if (message instanceof ValueWeightMessage)
+		{
+			ValueWeightMessage vw = (ValueWeightMessage) message;
+
+			checkComponents(1, message);
+			metrics.received(vw.getHops());
+
+			int offset = active ? joinEpoch(vw.getEpoch()) : 0;
+
+			if (active && offset >= 0 && vw.isReplyRequested())
+			{
+				reply(vw.getSender(), offset);
+			}
+
+			if (active && offset < 0)
+			{
+				metrics.dropped();
+				listener.dropped(this, vw.getEpoch(), vw.getValue(), vw.getWeight());
+			}
+			else if (active && offset > 0)
+			{
+				nextValueBuffers[0] += vw.getValue();
+				nextWeightBuffer += vw.getWeight();
+
+				listener.received(this, vw.getValue(), vw.getWeight());
+			}
+			else if (active)
+			{
+				if (convergence != null && movesEstimate(0, vw.getValue(), vw.getWeight()))
+				{
+					snapBack();
+				}
+
+				valueBuffers[0] += vw.getValue();
+				weightBuffer += vw.getWeight();
+
+				listener.received(this, vw.getValue(), vw.getWeight());
+
+				if (transition)
+				{
+					transition = false;
+
+					publish();
+				}
+			}
+			else if (batching)
+			{
+				int queuedOffset = queue(vw.getEpoch());
+				metrics.forwardedInactive();
+				queued[queuedOffset] = vw.getValue();
+				queued[queuedOffset + 1] = vw.getWeight();
+			}
+			else
+			{
+				// if we stopped participating, but are still in the ring,
+				// forward messages to another random node
+				Id randomId = randomIdGenerator.generateId();
+				vw.clearHops();
+				endpoint.route(randomId, vw, null);
+				metrics.routed();
+				metrics.forwardedInactive();
+
+				listener.forwarded(this, randomId, vw.getValue(), vw.getWeight());
+			}
+		}
+
+		// vector of values from another node
+		else if (message instanceof VectorValueWeightMessage)
+		{
+			VectorValueWeightMessage vvw = (VectorValueWeightMessage) message;
+
+			checkComponents(vvw.getDimension(), message);
+			metrics.received(vvw.getHops());
+
+			int offset = active ? joinEpoch(vvw.getEpoch()) : 0;
+
+			if (active && offset >= 0 && vvw.isReplyRequested())
+			{
+				reply(vvw.getSender(), offset);
+			}
+
+			if (active && offset < 0)
+			{
+				metrics.dropped();
+				listener.dropped(this, vvw.getEpoch(), vvw.getValue(0), vvw.getWeight());
+			}
+			else if (active && offset > 0)
+			{
+				for (int i = 0; i < components; i++)
+				{
+					nextValueBuffers[i] += vvw.getValue(i);
+				}
+
+				nextWeightBuffer += vvw.getWeight();
+
+				listener.received(this, vvw.getValue(0), vvw.getWeight());
+			}
+			else if (active)
+			{
+				for (int i = 0; convergence != null && i < dimension; i++)
+				{
+					if (movesEstimate(i, vvw.getValue(i), vvw.getWeight()))
+					{
+						snapBack();
+						break;
+					}
+				}
+
+				for (int i = 0; i < components; i++)
+				{
+					valueBuffers[i] += vvw.getValue(i);
+				}
+
+				weightBuffer += vvw.getWeight();
+
+				listener.received(this, vvw.getValue(0), vvw.getWeight());
+
+				if (transition)
+				{
+					transition = false;
+
+					publish();
+				}
+			}
+			else if (batching)
+			{
+				int queuedOffset = queue(vvw.getEpoch());
+				metrics.forwardedInactive();
+
+				for (int i = 0; i < components; i++)
+				{
+					queued[queuedOffset + i] = vvw.getValue(i);
+				}
+
+				queued[queuedOffset + components] = vvw.getWeight();
+			}
+			else
+			{
+				Id randomId = randomIdGenerator.generateId();
+				vvw.clearHops();
+				endpoint.route(randomId, vvw, null);
+				metrics.routed();
+				metrics.forwardedInactive();
+
+				listener.forwarded(this, randomId, vvw.getValue(0), vvw.getWeight());
+			}
+		}
+
+		// several shares from another node
+		else if (message instanceof BatchedValueWeightMessage)
+		{
+			BatchedValueWeightMessage batch = (BatchedValueWeightMessage) message;
+
+			checkComponents(batch.getDimension(), message);
+			metrics.received(batch.getHops());
+
+			int offset = active ? joinEpoch(batch.getEpoch()) : 0;
+
+			if (active && offset < 0)
+			{
+				metrics.dropped();
+
+				for (int i = 0; i < batch.getCount(); i++)
+				{
+					listener.dropped(this, batch.getEpoch(), batch.getValue(i, 0), batch.getWeight(i));
+				}
+			}
+			else if (active && offset > 0)
+			{
+				for (int i = 0; i < batch.getCount(); i++)
+				{
+					for (int j = 0; j < components; j++)
+					{
+						nextValueBuffers[j] += batch.getValue(i, j);
+					}
+
+					nextWeightBuffer += batch.getWeight(i);
+
+					listener.received(this, batch.getValue(i, 0), batch.getWeight(i));
+				}
+			}
+			else if (active)
+			{
+				for (int i = 0; i < batch.getCount(); i++)
+				{
+					for (int j = 0; convergence != null && j < dimension; j++)
+					{
+						if (movesEstimate(j, batch.getValue(i, j), batch.getWeight(i)))
+						{
+							snapBack();
+							break;
+						}
+					}
+
+					for (int j = 0; j < components; j++)
+					{
+						valueBuffers[j] += batch.getValue(i, j);
+					}
+
+					weightBuffer += batch.getWeight(i);
+
+					listener.received(this, batch.getValue(i, 0), batch.getWeight(i));
+				}
+
+				if (transition)
+				{
+					transition = false;
+
+					publish();
+				}
+			}
+			else if (batching)
+			{
+				for (int i = 0; i < batch.getCount(); i++)
+				{
+					int queuedOffset = queue(batch.getEpoch());
+					metrics.forwardedInactive();
+
+					for (int j = 0; j < components; j++)
+					{
+						queued[queuedOffset + j] = batch.getValue(i, j);
+					}
+
+					queued[queuedOffset + components] = batch.getWeight(i);
+				}
+			}
+			else
+			{
+				Id randomId = randomIdGenerator.generateId();
+				batch.clearHops();
+				endpoint.route(randomId, batch, null);
+				metrics.routed();
+				metrics.forwardedInactive();
+
+				for (int i = 0; i < batch.getCount(); i++)
+				{
+					listener.forwarded(this, randomId, batch.getValue(i, 0), batch.getWeight(i));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Called when this node is about to forward a message.
+	 * <p>
+	 * All messages are forwarded in this application.
+	 */
+	@Override
+	public boolean forward(RouteMessage message)
+	{
+		listener.hop(this, message.getDestinationId());
+		metrics.forwarded();
+
+		countHop(message);
+
+		return true;
+	}
+
+	/**
+	 * Called when a node joins or leaves the neighbor set of this node.
+	 * <p>
+	 * No action is taken when a node joins or leaves the neighbor set of this
+	 * node.
+	 */
+	@Override
+	public void update(NodeHandle handle, boolean joined)
+	{
+		listener.neighborChanged(this, handle.getId(), joined);
+	}
+
+	// == ScribeMultiClient methods ============ //
+
+	/**
+	 * Called when a message is received for a topic this node has subscribed.
+	 * <p>
+	 * This application only uses one topic to broadcast reset notifications.
+	 * When receiving a reset notification, reset the current value to the
+	 * original value and set the weight to 1. If epochs are enabled, start the
+	 * next epoch instead.
+	 */
+	@Override
+	public void deliver(Topic topic, ScribeContent content)
+	{
+		if (content instanceof ResetNotification)
+		{
+			listener.resetNotified(this);
+		}
+
+		if (content instanceof ResetNotification && epochSteps > 0)
+		{
+			if (active && nextValues == null)
+			{
+				beginNextEpoch();
+			}
+		}
+		else if (content instanceof ResetNotification)
+		{
+			reset();
+		}
+	}
+
+	/**
+	 * Called when an anycast is received for a topic this node has subscribed.
+	 * <p>
+	 * This class never uses anycasts.
+	 */
+	@Override
+	public boolean anycast(Topic topic, ScribeContent content)
+	{
+		return false;
+	}
+
+	/**
+	 * Called when an child is added to a topic this node has subscribed.
+	 * <p>
+	 * No action, except notifying the event listener, is taken in this event.
+	 */
+	@Override
+	public void childAdded(Topic topic, NodeHandle child)
+	{
+		listener.childChanged(this, child.getId(), true);
+	}
+
+	/**
+	 * Called when an child is removed to a topic this node has subscribed.
+	 * <p>
+	 * No action, except notifying the event listener, is taken in this event.
+	 */
+	@Override
+	public void childRemoved(Topic topic, NodeHandle child)
+	{
+		listener.childChanged(this, child.getId(), false);
+	}
+
+	/**
+	 * Called when subscribing to a topic failed.
+	 * <p>
+	 * No action, except notifying the event listener, is taken in this event.
+	 */
+	@Override
+	@Deprecated
+	public void subscribeFailed(Topic topic)
+	{
+		listener.subscribed(this, false);
+	}
+
+	/**
+	 * Called when subscribing to a topic failed.
+	 * <p>
+	 * No action, except notifying the event listener, is taken in this event.
+	 */
+	@Override
+	public void subscribeFailed(Collection<Topic> topics)
+	{
+		listener.subscribed(this, false);
+	}
+
+	/**
+	 * Called when subscribing to a topic succeeded.
+	 * <p>
+	 * No action, except notifying the event listener, is taken in this event.
+	 */
+	@Override
+	public void subscribeSuccess(Collection<Topic> topics)
+	{
+		listener.subscribed(this, true);
+	}
+
+	// ========================================== //
+
+	@Override
+	public String toString()
+	{
+		return this.getClass().getSimpleName() + endpoint.getId();
+	}
+
+	/**
+	 * Publishes the current state to the registry.
+	 */
+	private void publish()
+	{
+		if (registry != null)
+		{
+			registry.publish(slot, active, trueValues[0], values[0], weight, getEstimate());
+		}
+	}
+
+	/**
+	 * Resets the values to the true values and the weight to 1.
+	 */
+	private void reset()
+	{
+		System.arraycopy(trueValues, 0, values, 0, components);
+		System.arraycopy(trueValues, 0, valueBuffers, 0, components);
+		this.weight = 1.;
+		this.weightBuffer = 1.;
+
+		listener.reset(this, values[0], weight);
+		metrics.reset();
+
+		if (convergence != null && active)
+		{
+			snapBack();
+		}
+
+		publish();
+	}
+
+	/**
+	 * Starts the next epoch with the true values and a weight of 1.
+	 */
+	private void beginNextEpoch()
+	{
+		listener.epochStarted(this, epoch + 1, false);
+
+		nextValues = trueValues.clone();
+		nextValueBuffers = trueValues.clone();
+		nextWeight = 1.;
+		nextWeightBuffer = 1.;
+		nextEpochStep = 0;
+	}
+
+	/**
+	 * Replaces the current epoch with the next one, which has just been summed
+	 * up.
+	 */
+	private void switchEpoch()
+	{
+		epoch++;
+
+		values = nextValues;
+		valueBuffers = nextValueBuffers;
+		weight = nextWeight;
+		weightBuffer = nextWeightBuffer;
+
+		nextValues = null;
+		nextValueBuffers = null;
+
+		listener.epochSwitched(this, epoch);
+		listener.reset(this, values[0], weight);
+		metrics.reset();
+	}
+
+	/**
+	 * Called when an active node receives a share of the given epoch. Starts
+	 * the epoch of the share, if it is newer than the epochs of this node, and
+	 * returns the offset of the epoch of the share to the current epoch: 0 for
+	 * the current and 1 for the next epoch, or -1 for older epochs, whose
+	 * shares are dropped. Without epochs, all shares belong to the current
+	 * epoch.
+	 */
+	private int joinEpoch(int shareEpoch)
+	{
+		if (epochSteps == 0 || shareEpoch == epoch)
+		{
+			return 0;
+		}
+
+		if (shareEpoch < epoch)
+		{
+			return -1;
+		}
+
+		if (shareEpoch > epoch + 1)
+		{
+			// the node missed entire epochs, start over in the new one
+			listener.epochStarted(this, shareEpoch, true);
+
+			epoch = shareEpoch;
+			nextValues = null;
+			nextValueBuffers = null;
+
+			reset();
+
+			return 0;
+		}
+
+		if (nextValues == null)
+		{
+			beginNextEpoch();
+		}
+
+		return 1;
+	}
+
+	/**
+	 * Returns the count weight, which is the last component of the values.
+	 * 
+	 * @throws IllegalStateException
+	 *             If counting is not enabled.
+	 */
+	private double getCountWeight()
+	{
+		if (!isCounting())
+		{
+			throw new IllegalStateException(this + " does not count the nodes.");
+		}
+
+		return values[dimension];
+	}
+
+	/**
+	 * Returns whether the values are read at the current step: after a change
+	 * of a value source, or periodically for other value readers.
+	 */
+	private boolean isUpdateStep()
+	{
+		if (valuesChanged == null)
+		{
+			return updateInterval > 0 && step % updateInterval == 0;
+		}
+
+		if (step - lastUpdateStep < updateInterval || !valuesChanged.get())
+		{
+			return false;
+		}
+
+		// reset before reading, so that later changes are not lost
+		valuesChanged.set(false);
+		lastUpdateStep = step;
+
+		return true;
+	}
+
+	/**
+	 * Called on any thread after a value source reported a change, to return
+	 * to the base step size on the selector thread, if the node backed off.
+	 */
+	private void wakeUp()
+	{
+		node.getEnvironment().getSelectorManager().invoke(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if (convergence != null && active)
+				{
+					snapBack();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Reads the current values from the value reader.
+	 * 
+	 * @throws IllegalStateException
+	 *             If the reader returned a different number of values than
+	 *             before.
+	 */
+	private double[] readValues()
+	{
+		double[] newValues = valueReader.getCurrentValues();
+
+		if (newValues.length != dimension)
+		{
+			throw new IllegalStateException("Expected " + dimension + " values, but " + valueReader + " returned " + newValues.length + ".");
+		}
+
+		return newValues;
+	}
+
+	/**
+	 * Checks that a message received from another node has as many components
+	 * as this node, since values of a different dimension cannot be added.
+	 * 
+	 * @throws IllegalStateException
+	 *             If the number of components differs.
+	 */
+	private void checkComponents(int messageComponents, Message message)
+	{
+		if (messageComponents != components)
+		{
+			throw new IllegalStateException(this + " with " + components + " components cannot receive " + message + ".");
+		}
+	}
+
+	/**
+	 * Returns the number of random nodes to send to at this step, adapting the
+	 * fan-out to the change of the estimates since the last step if the
+	 * exchange is {@link Exchange#ADAPTIVE}.
+	 */
+	private int nextFanOut()
+	{
+		if (exchange == Exchange.ADAPTIVE)
+		{
+			boolean stable = true;
+
+			for (int i = 0; i < dimension; i++)
+			{
+				double estimate = values[i] / weight;
+
+				if (Math.abs(estimate - lastEstimates[i]) > ADAPTIVE_TOLERANCE * Math.max(Math.abs(estimate), Math.abs(lastEstimates[i])))
+				{
+					stable = false;
+				}
+
+				lastEstimates[i] = estimate;
+			}
+
+			currentFanOut = stable ? Math.max(currentFanOut / 2, 1) : Math.min(2 * currentFanOut, fanOut);
+		}
+
+		return (exchange == Exchange.PUSH || exchange == Exchange.PUSH_PULL) ? 1 : currentFanOut;
+	}
+
+	/**
+	 * Schedules the next timer message after the given delay. With the
+	 * adaptive step size, each step schedules the next one, otherwise the
+	 * timer messages are scheduled periodically.
+	 */
+	private void scheduleTimer(long delay)
+	{
+		if (convergence != null)
+		{
+			timer = endpoint.scheduleMessage(new TimerMessage(), delay);
+		}
+		else
+		{
+			timer = endpoint.scheduleMessage(new TimerMessage(), delay, stepSize);
+		}
+
+		nextStepTime = node.getEnvironment().getTimeSource().currentTimeMillis() + delay;
+	}
+
+	/**
+	 * Returns whether adding the given share to the buffers would change the
+	 * estimate of the given component by more than the convergence tolerance.
+	 */
+	private boolean movesEstimate(int component, double value, double weight)
+	{
+		double before = valueBuffers[component] / weightBuffer;
+		double after = (valueBuffers[component] + value) / (weightBuffer + weight);
+
+		return Math.abs(after - before) > convergenceTolerance * Math.max(Math.abs(before), Math.abs(after));
+	}
+
+	/**
+	 * Returns to the base step size, starting the next step after at most one
+	 * base step.
+	 */
+	private void snapBack()
+	{
+		convergence.clear();
+		currentStepSize = stepSize;
+
+		if (nextStepTime - node.getEnvironment().getTimeSource().currentTimeMillis() > stepSize)
+		{
+			timer.cancel();
+			scheduleTimer(stepSize);
+		}
+	}
+
+	/**
+	 * Sends a share of values and weight of the given epoch to the given id.
+	 * The array of values must not be changed afterwards.
+	 */
+	private void send(Id target, double[] share, double shareWeight, boolean replyRequested, int shareEpoch)
+	{
+		send(target, null, share, shareWeight, replyRequested, shareEpoch);
+	}
+
+	/**
+	 * Sends a share directly to the given node handle, or routes it to the
+	 * given id if the handle is {@code null}.
+	 */
+	private void send(Id target, NodeHandle neighbor, double[] share, double shareWeight, boolean replyRequested, int shareEpoch)
+	{
+		RawMessage message = createMessage(target, share, shareWeight, replyRequested, shareEpoch);
+
+		if (neighbor != null)
+		{
+			endpoint.route(null, message, neighbor);
+			metrics.sentDirectly();
+		}
+		else
+		{
+			endpoint.route(target, message, null);
+			metrics.routed();
+		}
+	}
+
+	/**
+	 * Returns a random node of the routing table or of the leafset of this
+	 * node, or {@code null} if both are empty.
+	 * <p>
+	 * Picks a random index among the entries of both tables and walks to it,
+	 * without copying them. An entry of this node itself is drawn again.
+	 */
+	private NodeHandle randomNeighbor()
+	{
+		PastryNode pastryNode = (PastryNode) node;
+		RoutingTable routingTable = pastryNode.getRoutingTable();
+		LeafSet leafSet = pastryNode.getLeafSet();
+
+		int routingEntries = routingTable.numEntries();
+		int entries = routingEntries + leafSet.ccwSize() + leafSet.cwSize();
+
+		// the routing table may contain the local node, which is drawn again
+		for (int attempt = 0; attempt < entries; attempt++)
+		{
+			int index = node.getEnvironment().getRandomSource().nextInt(entries);
+			NodeHandle neighbor;
+
+			if (index < routingEntries)
+			{
+				neighbor = routingTableEntry(routingTable, index);
+			}
+			else
+			{
+				// the leafset is indexed from -ccwSize to cwSize, without 0
+				index -= routingEntries + leafSet.ccwSize();
+				neighbor = leafSet.get((index < 0) ? index : index + 1);
+			}
+
+			if (!neighbor.getId().equals(endpoint.getId()))
+			{
+				return neighbor;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the entry of the routing table at the given index, counting the
+	 * entries of all route sets row by row.
+	 */
+	private static NodeHandle routingTableEntry(RoutingTable routingTable, int index)
+	{
+		for (int row = 0; row < routingTable.numRows(); row++)
+		{
+			for (int column = 0; column < routingTable.numColumns(); column++)
+			{
+				RouteSet routeSet = routingTable.getRouteSet(row, column);
+
+				if (routeSet != null)
+				{
+					if (index < routeSet.size())
+					{
+						return routeSet.get(index);
+					}
+
+					index -= routeSet.size();
+				}
+			}
+		}
+
+		throw new IllegalStateException("The routing table has fewer entries than it counted.");
+	}
+
+	/**
+	 * Creates the message for a share of values and weight, depending on the
+	 * number of components.
+	 */
+	private RawMessage createMessage(Id target, double[] share, double shareWeight, boolean replyRequested, int shareEpoch)
+	{
+		if (components == 1)
+		{
+			return new ValueWeightMessage(endpoint.getId(), target, share[0], shareWeight, replyRequested, shareEpoch);
+		}
+		else
+		{
+			return new VectorValueWeightMessage(endpoint.getId(), target, share, shareWeight, replyRequested, shareEpoch);
+		}
+	}
+
+	/**
+	 * Hands off the values and weights of all running epochs, less the own
+	 * contribution, to the live nodes of the leafset, and keeps only the own
+	 * contribution.
+	 */
+	private void handOff()
+	{
+		// Pastry removes nodes from the leafset once they are found dead
+		NodeHandleSet neighbors = endpoint.neighborSet(Integer.MAX_VALUE);
+		int targets = 0;
+
+		for (int i = 0; i < neighbors.size(); i++)
+		{
+			if (!neighbors.getHandle(i).getId().equals(endpoint.getId()))
+			{
+				targets++;
+			}
+		}
+
+		listener.handedOff(this, targets);
+
+		if (targets == 0)
+		{
+			return;
+		}
+
+		handOff(valueBuffers, weightBuffer, epoch, neighbors, targets);
+		weightBuffer = 1.;
+
+		System.arraycopy(valueBuffers, 0, values, 0, components);
+		weight = weightBuffer;
+
+		if (nextValues != null)
+		{
+			handOff(nextValueBuffers, nextWeightBuffer, epoch + 1, neighbors, targets);
+			nextWeightBuffer = 1.;
+
+			System.arraycopy(nextValueBuffers, 0, nextValues, 0, components);
+			nextWeight = nextWeightBuffer;
+		}
+	}
+
+	/**
+	 * Sends equal shares of the given buffers and weight, less the own
+	 * contribution, to the given number of nodes of the given set other than
+	 * this node, and replaces the buffers by the own contribution. The caller
+	 * resets the weight.
+	 */
+	private void handOff(double[] buffers, double bufferWeight, int shareEpoch, NodeHandleSet neighbors, int targets)
+	{
+		double[] share = new double[components];
+
+		for (int i = 0; i < components; i++)
+		{
+			// the count weight is not part of the contribution
+			double contribution = (i < dimension) ? trueValues[i] : 0.;
+
+			share[i] = (buffers[i] - contribution) / targets;
+			buffers[i] = contribution;
+		}
+
+		double shareWeight = (bufferWeight - 1.) / targets;
+
+		for (int i = 0; i < neighbors.size(); i++)
+		{
+			NodeHandle handle = neighbors.getHandle(i);
+
+			if (handle.getId().equals(endpoint.getId()))
+			{
+				continue;
+			}
+
+			send(handle.getId(), handle, share, shareWeight, false, shareEpoch);
+
+			listener.sent(this, handle.getId(), share[0], shareWeight);
+		}
+	}
+
+	/**
+	 * Replies to a push-pull request by sending half of the values and weight
+	 * in the buffers of the current epoch, or of the next epoch if
+	 * {@code offset} is 1, back to the sender.
+	 */
+	private void reply(Id sender, int offset)
+	{
+		double[] buffers = (offset > 0) ? nextValueBuffers : valueBuffers;
+		double[] share = share(replyScratch);
+
+		for (int i = 0; i < components; i++)
+		{
+			buffers[i] /= 2;
+			share[i] = buffers[i];
+		}
+
+		double shareWeight;
+
+		if (offset > 0)
+		{
+			nextWeightBuffer /= 2;
+			shareWeight = nextWeightBuffer;
+		}
+		else
+		{
+			weightBuffer /= 2;
+			shareWeight = weightBuffer;
+		}
+
+		send(sender, share, shareWeight, false, epoch + offset);
+
+		listener.sent(this, sender, share[0], shareWeight);
+	}
+
+	/**
+	 * Returns an array for the values of a share. A {@link ValueWeightMessage}
+	 * copies the value of a scalar node, so that the given scratch array can
+	 * be reused, while a {@link VectorValueWeightMessage} keeps the array it
+	 * is given, which therefore must be a new one.
+	 */
+	private double[] share(double[] scratch)
+	{
+		return (components == 1) ? scratch : new double[components];
+	}
+
+	/**
+	 * Adds a share of the given epoch to the queue of shares to forward and
+	 * returns the offset in {@code queued} at which the caller stores the
+	 * values, followed by the weight. Since all shares of a batch belong to
+	 * the same epoch, the queued shares of another epoch are forwarded first.
+	 */
+	private int queue(int shareEpoch)
+	{
+		if (queuedCount > 0 && queuedEpoch != shareEpoch)
+		{
+			forwardQueued(randomIdGenerator.generateId(), false);
+		}
+
+		queuedEpoch = shareEpoch;
+
+		int stride = components + 1;
+
+		if (stride * (queuedCount + 1) > queued.length)
+		{
+			queued = Arrays.copyOf(queued, Math.max(2 * queued.length, stride * (queuedCount + 1)));
+		}
+
+		return stride * queuedCount++;
+	}
+
+	/**
+	 * Routes all queued shares in one message to the given id and clears the
+	 * queue. If {@code withOwnShare} is set, the last share is the one of this
+	 * node and is not reported to the listener as forwarded.
+	 */
+	private void forwardQueued(Id target, boolean withOwnShare)
+	{
+		int stride = components + 1;
+		int forwarded = withOwnShare ? queuedCount - 1 : queuedCount;
+
+		for (int i = 0; i < forwarded; i++)
+		{
+			listener.forwarded(this, target, queued[stride * i], queued[stride * i + components]);
+		}
+
+		if (queuedCount == 1 && components == 1)
+		{
+			endpoint.route(target, new ValueWeightMessage(endpoint.getId(), target, queued[0], queued[1], false, queuedEpoch), null);
+		}
+		else if (queuedCount == 1)
+		{
+			endpoint.route(target, new VectorValueWeightMessage(endpoint.getId(), target, Arrays.copyOf(queued, components), queued[components],
+					false, queuedEpoch), null);
+		}
+		else
+		{
+			endpoint.route(target, new BatchedValueWeightMessage(endpoint.getId(), target, components, Arrays.copyOf(queued, stride * queuedCount),
+					queuedCount, queuedEpoch), null);
+		}
+
+		metrics.routed();
+
+		queuedCount = 0;
+	}
+
+	/**
+	 * Counts a hop of the given message, if it carries shares of this
+	 * application.
+	 */
+	private void countHop(RouteMessage routeMessage)
+	{
+		Message message;
+
+		try
+		{
+			message = routeMessage.getMessage(endpoint.getDeserializer());
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+
+		if (message instanceof ValueWeightMessage)
+		{
+			((ValueWeightMessage) message).hop();
+		}
+		else if (message instanceof VectorValueWeightMessage)
+		{
+			((VectorValueWeightMessage) message).hop();
+		}
+		else if (message instanceof BatchedValueWeightMessage)
+		{
+			((BatchedValueWeightMessage) message).hop();
+		}
+	}
+}
+
+class TimerMessage implements Message
+{
+	@Override
+	public int getPriority()
+	{
+		return Message.DEFAULT_PRIORITY;
+	}
+
+	@Override
 	public String toString()
 	{
 		return this.getClass().getSimpleName();
 	}
 }
 
+class PushSumDeserializer implements MessageDeserializer
+{
+	private final Endpoint endpoint;
+
+	public PushSumDeserializer(Endpoint endpoint)
+	{
+		this.endpoint = endpoint;
+	}
+
+	@Override
+	public Message deserialize(InputBuffer buf, short type, int priority, NodeHandle sender) throws IOException
+	{
+		switch (type)
+		{
+			case ValueWeightMessage.TYPE:
+				return ValueWeightMessage.build(buf, endpoint);
+			case BatchedValueWeightMessage.TYPE:
+				return BatchedValueWeightMessage.build(buf, endpoint);
+			case VectorValueWeightMessage.TYPE:
+				return VectorValueWeightMessage.build(buf, endpoint);
+			default:
+				throw new IOException("Unknown message type " + type + ".");
+		}
+	}
+}
+
 class ResetNotification implements ScribeContent
 {
 	@Override
@@ -0,0 +1,507 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import rice.environment.Environment;
+import rice.selector.TimerTask;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Exposes the state and the metrics of a {@link PastryPushSum} node to other
+ * threads, as a JMX MBean and as plain text over HTTP on the loopback
+ * interface.
+ * <p>
+ * The state of a node may only be read on the selector thread. The monitor
+ * therefore copies it periodically into an immutable snapshot on the selector
+ * thread and publishes the snapshot through a volatile field. The getters and
+ * the HTTP server read the latest snapshot and never wait for the node.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class PeerMonitor implements PeerMonitorMBean
+{
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final PastryPushSum app;
+	private final Environment environment;
+	private volatile Snapshot snapshot;
+
+	private TimerTask timerTask;
+	private ObjectName objectName;
+	private HttpServer httpServer;
+
+	/**
+	 * Creates a monitor for the given node. No snapshot is taken until the
+	 * monitor is started.
+	 * 
+	 * @param app
+	 *            The node to monitor.
+	 * @param environment
+	 *            The environment of the node, whose selector thread takes the
+	 *            snapshots.
+	 */
+	public PeerMonitor(PastryPushSum app, Environment environment)
+	{
+		this.app = app;
+		this.environment = environment;
+		this.snapshot = new Snapshot();
+	}
+
+	/**
+	 * Starts taking a snapshot of the node every {@code period} milliseconds,
+	 * beginning immediately.
+	 * 
+	 * @throws IllegalStateException
+	 *             If the monitor has already been started.
+	 */
+	public synchronized void start(long period)
+	{
+		if (timerTask != null)
+		{
+			throw new IllegalStateException("The monitor has already been started.");
+		}
+
+		timerTask = new TimerTask()
+		{
+			@Override
+			public void run()
+			{
+				snapshot = new Snapshot(app, environment.getTimeSource().currentTimeMillis(), snapshot);
+			}
+		};
+
+		environment.getSelectorManager().getTimer().schedule(timerTask, 0, period);
+	}
+
+	/**
+	 * Registers this monitor with the platform MBean server, under the name
+	 * {@code univie.cs.pps:type=PeerMonitor,name=<id of the node>}.
+	 * 
+	 * @throws JMException
+	 *             If the monitor could not be registered.
+	 * @throws IllegalStateException
+	 *             If the monitor has already been registered.
+	 */
+	public synchronized void registerMBean() throws JMException
+	{
+		if (objectName != null)
+		{
+			throw new IllegalStateException("The monitor has already been registered.");
+		}
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName("univie.cs.pps:type=" + PeerMonitor.class.getSimpleName() + ",name="
+				+ app.getId().toStringFull());
+
+		server.registerMBean(this, name);
+		objectName = name;
+	}
+
+	/**
+	 * Starts an HTTP server on the given port of the loopback interface, which
+	 * answers every request with the latest snapshot in the text format of
+	 * Prometheus, one {@code pps_<name> <value>} line per value.
+	 * 
+	 * @param port
+	 *            The port to bind to, or zero for an ephemeral port.
+	 * @return The port the server is bound to.
+	 * @throws IOException
+	 *             If the server could not be bound.
+	 * @throws IllegalStateException
+	 *             If the HTTP server has already been started.
+	 */
+	public synchronized int startHttpServer(int port) throws IOException
+	{
+		if (httpServer != null)
+		{
+			throw new IllegalStateException("The HTTP server has already been started.");
+		}
+
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getByName(null), port), 0);
+		server.createContext("/", new HttpHandler()
+		{
+			@Override
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				try
+				{
+					byte[] body = snapshot.toText().getBytes(UTF_8);
+
+					exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+
+					if ("HEAD".equals(exchange.getRequestMethod()))
+					{
+						exchange.sendResponseHeaders(200, -1);
+					}
+					else
+					{
+						exchange.sendResponseHeaders(200, body.length);
+
+						OutputStream out = exchange.getResponseBody();
+						out.write(body);
+						out.close();
+					}
+				}
+				finally
+				{
+					exchange.close();
+				}
+			}
+		});
+		// a single thread suffices to serve the snapshots
+		server.setExecutor(null);
+		server.start();
+
+		httpServer = server;
+
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Stops taking snapshots, unregisters the MBean and stops the HTTP server,
+	 * as far as they were started.
+	 */
+	public synchronized void close()
+	{
+		if (timerTask != null)
+		{
+			timerTask.cancel();
+		}
+
+		if (objectName != null)
+		{
+			try
+			{
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			}
+			catch (JMException e)
+			{
+				e.printStackTrace();
+			}
+
+			objectName = null;
+		}
+
+		if (httpServer != null)
+		{
+			httpServer.stop(0);
+			httpServer = null;
+		}
+	}
+
+	@Override
+	public long getTime()
+	{
+		return snapshot.time;
+	}
+
+	@Override
+	public int getStep()
+	{
+		return snapshot.step;
+	}
+
+	@Override
+	public boolean isActive()
+	{
+		return snapshot.active;
+	}
+
+	@Override
+	public double getEstimate()
+	{
+		return snapshot.estimate;
+	}
+
+	@Override
+	public double getTrueValue()
+	{
+		return snapshot.trueValue;
+	}
+
+	@Override
+	public double getValue()
+	{
+		return snapshot.value;
+	}
+
+	@Override
+	public double getWeight()
+	{
+		return snapshot.weight;
+	}
+
+	@Override
+	public double getEstimateChange()
+	{
+		return snapshot.estimateChange;
+	}
+
+	@Override
+	public long getCurrentStepSize()
+	{
+		return snapshot.currentStepSize;
+	}
+
+	@Override
+	public boolean isConverged()
+	{
+		return snapshot.converged;
+	}
+
+	@Override
+	public int getEpoch()
+	{
+		return snapshot.epoch;
+	}
+
+	@Override
+	public double getSizeEstimate()
+	{
+		return snapshot.sizeEstimate;
+	}
+
+	@Override
+	public double getSumEstimate()
+	{
+		return snapshot.sumEstimate;
+	}
+
+	@Override
+	public long getMessagesSent()
+	{
+		return snapshot.sent;
+	}
+
+	@Override
+	public long getMessagesReceived()
+	{
+		return snapshot.received;
+	}
+
+	@Override
+	public long getMessagesDropped()
+	{
+		return snapshot.dropped;
+	}
+
+	@Override
+	public long getMessagesForwarded()
+	{
+		return snapshot.forwarded;
+	}
+
+	@Override
+	public long getInactiveForwards()
+	{
+		return snapshot.inactiveForwards;
+	}
+
+	@Override
+	public long getResets()
+	{
+		return snapshot.resets;
+	}
+
+	@Override
+	public double getHopsPerMessage()
+	{
+		return snapshot.hopsPerMessage;
+	}
+
+	@Override
+	public double getMeanStepTime()
+	{
+		return snapshot.meanStepTime;
+	}
+
+	@Override
+	public double getMeanTimerDelay()
+	{
+		return snapshot.meanTimerDelay;
+	}
+
+	/**
+	 * The state of a node at one point in time. All fields are final, so that
+	 * a snapshot can be read by any thread once it has been published.
+	 */
+	private static final class Snapshot
+	{
+		private final long time;
+		private final int step;
+		private final boolean active;
+		private final double estimate;
+		private final double trueValue;
+		private final double value;
+		private final double weight;
+		private final double estimateChange;
+		private final long currentStepSize;
+		private final boolean converged;
+		private final int epoch;
+		private final double sizeEstimate;
+		private final double sumEstimate;
+		private final long sent;
+		private final long received;
+		private final long dropped;
+		private final long forwarded;
+		private final long inactiveForwards;
+		private final long resets;
+		private final double hopsPerMessage;
+		private final double meanStepTime;
+		private final double meanTimerDelay;
+
+		/**
+		 * Creates an empty snapshot, before the first one has been taken.
+		 */
+		private Snapshot()
+		{
+			time = -1;
+			step = 0;
+			active = false;
+			estimate = Double.NaN;
+			trueValue = Double.NaN;
+			value = Double.NaN;
+			weight = Double.NaN;
+			estimateChange = Double.NaN;
+			currentStepSize = 0;
+			converged = false;
+			epoch = 0;
+			sizeEstimate = Double.NaN;
+			sumEstimate = Double.NaN;
+			sent = 0;
+			received = 0;
+			dropped = 0;
+			forwarded = 0;
+			inactiveForwards = 0;
+			resets = 0;
+			hopsPerMessage = Double.NaN;
+			meanStepTime = Double.NaN;
+			meanTimerDelay = Double.NaN;
+		}
+
+		/**
+		 * Copies the state of the given node. Must be called on the selector
+		 * thread.
+		 */
+		private Snapshot(PastryPushSum app, long time, Snapshot previous)
+		{
+			NodeMetrics metrics = app.getMetrics();
+
+			this.time = time;
+			step = app.getStep();
+			active = app.isActive();
+			estimate = app.getEstimate();
+			trueValue = app.getTrueValue();
+			value = app.getValue();
+			weight = app.getWeight();
+			estimateChange = Math.abs(estimate - previous.estimate) / Math.abs(estimate);
+			currentStepSize = app.getCurrentStepSize();
+			converged = app.isConverged();
+			epoch = app.getEpoch();
+			sizeEstimate = app.isCounting() ? app.getSizeEstimate() : Double.NaN;
+			sumEstimate = app.isCounting() ? app.getSumEstimate() : Double.NaN;
+			sent = metrics.getSent();
+			received = metrics.getReceived();
+			dropped = metrics.getDropped();
+			forwarded = metrics.getForwarded();
+			inactiveForwards = metrics.getInactiveForwards();
+			resets = metrics.getResets();
+			hopsPerMessage = metrics.getHopsPerMessage();
+			meanStepTime = metrics.getStepTimes().getMean();
+			meanTimerDelay = metrics.getQueueDelays().getMean();
+		}
+
+		/**
+		 * Formats this snapshot in the text format of Prometheus.
+		 */
+		private String toText()
+		{
+			StringBuilder sb = new StringBuilder();
+
+			line(sb, "time", time);
+			line(sb, "step", step);
+			line(sb, "active", active ? 1 : 0);
+			line(sb, "estimate", estimate);
+			line(sb, "true_value", trueValue);
+			line(sb, "value", value);
+			line(sb, "weight", weight);
+			line(sb, "estimate_change", estimateChange);
+			line(sb, "step_size", currentStepSize);
+			line(sb, "converged", converged ? 1 : 0);
+			line(sb, "epoch", epoch);
+			line(sb, "size_estimate", sizeEstimate);
+			line(sb, "sum_estimate", sumEstimate);
+			line(sb, "messages_sent", sent);
+			line(sb, "messages_received", received);
+			line(sb, "messages_dropped", dropped);
+			line(sb, "messages_forwarded", forwarded);
+			line(sb, "inactive_forwards", inactiveForwards);
+			line(sb, "resets", resets);
+			line(sb, "hops_per_message", hopsPerMessage);
+			line(sb, "step_time_mean_ns", meanStepTime);
+			line(sb, "timer_delay_mean_ms", meanTimerDelay);
+
+			return sb.toString();
+		}
+
+		private static void line(StringBuilder sb, String name, long value)
+		{
+			sb.append("pps_").append(name).append(' ').append(value).append('\n');
+		}
+
+		private static void line(StringBuilder sb, String name, double value)
+		{
+			sb.append("pps_").append(name).append(' ');
+
+			if (Double.isNaN(value))
+			{
+				sb.append("NaN");
+			}
+			else if (Double.isInfinite(value))
+			{
+				sb.append(value > 0 ? "+Inf" : "-Inf");
+			}
+			else
+			{
+				sb.append(value);
+			}
+
+			sb.append('\n');
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps;
+
+/**
+ * The management interface of a {@link PeerMonitor}, with the state of one
+ * node as of the last snapshot.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public interface PeerMonitorMBean
+{
+	/**
+	 * Returns the time of the node at which the last snapshot was taken.
+	 */
+	long getTime();
+
+	int getStep();
+
+	boolean isActive();
+
+	double getEstimate();
+
+	double getTrueValue();
+
+	double getValue();
+
+	double getWeight();
+
+	/**
+	 * Returns the relative change of the estimate since the previous
+	 * snapshot.
+	 */
+	double getEstimateChange();
+
+	long getCurrentStepSize();
+
+	boolean isConverged();
+
+	int getEpoch();
+
+	/**
+	 * Returns the estimated number of nodes, or {@code NaN} if the node does
+	 * not count the nodes.
+	 */
+	double getSizeEstimate();
+
+	/**
+	 * Returns the estimated sum of the values, or {@code NaN} if the node does
+	 * not count the nodes.
+	 */
+	double getSumEstimate();
+
+	long getMessagesSent();
+
+	long getMessagesReceived();
+
+	long getMessagesDropped();
+
+	long getMessagesForwarded();
+
+	long getInactiveForwards();
+
+	long getResets();
+
+	double getHopsPerMessage();
+
+	/**
+	 * Returns the mean processing time of a step, in nanoseconds.
+	 */
+	double getMeanStepTime();
+
+	/**
+	 * Returns the mean delay of the timer of the node, in milliseconds.
+	 */
+	double getMeanTimerDelay();
+}
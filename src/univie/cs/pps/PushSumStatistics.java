@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps;
+
+import univie.cs.pps.utils.RunningStatistics;
+
+/**
+ * Aggregate statistics of the true values, values, weights and estimates of
+ * all active {@link PastryPushSum} nodes.
+ * <p>
+ * The {@link NodeRegistry} pushes the changes of the nodes with
+ * {@link #update(boolean, double, double, double, double, boolean, double, double, double, double)}
+ * whenever their state changes, so that reading the statistics does not
+ * require a pass over all nodes. When the statistics are not accurate any more
+ * (see {@link RunningStatistics#isAccurate()}), they have to be rebuilt with
+ * {@link #clear()} and {@link #add(double, double, double, double)}. The
+ * minimum and maximum are found separately, on demand, by the
+ * {@link RunningStatistics.ExtremesSource} of each statistic.
+ * <p>
+ * Instances of this class are not thread-safe. They must be used from the
+ * selector thread.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class PushSumStatistics
+{
+	private final RunningStatistics trueValues = new RunningStatistics();
+	private final RunningStatistics values = new RunningStatistics();
+	private final RunningStatistics weights = new RunningStatistics();
+	private final RunningStatistics estimates = new RunningStatistics();
+
+	/**
+	 * Replaces the old state of a node with its new state.
+	 * Inactive nodes are not included in the statistics.
+	 */
+	public void update(boolean wasActive, double oldTrueValue, double oldValue, double oldWeight, double oldEstimate, boolean active,
+			double trueValue, double value, double weight, double estimate)
+	{
+		if (wasActive && active)
+		{
+			trueValues.replace(oldTrueValue, trueValue);
+			values.replace(oldValue, value);
+			weights.replace(oldWeight, weight);
+			estimates.replace(oldEstimate, estimate);
+		}
+		else if (wasActive)
+		{
+			trueValues.remove(oldTrueValue);
+			values.remove(oldValue);
+			weights.remove(oldWeight);
+			estimates.remove(oldEstimate);
+		}
+		else if (active)
+		{
+			trueValues.add(trueValue);
+			values.add(value);
+			weights.add(weight);
+			estimates.add(estimate);
+		}
+	}
+
+	/**
+	 * Returns {@code true} if any of the statistics must be rebuilt, because
+	 * the rounding errors might be significant.
+	 */
+	public boolean needsRebuild()
+	{
+		return !trueValues.isAccurate() || !values.isAccurate() || !weights.isAccurate() || !estimates.isAccurate();
+	}
+
+	/**
+	 * Removes all nodes, keeping the current means as the shifts for
+	 * rebuilding the statistics.
+	 */
+	public void clear()
+	{
+		trueValues.clear(shift(trueValues));
+		values.clear(shift(values));
+		weights.clear(shift(weights));
+		estimates.clear(shift(estimates));
+	}
+
+	/**
+	 * Adds the state of an active node.
+	 */
+	public void add(double trueValue, double value, double weight, double estimate)
+	{
+		trueValues.add(trueValue);
+		values.add(value);
+		weights.add(weight);
+		estimates.add(estimate);
+	}
+
+	/**
+	 * Adds the statistics of another instance, for example one collected for
+	 * a different partition of the nodes.
+	 */
+	public void add(PushSumStatistics other)
+	{
+		trueValues.add(other.trueValues);
+		values.add(other.values);
+		weights.add(other.weights);
+		estimates.add(other.estimates);
+	}
+
+	/**
+	 * Returns the statistics of the true values of all active nodes.
+	 */
+	public RunningStatistics getTrueValues()
+	{
+		return trueValues;
+	}
+
+	/**
+	 * Returns the statistics of the values of all active nodes.
+	 */
+	public RunningStatistics getValues()
+	{
+		return values;
+	}
+
+	/**
+	 * Returns the statistics of the weights of all active nodes.
+	 */
+	public RunningStatistics getWeights()
+	{
+		return weights;
+	}
+
+	/**
+	 * Returns the statistics of the estimates of all active nodes.
+	 */
+	public RunningStatistics getEstimates()
+	{
+		return estimates;
+	}
+
+	private static double shift(RunningStatistics statistics)
+	{
+		return statistics.getN() > 0 ? statistics.getMean() : 0.;
+	}
+}
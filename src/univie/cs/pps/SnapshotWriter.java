@@ -0,0 +1,412 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+
+import rice.p2p.commonapi.Id;
+
+/**
+ * Writes the full state of all nodes of a {@link NodeRegistry} to a GZIP
+ * compressed file, for diagnosing single nodes, for example nodes that
+ * converge slowly.
+ * <p>
+ * A snapshot is copied into one of two buffers on the calling thread, while
+ * a background thread compresses and writes the other buffer. Taking a
+ * snapshot therefore never waits for the disk. If the background thread is
+ * still busy with both buffers, the snapshot is dropped and counted by
+ * {@link #getDropped()}.
+ * <p>
+ * The uncompressed file starts with an int magic number and an int version,
+ * followed by the snapshots:
+ * 
+ * <pre>
+ * long   time
+ * int    count
+ * count times:
+ *   int    node (the slot in the registry)
+ *   byte   active (1 or 0)
+ *   byte   length of the id
+ *   byte[] id, as written by Id.toByteArray(), or empty if the node has no id
+ *   double true value
+ *   double value
+ *   double weight
+ *   double estimate
+ * </pre>
+ * 
+ * Files can be printed with {@link #print(File, PrintStream)} or the
+ * {@link #main(String[])} method of this class.
+ * <p>
+ * {@link #write(long, NodeRegistry)} must always be called from the same
+ * thread, usually the selector thread.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class SnapshotWriter implements Closeable
+{
+	private static final int MAGIC = 0x5050534E;
+	private static final int VERSION = 0;
+
+	private static final int INITIAL_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Marks the end of the snapshots for the background thread.
+	 */
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	/**
+	 * Prints the snapshots of a file written by this class to the standard
+	 * output.
+	 * 
+	 * @param args
+	 *            the name of the file.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length != 1)
+		{
+			System.err.println("Usage: " + SnapshotWriter.class.getCanonicalName() + " <snapshot file>");
+			return;
+		}
+
+		print(new File(args[0]), System.out);
+	}
+
+	/**
+	 * Prints the snapshots of a file written by this class, one line per node
+	 * and snapshot. Snapshots are separated by two empty lines, so that each
+	 * snapshot is a separate data set for Gnuplot.
+	 * 
+	 * @param file
+	 *            the file to read.
+	 * @param out
+	 *            the stream to print to.
+	 * @throws IOException
+	 *             If the file cannot be read or is not a snapshot file.
+	 */
+	public static void print(File file, PrintStream out) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+
+		try
+		{
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+			{
+				throw new IOException("Not a snapshot file: " + file);
+			}
+
+			out.format("#%15s %8s %42s %6s %16s %16s %16s %16s%n", "time", "node", "id", "active", "true", "value", "weight", "estimate");
+
+			byte[] id = new byte[255];
+			StringBuilder hex = new StringBuilder();
+
+			while (true)
+			{
+				long time;
+
+				try
+				{
+					time = in.readLong();
+				}
+				catch (EOFException e)
+				{
+					break;
+				}
+
+				int count = in.readInt();
+
+				for (int i = 0; i < count; i++)
+				{
+					int slot = in.readInt();
+					boolean active = in.readByte() != 0;
+					int length = in.readUnsignedByte();
+					in.readFully(id, 0, length);
+
+					// most significant byte first, like Id.toString()
+					hex.setLength(0);
+					hex.append("0x");
+					for (int j = length - 1; j >= 0; j--)
+					{
+						hex.append(String.format("%02X", id[j]));
+					}
+
+					out.format("%16d %8d %42s %6s %16e %16e %16e %16e%n", time, slot, length > 0 ? hex : "-", active ? "1" : "0",
+							in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+				}
+
+				out.format("%n%n");
+			}
+		}
+		finally
+		{
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<ByteBuffer>(2);
+	private final BlockingQueue<ByteBuffer> full = new ArrayBlockingQueue<ByteBuffer>(3);
+	private final Thread thread;
+	private final byte[] idBytes = new byte[255];
+
+	private volatile IOException exception;
+	private volatile long written = 0;
+	private volatile boolean closed;
+	private long dropped = 0;
+
+	/**
+	 * Creates the file, replacing an existing file, and starts the background
+	 * thread.
+	 * 
+	 * @param file
+	 *            the file to write to.
+	 * @throws IOException
+	 *             If the file cannot be created.
+	 */
+	public SnapshotWriter(File file) throws IOException
+	{
+		if (file.getParentFile() != null && !file.getParentFile().exists())
+		{
+			file.getParentFile().mkdirs();
+		}
+
+		final OutputStream out = new GZIPOutputStream(new FileOutputStream(file), INITIAL_BUFFER_SIZE);
+
+		free.add(ByteBuffer.allocate(INITIAL_BUFFER_SIZE));
+		free.add(ByteBuffer.allocate(INITIAL_BUFFER_SIZE));
+
+		thread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				writeSnapshots(out);
+			}
+		}, getClass().getSimpleName());
+
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Copies the state of all nodes of the registry, including inactive ones,
+	 * to be written by the background thread. Does nothing after
+	 * {@link #close()}.
+	 * 
+	 * @param time
+	 *            the time of the snapshot.
+	 * @param registry
+	 *            the nodes.
+	 */
+	public void write(long time, NodeRegistry registry)
+	{
+		if (closed)
+		{
+			return;
+		}
+
+		ByteBuffer buffer = free.poll();
+
+		if (buffer == null)
+		{
+			dropped++;
+			return;
+		}
+
+		buffer = ensureCapacity(buffer, 12);
+		buffer.putLong(time);
+		buffer.putInt(registry.size());
+
+		for (int i = 0; i < registry.size(); i++)
+		{
+			PastryPushSum app = registry.getApp(i);
+			Id id = (app != null) ? app.getId() : null;
+			int length = (id != null && id.getByteArrayLength() <= idBytes.length) ? id.getByteArrayLength() : 0;
+
+			if (length > 0)
+			{
+				id.toByteArray(idBytes, 0);
+			}
+
+			buffer = ensureCapacity(buffer, 38 + length);
+			buffer.putInt(i);
+			buffer.put((byte) (registry.isActive(i) ? 1 : 0));
+			buffer.put((byte) length);
+			buffer.put(idBytes, 0, length);
+			buffer.putDouble(registry.getTrueValue(i));
+			buffer.putDouble(registry.getValue(i));
+			buffer.putDouble(registry.getWeight(i));
+			buffer.putDouble(registry.getEstimate(i));
+		}
+
+		buffer.flip();
+		full.add(buffer);
+	}
+
+	/**
+	 * Returns the number of snapshots written to the file so far.
+	 */
+	public long getWritten()
+	{
+		return written;
+	}
+
+	/**
+	 * Returns the number of snapshots dropped, because the background thread
+	 * was still writing the previous snapshots.
+	 */
+	public long getDropped()
+	{
+		return dropped;
+	}
+
+	/**
+	 * Waits until the background thread has written all snapshots, and closes
+	 * the file.
+	 * 
+	 * @throws IOException
+	 *             If writing any of the snapshots failed.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (!closed)
+		{
+			closed = true;
+
+			// there is always room for END, since there are only two buffers
+			full.add(END);
+		}
+
+		try
+		{
+			thread.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while writing snapshots", e);
+		}
+
+		if (exception != null)
+		{
+			throw exception;
+		}
+	}
+
+	/**
+	 * Run by the background thread until {@link #END} is taken from the queue.
+	 * After an exception, buffers are discarded instead of written.
+	 */
+	private void writeSnapshots(OutputStream out)
+	{
+		try
+		{
+			ByteBuffer header = ByteBuffer.allocate(8);
+			header.putInt(MAGIC).putInt(VERSION);
+			out.write(header.array());
+
+			while (true)
+			{
+				ByteBuffer buffer = full.take();
+
+				if (buffer == END)
+				{
+					break;
+				}
+
+				if (exception == null)
+				{
+					try
+					{
+						out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+						written++;
+					}
+					catch (IOException e)
+					{
+						exception = e;
+					}
+				}
+
+				buffer.clear();
+				free.add(buffer);
+			}
+		}
+		catch (IOException e)
+		{
+			exception = e;
+		}
+		catch (InterruptedException e)
+		{
+			exception = new IOException("Interrupted while writing snapshots", e);
+		}
+		finally
+		{
+			try
+			{
+				out.close();
+			}
+			catch (IOException e)
+			{
+				if (exception == null)
+				{
+					exception = e;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the buffer, or a copy of it with twice the capacity, if there
+	 * are fewer than {@code size} bytes remaining.
+	 */
+	private static ByteBuffer ensureCapacity(ByteBuffer buffer, int size)
+	{
+		if (buffer.remaining() >= size)
+		{
+			return buffer;
+		}
+
+		ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * buffer.capacity(), buffer.position() + size));
+		buffer.flip();
+		larger.put(buffer);
+
+		return larger;
+	}
+}
@@ -22,37 +22,151 @@
 
 package univie.cs.pps;
 
-import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
-import org.apache.commons.lang3.builder.StandardToStringStyle;
+import java.io.IOException;
 
+import rice.p2p.commonapi.Endpoint;
 import rice.p2p.commonapi.Id;
 import rice.p2p.commonapi.Message;
+import rice.p2p.commonapi.rawserialization.InputBuffer;
+import rice.p2p.commonapi.rawserialization.OutputBuffer;
+import rice.p2p.commonapi.rawserialization.RawMessage;
 
 /**
  * A message carrying the value and weight for the {@link PastryPushSum}
  * application.
+ * <p>
+ * The message implements {@link RawMessage}, so that it is written to the
+ * socket transport in a fixed binary layout instead of using Java
+ * serialization:
+ * 
+ * <pre>
+ * byte   version
+ * byte   flags (since version 1)
+ * int    epoch (since version 2)
+ * int    hops (since version 3)
+ * short  sender id type,   sender id
+ * short  receiver id type, receiver id
+ * double value
+ * double weight
+ * </pre>
+ * 
+ * Messages are read back by {@link #build(InputBuffer, Endpoint)}, called from
+ * the deserializer registered in {@link PastryPushSum}. Messages written in
+ * version 0, without flags, or version 1, without the epoch, are still accepted
+ * as messages of epoch 0. Messages written before version 3 start with no
+ * hops.
  * 
  * @author Dario Seidl
  * 
  */
-public class ValueWeightMessage implements Message
+public class ValueWeightMessage implements RawMessage
 {
-	private static final StandardToStringStyle toStringStyle = new StandardToStringStyle();
-	{
-		toStringStyle.setUseShortClassName(true);
-	}
+	/**
+	 * The type identifier of this message, unique within the
+	 * {@link PastryPushSum} application.
+	 */
+	public static final short TYPE = 1;
+
+	private static final byte VERSION = 3;
+
+	private static final byte REPLY_REQUESTED = 1;
 
 	private final Id sender;
 	private final Id receiver;
 	private final double value;
 	private final double weight;
+	private final boolean replyRequested;
+	private final int epoch;
+
+	private int hops;
 
 	public ValueWeightMessage(Id sender, Id receiver, double value, double weight)
+	{
+		this(sender, receiver, value, weight, false);
+	}
+
+	/**
+	 * Creates a new message.
+	 * 
+	 * @param sender
+	 *            the id of the sending node.
+	 * @param receiver
+	 *            the id the message is routed to.
+	 * @param value
+	 *            the value.
+	 * @param weight
+	 *            the weight.
+	 * @param replyRequested
+	 *            if {@code true}, the receiving node is asked to send half of
+	 *            its own value and weight back to the sender.
+	 */
+	public ValueWeightMessage(Id sender, Id receiver, double value, double weight, boolean replyRequested)
+	{
+		this(sender, receiver, value, weight, replyRequested, 0);
+	}
+
+	/**
+	 * Creates a new message.
+	 * 
+	 * @param sender
+	 *            the id of the sending node.
+	 * @param receiver
+	 *            the id the message is routed to.
+	 * @param value
+	 *            the value.
+	 * @param weight
+	 *            the weight.
+	 * @param replyRequested
+	 *            if {@code true}, the receiving node is asked to send half of
+	 *            its own value and weight of the same epoch back to the
+	 *            sender.
+	 * @param epoch
+	 *            the epoch of the push-sum instance the value and weight
+	 *            belong to.
+	 */
+	public ValueWeightMessage(Id sender, Id receiver, double value, double weight, boolean replyRequested, int epoch)
 	{
 		this.sender = sender;
 		this.receiver = receiver;
 		this.value = value;
 		this.weight = weight;
+		this.replyRequested = replyRequested;
+		this.epoch = epoch;
+	}
+
+	/**
+	 * Reads a message from the given buffer, in the format written by
+	 * {@link #serialize(OutputBuffer)}.
+	 * 
+	 * @param buf
+	 *            the buffer to read from.
+	 * @param endpoint
+	 *            the endpoint used to read the sender and receiver ids.
+	 * @throws IOException
+	 *             If the buffer cannot be read or the message was written in
+	 *             an unknown version.
+	 */
+	public static ValueWeightMessage build(InputBuffer buf, Endpoint endpoint) throws IOException
+	{
+		byte version = buf.readByte();
+
+		if (version < 0 || version > VERSION)
+		{
+			throw new IOException("Unknown version " + version + " of " + ValueWeightMessage.class.getSimpleName() + ".");
+		}
+
+		byte flags = (version > 0) ? buf.readByte() : 0;
+		int epoch = (version > 1) ? buf.readInt() : 0;
+		int hops = (version > 2) ? buf.readInt() : 0;
+		Id sender = endpoint.readId(buf, buf.readShort());
+		Id receiver = endpoint.readId(buf, buf.readShort());
+		double value = buf.readDouble();
+		double weight = buf.readDouble();
+
+		ValueWeightMessage message = new ValueWeightMessage(sender, receiver, value, weight, (flags & REPLY_REQUESTED) != 0, epoch);
+		message.hops = hops;
+
+		return message;
 	}
 
 	public Id getSender()
@@ -75,15 +189,83 @@ public class ValueWeightMessage implements Message
 		return weight;
 	}
 
+	/**
+	 * Returns whether the receiving node is asked to reply with half of its
+	 * own state, as in the push-pull exchange.
+	 */
+	public boolean isReplyRequested()
+	{
+		return replyRequested;
+	}
+
+	/**
+	 * Returns the epoch of the push-sum instance the value and weight belong
+	 * to.
+	 */
+	public int getEpoch()
+	{
+		return epoch;
+	}
+
+	/**
+	 * Returns the number of hops this message has taken so far, counted by
+	 * {@link PastryPushSum#forward(rice.p2p.commonapi.RouteMessage)} at each
+	 * node it passed through.
+	 */
+	public int getHops()
+	{
+		return hops;
+	}
+
+	/**
+	 * Counts one more hop of this message.
+	 */
+	void hop()
+	{
+		hops++;
+	}
+
+	/**
+	 * Restarts counting the hops, before the message is routed again.
+	 */
+	void clearHops()
+	{
+		hops = 0;
+	}
+
 	@Override
 	public int getPriority()
 	{
 		return Message.LOW_PRIORITY;
 	}
 
+	@Override
+	public short getType()
+	{
+		return TYPE;
+	}
+
+	@Override
+	public void serialize(OutputBuffer buf) throws IOException
+	{
+		buf.writeByte(VERSION);
+		buf.writeByte(replyRequested ? REPLY_REQUESTED : 0);
+		buf.writeInt(epoch);
+		buf.writeInt(hops);
+
+		buf.writeShort(sender.getType());
+		sender.serialize(buf);
+		buf.writeShort(receiver.getType());
+		receiver.serialize(buf);
+
+		buf.writeDouble(value);
+		buf.writeDouble(weight);
+	}
+
 	@Override
 	public String toString()
 	{
-		return ReflectionToStringBuilder.toString(this, ValueWeightMessage.toStringStyle);
+		return getClass().getSimpleName() + "[sender=" + sender + ",receiver=" + receiver + ",value=" + value + ",weight=" + weight
+				+ ",replyRequested=" + replyRequested + ",epoch=" + epoch + ",hops=" + hops + "]";
 	}
 }
@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import rice.p2p.commonapi.Endpoint;
+import rice.p2p.commonapi.Id;
+import rice.p2p.commonapi.Message;
+import rice.p2p.commonapi.rawserialization.InputBuffer;
+import rice.p2p.commonapi.rawserialization.OutputBuffer;
+import rice.p2p.commonapi.rawserialization.RawMessage;
+
+/**
+ * A message carrying a vector of values and their common weight for the
+ * {@link PastryPushSum} application, used by nodes that estimate more than one
+ * mean. Nodes with a single value use {@link ValueWeightMessage} instead.
+ * <p>
+ * The message is written to the socket transport in a fixed binary layout:
+ * 
+ * <pre>
+ * byte   version
+ * byte   flags (since version 1)
+ * int    epoch (since version 2)
+ * int    hops (since version 3)
+ * short  sender id type,   sender id
+ * short  receiver id type, receiver id
+ * int    dimension
+ * double value             (dimension times)
+ * double weight
+ * </pre>
+ * 
+ * Messages are read back by {@link #build(InputBuffer, Endpoint)}, called from
+ * the deserializer registered in {@link PastryPushSum}. Messages written in
+ * version 0, without flags, or version 1, without the epoch, are still accepted
+ * as messages of epoch 0. Messages written before version 3 start with no
+ * hops.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class VectorValueWeightMessage implements RawMessage
+{
+	/**
+	 * The type identifier of this message, unique within the
+	 * {@link PastryPushSum} application.
+	 */
+	public static final short TYPE = 3;
+
+	private static final byte VERSION = 3;
+
+	private static final byte REPLY_REQUESTED = 1;
+
+	private final Id sender;
+	private final Id receiver;
+	private final double[] values;
+	private final double weight;
+	private final boolean replyRequested;
+	private final int epoch;
+
+	private int hops;
+
+	/**
+	 * Creates a new message.
+	 * 
+	 * @param sender
+	 *            the id of the sending node.
+	 * @param receiver
+	 *            the id the message is routed to.
+	 * @param values
+	 *            the values. The array is not copied and must not be changed
+	 *            afterwards.
+	 * @param weight
+	 *            the weight.
+	 * @param replyRequested
+	 *            if {@code true}, the receiving node is asked to send half of
+	 *            its own values and weight back to the sender.
+	 */
+	public VectorValueWeightMessage(Id sender, Id receiver, double[] values, double weight, boolean replyRequested)
+	{
+		this(sender, receiver, values, weight, replyRequested, 0);
+	}
+
+	/**
+	 * Creates a new message.
+	 * 
+	 * @param sender
+	 *            the id of the sending node.
+	 * @param receiver
+	 *            the id the message is routed to.
+	 * @param values
+	 *            the values. The array is not copied and must not be changed
+	 *            afterwards.
+	 * @param weight
+	 *            the weight.
+	 * @param replyRequested
+	 *            if {@code true}, the receiving node is asked to send half of
+	 *            its own values and weight of the same epoch back to the
+	 *            sender.
+	 * @param epoch
+	 *            the epoch of the push-sum instance the values and weight
+	 *            belong to.
+	 */
+	public VectorValueWeightMessage(Id sender, Id receiver, double[] values, double weight, boolean replyRequested, int epoch)
+	{
+		this.sender = sender;
+		this.receiver = receiver;
+		this.values = values;
+		this.weight = weight;
+		this.replyRequested = replyRequested;
+		this.epoch = epoch;
+	}
+
+	/**
+	 * Reads a message from the given buffer, in the format written by
+	 * {@link #serialize(OutputBuffer)}.
+	 * 
+	 * @param buf
+	 *            the buffer to read from.
+	 * @param endpoint
+	 *            the endpoint used to read the sender and receiver ids.
+	 * @throws IOException
+	 *             If the buffer cannot be read or the message was written in
+	 *             an unknown version.
+	 */
+	public static VectorValueWeightMessage build(InputBuffer buf, Endpoint endpoint) throws IOException
+	{
+		byte version = buf.readByte();
+
+		if (version < 0 || version > VERSION)
+		{
+			throw new IOException("Unknown version " + version + " of " + VectorValueWeightMessage.class.getSimpleName() + ".");
+		}
+
+		byte flags = (version > 0) ? buf.readByte() : 0;
+		int epoch = (version > 1) ? buf.readInt() : 0;
+		int hops = (version > 2) ? buf.readInt() : 0;
+		Id sender = endpoint.readId(buf, buf.readShort());
+		Id receiver = endpoint.readId(buf, buf.readShort());
+		int dimension = buf.readInt();
+		int remaining = buf.bytesRemaining();
+
+		if (dimension < 1 || (remaining != InputBuffer.UNKNOWN && dimension > remaining / 8))
+		{
+			throw new IOException("Invalid dimension " + dimension + " in " + VectorValueWeightMessage.class.getSimpleName() + ".");
+		}
+
+		double[] values = new double[dimension];
+
+		for (int i = 0; i < dimension; i++)
+		{
+			values[i] = buf.readDouble();
+		}
+
+		double weight = buf.readDouble();
+
+		VectorValueWeightMessage message = new VectorValueWeightMessage(sender, receiver, values, weight, (flags & REPLY_REQUESTED) != 0,
+				epoch);
+		message.hops = hops;
+
+		return message;
+	}
+
+	public Id getSender()
+	{
+		return sender;
+	}
+
+	public Id getReceiver()
+	{
+		return receiver;
+	}
+
+	/**
+	 * Returns the number of values in this message.
+	 */
+	public int getDimension()
+	{
+		return values.length;
+	}
+
+	/**
+	 * Returns the value of the given component.
+	 */
+	public double getValue(int component)
+	{
+		return values[component];
+	}
+
+	public double getWeight()
+	{
+		return weight;
+	}
+
+	/**
+	 * Returns whether the receiving node is asked to reply with half of its
+	 * own state, as in the push-pull exchange.
+	 */
+	public boolean isReplyRequested()
+	{
+		return replyRequested;
+	}
+
+	/**
+	 * Returns the epoch of the push-sum instance the values and weight belong
+	 * to.
+	 */
+	public int getEpoch()
+	{
+		return epoch;
+	}
+
+	/**
+	 * Returns the number of hops this message has taken so far, counted by
+	 * {@link PastryPushSum#forward(rice.p2p.commonapi.RouteMessage)} at each
+	 * node it passed through.
+	 */
+	public int getHops()
+	{
+		return hops;
+	}
+
+	/**
+	 * Counts one more hop of this message.
+	 */
+	void hop()
+	{
+		hops++;
+	}
+
+	/**
+	 * Restarts counting the hops, before the message is routed again.
+	 */
+	void clearHops()
+	{
+		hops = 0;
+	}
+
+	@Override
+	public int getPriority()
+	{
+		return Message.LOW_PRIORITY;
+	}
+
+	@Override
+	public short getType()
+	{
+		return TYPE;
+	}
+
+	@Override
+	public void serialize(OutputBuffer buf) throws IOException
+	{
+		buf.writeByte(VERSION);
+		buf.writeByte(replyRequested ? REPLY_REQUESTED : 0);
+		buf.writeInt(epoch);
+		buf.writeInt(hops);
+
+		buf.writeShort(sender.getType());
+		sender.serialize(buf);
+		buf.writeShort(receiver.getType());
+		receiver.serialize(buf);
+
+		buf.writeInt(values.length);
+
+		for (int i = 0; i < values.length; i++)
+		{
+			buf.writeDouble(values[i]);
+		}
+
+		buf.writeDouble(weight);
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getSimpleName() + "[sender=" + sender + ",receiver=" + receiver + ",values=" + Arrays.toString(values) + ",weight="
+				+ weight + ",replyRequested=" + replyRequested + ",epoch=" + epoch + ",hops=" + hops + "]";
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps.events;
+
+import java.io.PrintStream;
+
+import rice.environment.time.TimeSource;
+import rice.p2p.commonapi.Id;
+import univie.cs.pps.PastryPushSum;
+
+/**
+ * A {@link PushSumEventListener} that prints a line for each event.
+ * <p>
+ * This is used for the {@code --trace} option. Formatting the lines is slow, so
+ * for large simulations use the {@link RingBufferEventRecorder} instead.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class LoggingEventListener implements PushSumEventListener
+{
+	private final TimeSource timeSource;
+	private final PrintStream out;
+
+	/**
+	 * @param timeSource
+	 *            the time source used to timestamp the lines.
+	 * @param out
+	 *            the stream to print to.
+	 */
+	public LoggingEventListener(TimeSource timeSource, PrintStream out)
+	{
+		this.timeSource = timeSource;
+		this.out = out;
+	}
+
+	@Override
+	public void step(PastryPushSum app, int step, double value, double weight)
+	{
+		out.format("# [%d] %s: step %d (%e, %e)%n", timeSource.currentTimeMillis(), app, step, value, weight);
+	}
+
+	@Override
+	public void sent(PastryPushSum app, Id target, double value, double weight)
+	{
+		out.format("# [%d] %s: sent to %s (%e, %e)%n", timeSource.currentTimeMillis(), app, target, value, weight);
+	}
+
+	@Override
+	public void received(PastryPushSum app, double value, double weight)
+	{
+		out.format("# [%d] %s: received (%e, %e)%n", timeSource.currentTimeMillis(), app, value, weight);
+	}
+
+	@Override
+	public void forwarded(PastryPushSum app, Id target, double value, double weight)
+	{
+		out.format("# [%d] %s: forwarded to %s (%e, %e)%n", timeSource.currentTimeMillis(), app, target, value, weight);
+	}
+
+	@Override
+	public void reset(PastryPushSum app, double value, double weight)
+	{
+		out.format("# [%d] %s: reset (%e, %e)%n", timeSource.currentTimeMillis(), app, value, weight);
+	}
+
+	@Override
+	public void hop(PastryPushSum app, Id target)
+	{
+		out.format("# [%d] %s: forward to %s%n", timeSource.currentTimeMillis(), app, target);
+	}
+
+	@Override
+	public void dropped(PastryPushSum app, int epoch, double value, double weight)
+	{
+		out.format("# [%d] %s: dropped share of epoch %d (%e, %e)%n", timeSource.currentTimeMillis(), app, epoch, value, weight);
+	}
+
+	@Override
+	public void epochStarted(PastryPushSum app, int epoch, boolean skipped)
+	{
+		out.format("# [%d] %s: %s epoch %d%n", timeSource.currentTimeMillis(), app, skipped ? "skip to" : "begin", epoch);
+	}
+
+	@Override
+	public void epochSwitched(PastryPushSum app, int epoch)
+	{
+		out.format("# [%d] %s: switch to epoch %d%n", timeSource.currentTimeMillis(), app, epoch);
+	}
+
+	@Override
+	public void stopped(PastryPushSum app)
+	{
+		out.format("# [%d] %s: stop%n", timeSource.currentTimeMillis(), app);
+	}
+
+	@Override
+	public void resumed(PastryPushSum app)
+	{
+		out.format("# [%d] %s: resume%n", timeSource.currentTimeMillis(), app);
+	}
+
+	@Override
+	public void handedOff(PastryPushSum app, int neighbors)
+	{
+		if (neighbors > 0)
+		{
+			out.format("# [%d] %s: hand off to %d neighbors%n", timeSource.currentTimeMillis(), app, neighbors);
+		}
+		else
+		{
+			out.format("# [%d] %s: no live neighbors to hand off to%n", timeSource.currentTimeMillis(), app);
+		}
+	}
+
+	@Override
+	public void neighborChanged(PastryPushSum app, Id neighbor, boolean joined)
+	{
+		out.format("# [%d] %s: update %s %s%n", timeSource.currentTimeMillis(), app, neighbor, joined ? "joined" : "left");
+	}
+
+	@Override
+	public void resetNotified(PastryPushSum app)
+	{
+		out.format("# [%d] %s: reset notification%n", timeSource.currentTimeMillis(), app);
+	}
+
+	@Override
+	public void childChanged(PastryPushSum app, Id child, boolean added)
+	{
+		out.format("# [%d] %s: child %s %s%n", timeSource.currentTimeMillis(), app, child, added ? "added" : "removed");
+	}
+
+	@Override
+	public void subscribed(PastryPushSum app, boolean success)
+	{
+		out.format("# [%d] %s: subscribe %s%n", timeSource.currentTimeMillis(), app, success ? "success" : "failed");
+	}
+}
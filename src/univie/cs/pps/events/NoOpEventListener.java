@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps.events;
+
+import rice.p2p.commonapi.Id;
+import univie.cs.pps.PastryPushSum;
+
+/**
+ * A {@link PushSumEventListener} that ignores all events.
+ * <p>
+ * This is the default listener of {@link PastryPushSum}. As long as no other
+ * listener is used, the calls are monomorphic and the JIT compiler inlines
+ * them to nothing.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public final class NoOpEventListener implements PushSumEventListener
+{
+	/**
+	 * The shared instance.
+	 */
+	public static final NoOpEventListener INSTANCE = new NoOpEventListener();
+
+	private NoOpEventListener()
+	{
+	}
+
+	@Override
+	public void step(PastryPushSum app, int step, double value, double weight)
+	{
+	}
+
+	@Override
+	public void sent(PastryPushSum app, Id target, double value, double weight)
+	{
+	}
+
+	@Override
+	public void received(PastryPushSum app, double value, double weight)
+	{
+	}
+
+	@Override
+	public void forwarded(PastryPushSum app, Id target, double value, double weight)
+	{
+	}
+
+	@Override
+	public void reset(PastryPushSum app, double value, double weight)
+	{
+	}
+
+	@Override
+	public void hop(PastryPushSum app, Id target)
+	{
+	}
+
+	@Override
+	public void dropped(PastryPushSum app, int epoch, double value, double weight)
+	{
+	}
+
+	@Override
+	public void epochStarted(PastryPushSum app, int epoch, boolean skipped)
+	{
+	}
+
+	@Override
+	public void epochSwitched(PastryPushSum app, int epoch)
+	{
+	}
+
+	@Override
+	public void stopped(PastryPushSum app)
+	{
+	}
+
+	@Override
+	public void resumed(PastryPushSum app)
+	{
+	}
+
+	@Override
+	public void handedOff(PastryPushSum app, int neighbors)
+	{
+	}
+
+	@Override
+	public void neighborChanged(PastryPushSum app, Id neighbor, boolean joined)
+	{
+	}
+
+	@Override
+	public void resetNotified(PastryPushSum app)
+	{
+	}
+
+	@Override
+	public void childChanged(PastryPushSum app, Id child, boolean added)
+	{
+	}
+
+	@Override
+	public void subscribed(PastryPushSum app, boolean success)
+	{
+	}
+}
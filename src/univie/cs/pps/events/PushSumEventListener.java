@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps.events;
+
+import rice.p2p.commonapi.Id;
+import univie.cs.pps.PastryPushSum;
+
+/**
+ * A listener for the events of the {@link PastryPushSum} protocol.
+ * <p>
+ * The callbacks are invoked on the selector thread, in the middle of message
+ * processing, and receive the event data as primitive values, so that
+ * implementations can record them without building strings or other objects.
+ * Implementations should return quickly.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public interface PushSumEventListener
+{
+	/**
+	 * Called when a node starts a new step, after summing up the received
+	 * values and weights.
+	 * 
+	 * @param app
+	 *            the node.
+	 * @param step
+	 *            the number of the new step.
+	 * @param value
+	 *            the value of the node for the new step.
+	 * @param weight
+	 *            the weight of the node for the new step.
+	 */
+	void step(PastryPushSum app, int step, double value, double weight);
+
+	/**
+	 * Called when a node sends a value and weight to another node.
+	 * 
+	 * @param app
+	 *            the sending node.
+	 * @param target
+	 *            the id the message is routed to.
+	 * @param value
+	 *            the value sent.
+	 * @param weight
+	 *            the weight sent.
+	 */
+	void sent(PastryPushSum app, Id target, double value, double weight);
+
+	/**
+	 * Called when a node receives a value and weight from another node.
+	 * 
+	 * @param app
+	 *            the receiving node.
+	 * @param value
+	 *            the value received.
+	 * @param weight
+	 *            the weight received.
+	 */
+	void received(PastryPushSum app, double value, double weight);
+
+	/**
+	 * Called when a node that stopped participating forwards a received value
+	 * and weight to another node.
+	 * 
+	 * @param app
+	 *            the forwarding node.
+	 * @param target
+	 *            the id the message is routed to.
+	 * @param value
+	 *            the value forwarded.
+	 * @param weight
+	 *            the weight forwarded.
+	 */
+	void forwarded(PastryPushSum app, Id target, double value, double weight);
+
+	/**
+	 * Called when a node resets its value and weight.
+	 * 
+	 * @param app
+	 *            the node.
+	 * @param value
+	 *            the value after the reset.
+	 * @param weight
+	 *            the weight after the reset.
+	 */
+	void reset(PastryPushSum app, double value, double weight);
+
+	/**
+	 * Called when a message of the protocol passes through a node, once per
+	 * hop, including the first hop at the sender.
+	 * 
+	 * @param app
+	 *            the node.
+	 * @param target
+	 *            the id the message is routed to.
+	 */
+	void hop(PastryPushSum app, Id target);
+
+	/**
+	 * Called when a node drops a share of an older epoch.
+	 * 
+	 * @param app
+	 *            the node.
+	 * @param epoch
+	 *            the epoch of the share.
+	 * @param value
+	 *            the value dropped.
+	 * @param weight
+	 *            the weight dropped.
+	 */
+	void dropped(PastryPushSum app, int epoch, double value, double weight);
+
+	/**
+	 * Called when a node starts running a new epoch, next to its current one,
+	 * or skips ahead to a new epoch, replacing its current one.
+	 * 
+	 * @param app
+	 *            the node.
+	 * @param epoch
+	 *            the new epoch.
+	 * @param skipped
+	 *            whether the node skipped ahead, because it missed the
+	 *            epochs in between.
+	 */
+	void epochStarted(PastryPushSum app, int epoch, boolean skipped);
+
+	/**
+	 * Called when a node switches its estimates to the next epoch, after it
+	 * has mixed for the configured number of steps.
+	 * 
+	 * @param app
+	 *            the node.
+	 * @param epoch
+	 *            the new current epoch.
+	 */
+	void epochSwitched(PastryPushSum app, int epoch);
+
+	/**
+	 * Called when a node stops participating.
+	 * 
+	 * @param app
+	 *            the node.
+	 */
+	void stopped(PastryPushSum app);
+
+	/**
+	 * Called when a node resumes participating.
+	 * 
+	 * @param app
+	 *            the node.
+	 */
+	void resumed(PastryPushSum app);
+
+	/**
+	 * Called when a stopping node hands off its values and weight.
+	 * 
+	 * @param app
+	 *            the node.
+	 * @param neighbors
+	 *            the number of neighbors that receive a share, or 0 if the
+	 *            node found no live neighbors and kept its values.
+	 */
+	void handedOff(PastryPushSum app, int neighbors);
+
+	/**
+	 * Called when a node joins or leaves the leafset of a node.
+	 * 
+	 * @param app
+	 *            the node.
+	 * @param neighbor
+	 *            the id of the neighbor.
+	 * @param joined
+	 *            whether the neighbor joined or left.
+	 */
+	void neighborChanged(PastryPushSum app, Id neighbor, boolean joined);
+
+	/**
+	 * Called when a node receives a reset notification.
+	 * 
+	 * @param app
+	 *            the node.
+	 */
+	void resetNotified(PastryPushSum app);
+
+	/**
+	 * Called when a child is added to or removed from the reset topic at a
+	 * node.
+	 * 
+	 * @param app
+	 *            the node.
+	 * @param child
+	 *            the id of the child.
+	 * @param added
+	 *            whether the child was added or removed.
+	 */
+	void childChanged(PastryPushSum app, Id child, boolean added);
+
+	/**
+	 * Called when subscribing a node to the reset topic succeeded or failed.
+	 * 
+	 * @param app
+	 *            the node.
+	 * @param success
+	 *            whether the subscription succeeded.
+	 */
+	void subscribed(PastryPushSum app, boolean success);
+}
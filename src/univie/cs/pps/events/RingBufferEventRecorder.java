@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps.events;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.commons.io.IOUtils;
+
+import rice.environment.time.TimeSource;
+import rice.p2p.commonapi.Id;
+import univie.cs.pps.PastryPushSum;
+
+/**
+ * A {@link PushSumEventListener} that records all events as fixed-size binary
+ * records into a preallocated ring buffer. When the buffer is full, the oldest
+ * records are overwritten. Recording an event does not allocate any objects.
+ * <p>
+ * After the simulation, the buffer can be written to a file with
+ * {@link #dump(File)} and printed as text with {@link #print(File, PrintStream)}
+ * or the {@link #main(String[])} method of this class.
+ * <p>
+ * Each record has the following layout:
+ * 
+ * <pre>
+ * long   time
+ * int    event type (see the TYPE_ constants)
+ * int    node, the most significant 32 bits of the node id
+ * int    peer, the most significant 32 bits of the target id, or 0
+ * int    step
+ * double value
+ * double weight
+ * </pre>
+ * 
+ * Events without a value and weight store {@code NaN}, except for the
+ * following, which store their data in the value: the new epoch for
+ * {@link #TYPE_EPOCH_STARTED}, {@link #TYPE_EPOCH_SKIPPED} and
+ * {@link #TYPE_EPOCH_SWITCHED}, the number of neighbors for
+ * {@link #TYPE_HANDED_OFF}, and 1 or 0 for whether the neighbor joined, the
+ * child was added or the subscription succeeded for {@link #TYPE_NEIGHBOR},
+ * {@link #TYPE_CHILD} and {@link #TYPE_SUBSCRIBED}.
+ * 
+ * Instances of this class are not thread-safe. They must be used from the
+ * selector thread of a single environment.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class RingBufferEventRecorder implements PushSumEventListener
+{
+	public static final int TYPE_STEP = 0;
+	public static final int TYPE_SENT = 1;
+	public static final int TYPE_RECEIVED = 2;
+	public static final int TYPE_FORWARDED = 3;
+	public static final int TYPE_RESET = 4;
+	public static final int TYPE_HOP = 5;
+	public static final int TYPE_DROPPED = 6;
+	public static final int TYPE_EPOCH_STARTED = 7;
+	public static final int TYPE_EPOCH_SKIPPED = 8;
+	public static final int TYPE_EPOCH_SWITCHED = 9;
+	public static final int TYPE_STOPPED = 10;
+	public static final int TYPE_RESUMED = 11;
+	public static final int TYPE_HANDED_OFF = 12;
+	public static final int TYPE_NEIGHBOR = 13;
+	public static final int TYPE_RESET_NOTIFIED = 14;
+	public static final int TYPE_CHILD = 15;
+	public static final int TYPE_SUBSCRIBED = 16;
+
+	private static final String[] TYPE_NAMES = { "step", "sent", "received", "forwarded", "reset", "hop", "dropped", "begin-epoch",
+			"skip-epoch", "switch-epoch", "stop", "resume", "hand-off", "neighbor", "reset-note", "child", "subscribed" };
+
+	/**
+	 * The size of one record in bytes.
+	 */
+	public static final int RECORD_SIZE = 40;
+
+	/**
+	 * The largest capacity whose records fit into one buffer.
+	 */
+	public static final int MAX_CAPACITY = Integer.MAX_VALUE / RECORD_SIZE;
+
+	private static final int MAGIC = 0x50505345;
+	private static final int VERSION = 0;
+	private static final int HEADER_SIZE = 20;
+
+	/**
+	 * Prints the events of a file written by {@link #dump(File)} to the
+	 * standard output.
+	 * 
+	 * @param args
+	 *            the name of the file.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length != 1)
+		{
+			System.err.println("Usage: " + RingBufferEventRecorder.class.getCanonicalName() + " <trace file>");
+			return;
+		}
+
+		print(new File(args[0]), System.out);
+	}
+
+	/**
+	 * Prints the events of a file written by {@link #dump(File)}, one line per
+	 * event.
+	 * 
+	 * @param file
+	 *            the file to read.
+	 * @param out
+	 *            the stream to print to.
+	 * @throws IOException
+	 *             If the file cannot be read or is not a trace file.
+	 */
+	public static void print(File file, PrintStream out) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+
+		try
+		{
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+			{
+				throw new IOException("Not a trace file: " + file);
+			}
+
+			long recorded = in.readLong();
+			int count = in.readInt();
+
+			out.format("# %d events recorded, %d events in file%n", recorded, count);
+			out.format("#%15s %12s %12s %12s %8s %16s %16s%n", "time", "event", "node", "peer", "step", "value", "weight");
+
+			byte[] record = new byte[RECORD_SIZE];
+			ByteBuffer buffer = ByteBuffer.wrap(record);
+
+			for (int i = 0; i < count; i++)
+			{
+				in.readFully(record);
+
+				long time = buffer.getLong(0);
+				int type = buffer.getInt(8);
+
+				out.format("%16d %12s   <0x%08X>   <0x%08X> %8d %16e %16e%n", time, type < TYPE_NAMES.length ? TYPE_NAMES[type] : type,
+						buffer.getInt(12), buffer.getInt(16), buffer.getInt(20), buffer.getDouble(24), buffer.getDouble(32));
+			}
+		}
+		finally
+		{
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	private final TimeSource timeSource;
+	private final ByteBuffer buffer;
+	private final int capacity;
+	private final byte[] idBytes = new byte[64];
+
+	private long recorded = 0;
+
+	/**
+	 * @param capacity
+	 *            the maximum number of records kept in the buffer, between 1
+	 *            and {@link #MAX_CAPACITY}.
+	 * @param timeSource
+	 *            the time source used to timestamp the records.
+	 */
+	public RingBufferEventRecorder(int capacity, TimeSource timeSource)
+	{
+		if (capacity < 1 || capacity > MAX_CAPACITY)
+		{
+			throw new IllegalArgumentException("The capacity must be between 1 and " + MAX_CAPACITY + ", but was " + capacity + ".");
+		}
+
+		this.capacity = capacity;
+		this.timeSource = timeSource;
+		this.buffer = ByteBuffer.allocateDirect(capacity * RECORD_SIZE);
+	}
+
+	/**
+	 * Returns the total number of events recorded, including the ones that
+	 * have been overwritten.
+	 */
+	public long getRecorded()
+	{
+		return recorded;
+	}
+
+	/**
+	 * Writes the records currently in the buffer to a file, oldest first.
+	 * 
+	 * @param file
+	 *            the file to write to.
+	 * @throws IOException
+	 *             If the file cannot be written.
+	 */
+	public void dump(File file) throws IOException
+	{
+		if (file.getParentFile() != null && !file.getParentFile().exists())
+		{
+			file.getParentFile().mkdirs();
+		}
+
+		int count = (int) Math.min(recorded, capacity);
+		int first = (int) ((recorded - count) % capacity);
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC).putInt(VERSION).putLong(recorded).putInt(count);
+		header.flip();
+
+		FileChannel channel = new FileOutputStream(file).getChannel();
+
+		try
+		{
+			channel.write(header);
+
+			ByteBuffer records = buffer.duplicate();
+
+			// oldest records, up to the end of the buffer
+			records.limit(Math.min(first + count, capacity) * RECORD_SIZE).position(first * RECORD_SIZE);
+			write(channel, records);
+
+			// newest records, from the start of the buffer
+			records.limit(Math.max(first + count - capacity, 0) * RECORD_SIZE).position(0);
+			write(channel, records);
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+
+	@Override
+	public void step(PastryPushSum app, int step, double value, double weight)
+	{
+		record(TYPE_STEP, app, null, step, value, weight);
+	}
+
+	@Override
+	public void sent(PastryPushSum app, Id target, double value, double weight)
+	{
+		record(TYPE_SENT, app, target, app.getStep(), value, weight);
+	}
+
+	@Override
+	public void received(PastryPushSum app, double value, double weight)
+	{
+		record(TYPE_RECEIVED, app, null, app.getStep(), value, weight);
+	}
+
+	@Override
+	public void forwarded(PastryPushSum app, Id target, double value, double weight)
+	{
+		record(TYPE_FORWARDED, app, target, app.getStep(), value, weight);
+	}
+
+	@Override
+	public void reset(PastryPushSum app, double value, double weight)
+	{
+		record(TYPE_RESET, app, null, app.getStep(), value, weight);
+	}
+
+	@Override
+	public void hop(PastryPushSum app, Id target)
+	{
+		record(TYPE_HOP, app, target, app.getStep(), Double.NaN, Double.NaN);
+	}
+
+	@Override
+	public void dropped(PastryPushSum app, int epoch, double value, double weight)
+	{
+		record(TYPE_DROPPED, app, null, app.getStep(), value, weight);
+	}
+
+	@Override
+	public void epochStarted(PastryPushSum app, int epoch, boolean skipped)
+	{
+		record(skipped ? TYPE_EPOCH_SKIPPED : TYPE_EPOCH_STARTED, app, null, app.getStep(), epoch, Double.NaN);
+	}
+
+	@Override
+	public void epochSwitched(PastryPushSum app, int epoch)
+	{
+		record(TYPE_EPOCH_SWITCHED, app, null, app.getStep(), epoch, Double.NaN);
+	}
+
+	@Override
+	public void stopped(PastryPushSum app)
+	{
+		record(TYPE_STOPPED, app, null, app.getStep(), Double.NaN, Double.NaN);
+	}
+
+	@Override
+	public void resumed(PastryPushSum app)
+	{
+		record(TYPE_RESUMED, app, null, app.getStep(), Double.NaN, Double.NaN);
+	}
+
+	@Override
+	public void handedOff(PastryPushSum app, int neighbors)
+	{
+		record(TYPE_HANDED_OFF, app, null, app.getStep(), neighbors, Double.NaN);
+	}
+
+	@Override
+	public void neighborChanged(PastryPushSum app, Id neighbor, boolean joined)
+	{
+		record(TYPE_NEIGHBOR, app, neighbor, app.getStep(), joined ? 1 : 0, Double.NaN);
+	}
+
+	@Override
+	public void resetNotified(PastryPushSum app)
+	{
+		record(TYPE_RESET_NOTIFIED, app, null, app.getStep(), Double.NaN, Double.NaN);
+	}
+
+	@Override
+	public void childChanged(PastryPushSum app, Id child, boolean added)
+	{
+		record(TYPE_CHILD, app, child, app.getStep(), added ? 1 : 0, Double.NaN);
+	}
+
+	@Override
+	public void subscribed(PastryPushSum app, boolean success)
+	{
+		record(TYPE_SUBSCRIBED, app, null, app.getStep(), success ? 1 : 0, Double.NaN);
+	}
+
+	private void record(int type, PastryPushSum app, Id peer, int step, double value, double weight)
+	{
+		int offset = (int) (recorded % capacity) * RECORD_SIZE;
+
+		buffer.putLong(offset, timeSource.currentTimeMillis());
+		buffer.putInt(offset + 8, type);
+		buffer.putInt(offset + 12, prefix(app.getId()));
+		buffer.putInt(offset + 16, peer != null ? prefix(peer) : 0);
+		buffer.putInt(offset + 20, step);
+		buffer.putDouble(offset + 24, value);
+		buffer.putDouble(offset + 32, weight);
+
+		recorded++;
+	}
+
+	/**
+	 * Returns the most significant 32 bits of the id, which are the digits
+	 * shown by {@code Id.toString()}.
+	 */
+	private int prefix(Id id)
+	{
+		int length = id.getByteArrayLength();
+
+		if (length < 4 || length > idBytes.length)
+		{
+			return id.hashCode();
+		}
+
+		id.toByteArray(idBytes, 0);
+
+		return (idBytes[length - 1] & 0xFF) << 24 | (idBytes[length - 2] & 0xFF) << 16 | (idBytes[length - 3] & 0xFF) << 8
+				| (idBytes[length - 4] & 0xFF);
+	}
+
+	private static void write(FileChannel channel, ByteBuffer records) throws IOException
+	{
+		while (records.hasRemaining())
+		{
+			channel.write(records);
+		}
+	}
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps.utils;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import univie.cs.pps.PastryPushSum;
+
+/**
+ * A {@link ValueReader} that samples another, possibly slow or blocking,
+ * {@link ValueReader} on a separate executor, so that the thread of the
+ * {@link PastryPushSum} application never waits for the data source.
+ * <p>
+ * The latest sample is cached in a volatile field, which is all that
+ * {@link #getCurrentValue()} reads. Until the first sample is taken, the
+ * initial value given in the constructor is returned. Failed samples keep the
+ * previous value and are counted. The staleness of the cached value and the
+ * latency of the samples are available as metrics.
+ * <p>
+ * The wrapped reader is called from the threads of the executor, so it must
+ * be thread-safe, or used by nothing but this reader. This is not the case
+ * for a {@link GaussianValueReader}, which draws from the random source of
+ * the FreePastry environment and reports to a shared
+ * {@link VariationAccumulator}, both confined to the selector thread.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class AsyncValueReader implements ValueReader
+{
+	private final ValueReader valueReader;
+	private final ScheduledFuture<?> sampling;
+	private final long created = System.nanoTime();
+
+	private volatile double value;
+	private volatile long sampleTime;
+	private volatile long sampleCount;
+	private volatile long failureCount;
+	private volatile long lastLatency;
+	private volatile long maxLatency;
+	private volatile long totalLatency;
+
+	/**
+	 * Creates a reader and starts sampling immediately.
+	 * 
+	 * @param valueReader
+	 *            the reader to sample, which must be thread-safe or confined
+	 *            to the sampling thread.
+	 * @param executor
+	 *            the executor on which the samples are taken. It may be shared
+	 *            by many readers.
+	 * @param period
+	 *            the time between the end of one sample and the start of the
+	 *            next, in milliseconds.
+	 * @param initialValue
+	 *            the value returned until the first sample is taken.
+	 */
+	public AsyncValueReader(ValueReader valueReader, ScheduledExecutorService executor, long period, double initialValue)
+	{
+		this.valueReader = valueReader;
+		this.value = initialValue;
+
+		sampling = executor.scheduleWithFixedDelay(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				sample();
+			}
+		}, 0, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Returns a new executor for sampling, with the given number of daemon
+	 * threads.
+	 */
+	public static ScheduledExecutorService newExecutor(int threads)
+	{
+		return Executors.newScheduledThreadPool(threads, new ThreadFactory()
+		{
+			private int count;
+
+			@Override
+			public synchronized Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, AsyncValueReader.class.getSimpleName() + "-" + count++);
+				thread.setDaemon(true);
+
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Returns the latest sampled value, without blocking.
+	 */
+	@Override
+	public double getCurrentValue()
+	{
+		return value;
+	}
+
+	/**
+	 * Stops sampling. The last value is still returned by
+	 * {@link #getCurrentValue()}.
+	 */
+	public void stop()
+	{
+		sampling.cancel(false);
+	}
+
+	/**
+	 * Returns whether a sample has been taken successfully.
+	 */
+	public boolean hasSample()
+	{
+		return sampleCount > 0;
+	}
+
+	/**
+	 * Returns the time in milliseconds since the last successful sample was
+	 * taken, or since the creation of this reader, if there was none.
+	 */
+	public long getStaleness()
+	{
+		long time = hasSample() ? sampleTime : created;
+
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - time);
+	}
+
+	/**
+	 * Returns the number of successful samples.
+	 */
+	public long getSampleCount()
+	{
+		return sampleCount;
+	}
+
+	/**
+	 * Returns the number of samples that failed with an exception.
+	 */
+	public long getFailureCount()
+	{
+		return failureCount;
+	}
+
+	/**
+	 * Returns the time taken by the last successful sample, in nanoseconds.
+	 */
+	public long getLastLatency()
+	{
+		return lastLatency;
+	}
+
+	/**
+	 * Returns the longest time taken by a successful sample, in nanoseconds.
+	 */
+	public long getMaxLatency()
+	{
+		return maxLatency;
+	}
+
+	/**
+	 * Returns the mean time taken by the successful samples, in nanoseconds.
+	 */
+	public double getMeanLatency()
+	{
+		long count = sampleCount;
+
+		return (count > 0) ? (double) totalLatency / count : Double.NaN;
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getSimpleName() + "[" + valueReader + "]";
+	}
+
+	/**
+	 * Takes one sample. The samples of one reader never overlap, so the
+	 * fields are only written by one thread at a time.
+	 */
+	private void sample()
+	{
+		long start = System.nanoTime();
+		double sample;
+
+		try
+		{
+			sample = valueReader.getCurrentValue();
+		}
+		catch (RuntimeException e)
+		{
+			failureCount++;
+			return;
+		}
+
+		long end = System.nanoTime();
+		long latency = end - start;
+
+		value = sample;
+		sampleTime = end;
+		lastLatency = latency;
+		maxLatency = Math.max(maxLatency, latency);
+		totalLatency += latency;
+		sampleCount++;
+	}
+}
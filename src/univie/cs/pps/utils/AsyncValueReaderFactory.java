@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps.utils;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * A Factory for creating {@link AsyncValueReader} instances, which sample the
+ * readers created by another {@link ValueReaderFactory} on a shared executor.
+ * <p>
+ * The created readers are sampled on the threads of the executor, so the
+ * wrapped factory must create readers that are thread-safe or share no state
+ * with other readers or with the selector thread. A
+ * {@link GaussianValueReaderFactory} does not qualify.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class AsyncValueReaderFactory implements ValueReaderFactory
+{
+	private final ValueReaderFactory valueReaderFactory;
+	private final ScheduledExecutorService executor;
+	private final long period;
+	private final double initialValue;
+
+	/**
+	 * Sets up a factory for creating {@link AsyncValueReader} instances.
+	 * 
+	 * @param valueReaderFactory
+	 *            the factory of the readers to sample, which must create
+	 *            readers that are safe to call from the executor.
+	 * @param executor
+	 *            the executor on which all readers are sampled.
+	 * @param period
+	 *            the time between two samples of a reader, in milliseconds.
+	 * @param initialValue
+	 *            the value returned by a reader until its first sample is
+	 *            taken.
+	 */
+	public AsyncValueReaderFactory(ValueReaderFactory valueReaderFactory, ScheduledExecutorService executor, long period, double initialValue)
+	{
+		this.valueReaderFactory = valueReaderFactory;
+		this.executor = executor;
+		this.period = period;
+		this.initialValue = initialValue;
+	}
+
+	/**
+	 * Returns a new {@link AsyncValueReader}, which starts sampling
+	 * immediately.
+	 */
+	@Override
+	public ValueReader createValueReader()
+	{
+		return new AsyncValueReader(valueReaderFactory.createValueReader(), executor, period, initialValue);
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps.utils;
+
+/**
+ * A {@link VectorValueReader} that obtains each component of the vector from
+ * a separate {@link ValueReader}.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class CombinedValueReader implements VectorValueReader
+{
+	private final ValueReader[] valueReaders;
+	private final double[] values;
+
+	/**
+	 * Creates a reader for as many components as {@link ValueReader} instances
+	 * are given.
+	 * 
+	 * @param valueReaders
+	 *            the readers of the components, in order.
+	 * @throws IllegalArgumentException
+	 *             If no reader is given.
+	 */
+	public CombinedValueReader(ValueReader... valueReaders)
+	{
+		if (valueReaders.length == 0)
+		{
+			throw new IllegalArgumentException("At least one value reader is required.");
+		}
+
+		this.valueReaders = valueReaders.clone();
+		this.values = new double[valueReaders.length];
+	}
+
+	@Override
+	public int getDimension()
+	{
+		return valueReaders.length;
+	}
+
+	@Override
+	public double[] getCurrentValues()
+	{
+		for (int i = 0; i < valueReaders.length; i++)
+		{
+			values[i] = valueReaders[i].getCurrentValue();
+		}
+
+		return values;
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps.utils;
+
+/**
+ * A Factory for creating {@link CombinedValueReader} instances, with one
+ * {@link ValueReaderFactory} for each component of the vector.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class CombinedValueReaderFactory implements VectorValueReaderFactory
+{
+	private final ValueReaderFactory[] valueReaderFactories;
+
+	/**
+	 * Sets up a factory for vectors with as many components as
+	 * {@link ValueReaderFactory} instances are given.
+	 * 
+	 * @param valueReaderFactories
+	 *            the factories of the components, in order.
+	 * @throws IllegalArgumentException
+	 *             If no factory is given.
+	 */
+	public CombinedValueReaderFactory(ValueReaderFactory... valueReaderFactories)
+	{
+		if (valueReaderFactories.length == 0)
+		{
+			throw new IllegalArgumentException("At least one value reader factory is required.");
+		}
+
+		this.valueReaderFactories = valueReaderFactories.clone();
+	}
+
+	/**
+	 * Returns a new {@link CombinedValueReader} with a new {@link ValueReader}
+	 * for each component.
+	 */
+	@Override
+	public VectorValueReader createVectorValueReader()
+	{
+		ValueReader[] valueReaders = new ValueReader[valueReaderFactories.length];
+
+		for (int i = 0; i < valueReaders.length; i++)
+		{
+			valueReaders[i] = valueReaderFactories[i].createValueReader();
+		}
+
+		return new CombinedValueReader(valueReaders);
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps.utils;
+
+/**
+ * Tracks whether an estimate has converged, by keeping the estimates of the
+ * last steps in a sliding window. The estimate is considered stable when the
+ * window is full and, for every component, the difference between the largest
+ * and the smallest estimate in the window is at most the tolerance, relative
+ * to the largest absolute estimate.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class ConvergenceTracker
+{
+	private final int window;
+	private final int dimension;
+	private final double tolerance;
+
+	private final double[] history;
+	private int count;
+	private int next;
+
+	/**
+	 * Creates a tracker with an empty window.
+	 * 
+	 * @param window
+	 *            the number of steps in the window.
+	 * @param dimension
+	 *            the number of components of the estimate.
+	 * @param tolerance
+	 *            the accepted relative change of each component within the
+	 *            window.
+	 * @throws IllegalArgumentException
+	 *             If {@code window} or {@code dimension} is not positive, or
+	 *             {@code tolerance} is negative.
+	 */
+	public ConvergenceTracker(int window, int dimension, double tolerance)
+	{
+		if (window < 1 || dimension < 1 || tolerance < 0.)
+		{
+			throw new IllegalArgumentException("Invalid window " + window + ", dimension " + dimension + " or tolerance " + tolerance + ".");
+		}
+
+		this.window = window;
+		this.dimension = dimension;
+		this.tolerance = tolerance;
+		this.history = new double[window * dimension];
+	}
+
+	/**
+	 * Adds the estimate {@code values[i] / weight} of the current step to the
+	 * window, replacing the oldest estimate if the window is full.
+	 */
+	public void add(double[] values, double weight)
+	{
+		for (int i = 0; i < dimension; i++)
+		{
+			history[next * dimension + i] = values[i] / weight;
+		}
+
+		next = (next + 1) % window;
+		count = Math.min(count + 1, window);
+	}
+
+	/**
+	 * Returns whether the window is full and all estimates in the window are
+	 * within the tolerance.
+	 */
+	public boolean isStable()
+	{
+		if (count < window)
+		{
+			return false;
+		}
+
+		for (int i = 0; i < dimension; i++)
+		{
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+
+			for (int j = i; j < history.length; j += dimension)
+			{
+				min = Math.min(min, history[j]);
+				max = Math.max(max, history[j]);
+			}
+
+			// also catches NaN, for which the comparison is false
+			if (!(max - min <= tolerance * Math.max(Math.abs(min), Math.abs(max))))
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Removes all estimates from the window.
+	 */
+	public void clear()
+	{
+		count = 0;
+		next = 0;
+	}
+}
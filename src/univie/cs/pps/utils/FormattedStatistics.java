@@ -61,6 +61,15 @@ public class FormattedStatistics extends SummaryStatistics
 				"rms" + suffix);
 	}
 
+	/**
+	 * Returns a string of the given statistics, in the format of the
+	 * {@code toString} implementation of this class.
+	 */
+	public static String format(long n, double min, double max, double mean, double std, double rms)
+	{
+		return String.format("%8d %16e %16e %16e %16e %16e", n, min, max, mean, std, rms);
+	}
+
 	/**
 	 * Returns the root-mean-square of the values that have been added.
 	 */
@@ -76,6 +85,6 @@ public class FormattedStatistics extends SummaryStatistics
 	@Override
 	public String toString()
 	{
-		return String.format("%8d %16e %16e %16e %16e %16e", getN(), getMin(), getMax(), getMean(), getStandardDeviation(), getRMS());
+		return format(getN(), getMin(), getMax(), getMean(), getStandardDeviation(), getRMS());
 	}
 }
\ No newline at end of file
@@ -23,7 +23,6 @@
 package univie.cs.pps.utils;
 
 import rice.environment.random.RandomSource;
-import univie.cs.pps.PPSSetup;
 
 /**
  * An implementation of the {@link ValueReader} interface, simulating varying
@@ -35,9 +34,21 @@ import univie.cs.pps.PPSSetup;
 public class GaussianValueReader implements ValueReader
 {
 	private final RandomSource randomSource;
+	private final VariationAccumulator variations;
 	private final double std;
 	private double value;
 
+	/**
+	 * Creates a reader that does not report its variations.
+	 * 
+	 * @see #GaussianValueReader(double, double, RandomSource,
+	 *      VariationAccumulator)
+	 */
+	public GaussianValueReader(double initialValue, double std, RandomSource randomSource)
+	{
+		this(initialValue, std, randomSource, null);
+	}
+
 	/**
 	 * @param initialValue
 	 *            the value which will be returned by the first call to
@@ -49,10 +60,14 @@ public class GaussianValueReader implements ValueReader
 	 * @param randomSource
 	 *            an instance of {@link RandomSource} used for generating the
 	 *            random numbers in this class.
+	 * @param variations
+	 *            the {@link VariationAccumulator} to which the variations are
+	 *            reported for plotting, or {@code null}.
 	 */
-	public GaussianValueReader(double initialValue, double std, RandomSource randomSource)
+	public GaussianValueReader(double initialValue, double std, RandomSource randomSource, VariationAccumulator variations)
 	{
 		this.randomSource = randomSource;
+		this.variations = variations;
 		this.value = initialValue;
 		this.std = std;
 	}
@@ -66,8 +81,11 @@ public class GaussianValueReader implements ValueReader
 		double variation = randomSource.nextGaussian() * std;
 		value += variation;
 
-		// send to PPSSetup for plotting
-		PPSSetup.addVariation(variation);
+		// report for plotting
+		if (variations != null)
+		{
+			variations.addVariation(variation);
+		}
 
 		return currentValue;
 	}
@@ -36,6 +36,19 @@ public class GaussianValueReaderFactory implements ValueReaderFactory
 	private final double std;
 	private final double variateStd;
 	private final RandomSource randomSource;
+	private final VariationAccumulator variations;
+
+	/**
+	 * Sets up a factory for creating {@link GaussianValueReader} instances
+	 * that do not report their variations.
+	 * 
+	 * @see #GaussianValueReaderFactory(double, double, double, RandomSource,
+	 *      VariationAccumulator)
+	 */
+	public GaussianValueReaderFactory(double mean, double std, double variateStd, RandomSource randomSource)
+	{
+		this(mean, std, variateStd, randomSource, null);
+	}
 
 	/**
 	 * Sets up a factory for creating {@link GaussianValueReader} instances,
@@ -56,13 +69,18 @@ public class GaussianValueReaderFactory implements ValueReaderFactory
 	 * @param randomSource
 	 *            an instance of {@link RandomSource} used for generating the
 	 *            random numbers in this class.
+	 * @param variations
+	 *            the {@link VariationAccumulator} to which the variations of
+	 *            the values are reported for plotting, or {@code null}.
 	 */
-	public GaussianValueReaderFactory(double mean, double std, double variateStd, RandomSource randomSource)
+	public GaussianValueReaderFactory(double mean, double std, double variateStd, RandomSource randomSource,
+			VariationAccumulator variations)
 	{
 		this.mean = mean;
 		this.std = std;
 		this.variateStd = variateStd;
 		this.randomSource = randomSource;
+		this.variations = variations;
 	}
 
 	/**
@@ -73,7 +91,7 @@ public class GaussianValueReaderFactory implements ValueReaderFactory
 	@Override
 	public ValueReader createValueReader()
 	{
-		return new GaussianValueReader(randomSource.nextGaussian() * std + mean, variateStd, randomSource);
+		return new GaussianValueReader(randomSource.nextGaussian() * std + mean, variateStd, randomSource, variations);
 	}
 
 }
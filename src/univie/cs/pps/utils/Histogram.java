@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps.utils;
+
+/**
+ * Bins of equal width between a minimum and a maximum value, used to estimate
+ * the distribution of the values of all nodes with the Push-Sum protocol.
+ * Each node contributes a vector with a one for the bin of its value (see
+ * {@link HistogramValueReader}), so that the estimated means are the
+ * fractions of the nodes in each bin.
+ * <p>
+ * Instances of this class are immutable.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class Histogram
+{
+	private final double min;
+	private final double max;
+	private final int bins;
+	private final double width;
+
+	/**
+	 * @param min
+	 *            the lower bound of the first bin. Smaller values are counted
+	 *            in the first bin.
+	 * @param max
+	 *            the upper bound of the last bin. Larger values are counted in
+	 *            the last bin.
+	 * @param bins
+	 *            the number of bins.
+	 * @throws IllegalArgumentException
+	 *             If the bounds are not finite, {@code min} is not less than
+	 *             {@code max}, or {@code bins} is not positive.
+	 */
+	public Histogram(double min, double max, int bins)
+	{
+		if (Double.isInfinite(min) || Double.isInfinite(max) || !(min < max))
+		{
+			throw new IllegalArgumentException("The bounds of a histogram must be finite, with min < max.");
+		}
+
+		if (bins < 1)
+		{
+			throw new IllegalArgumentException("A histogram must have at least one bin.");
+		}
+
+		this.min = min;
+		this.max = max;
+		this.bins = bins;
+		this.width = (max - min) / bins;
+	}
+
+	/**
+	 * Returns the number of bins.
+	 */
+	public int getBins()
+	{
+		return bins;
+	}
+
+	/**
+	 * Returns the lower bound of the given bin.
+	 */
+	public double getLowerBound(int bin)
+	{
+		return min + bin * width;
+	}
+
+	/**
+	 * Returns the upper bound of the given bin.
+	 */
+	public double getUpperBound(int bin)
+	{
+		return (bin == bins - 1) ? max : min + (bin + 1) * width;
+	}
+
+	/**
+	 * Returns the bin of the given value.
+	 */
+	public int getBin(double x)
+	{
+		if (!(x > min))
+		{
+			return 0;
+		}
+
+		return (int) Math.min((x - min) / width, bins - 1);
+	}
+
+	/**
+	 * Returns an estimate of the {@code q}-quantile of a distribution given by
+	 * the masses of the bins, interpolating linearly within a bin. The masses
+	 * need not be normalized, so that the values of a Push-Sum node can be
+	 * passed without dividing them by the weight.
+	 * 
+	 * @param masses
+	 *            the masses of the bins, starting at {@code offset}.
+	 * @param offset
+	 *            the index of the mass of the first bin.
+	 * @param q
+	 *            the quantile, between 0 and 1.
+	 * @return the estimated quantile, or {@code NaN} if the total mass is not
+	 *         positive.
+	 */
+	public double getQuantile(double[] masses, int offset, double q)
+	{
+		if (!(q >= 0. && q <= 1.))
+		{
+			throw new IllegalArgumentException("q must be between 0 and 1.");
+		}
+
+		double total = 0.;
+
+		for (int i = 0; i < bins; i++)
+		{
+			total += Math.max(0., masses[offset + i]);
+		}
+
+		if (!(total > 0.))
+		{
+			return Double.NaN;
+		}
+
+		double target = q * total;
+		double cumulative = 0.;
+
+		for (int i = 0; i < bins; i++)
+		{
+			double mass = Math.max(0., masses[offset + i]);
+
+			if (mass > 0. && cumulative + mass >= target)
+			{
+				return getLowerBound(i) + (target - cumulative) / mass * (getUpperBound(i) - getLowerBound(i));
+			}
+
+			cumulative += mass;
+		}
+
+		return max;
+	}
+}
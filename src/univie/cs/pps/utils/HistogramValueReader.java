@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps.utils;
+
+import java.util.Arrays;
+
+import univie.cs.pps.PastryPushSum;
+
+/**
+ * A {@link VectorValueReader} for estimating the distribution of the values
+ * of a {@link ValueReader} across the ring. The first component is the value
+ * itself, so that its mean is estimated as usual. It is followed by one
+ * component per bin of a {@link Histogram}, which is one for the bin of the
+ * value and zero otherwise. The estimated means of these components are the
+ * fractions of the nodes in each bin, which {@link PastryPushSum#getQuantile(double)}
+ * uses to answer quantile queries locally.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class HistogramValueReader implements VectorValueReader
+{
+	private final ValueReader valueReader;
+	private final Histogram histogram;
+	private final double[] values;
+
+	/**
+	 * @param valueReader
+	 *            the reader of the value.
+	 * @param histogram
+	 *            the bins of the value.
+	 */
+	public HistogramValueReader(ValueReader valueReader, Histogram histogram)
+	{
+		this.valueReader = valueReader;
+		this.histogram = histogram;
+		this.values = new double[histogram.getBins() + 1];
+	}
+
+	/**
+	 * Returns the bins of the value.
+	 */
+	public Histogram getHistogram()
+	{
+		return histogram;
+	}
+
+	@Override
+	public int getDimension()
+	{
+		return values.length;
+	}
+
+	@Override
+	public double[] getCurrentValues()
+	{
+		double value = valueReader.getCurrentValue();
+
+		Arrays.fill(values, 0.);
+		values[0] = value;
+		values[1 + histogram.getBin(value)] = 1.;
+
+		return values;
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps.utils;
+
+/**
+ * A Factory for creating {@link HistogramValueReader} instances with the same
+ * {@link Histogram}.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class HistogramValueReaderFactory implements VectorValueReaderFactory
+{
+	private final ValueReaderFactory valueReaderFactory;
+	private final Histogram histogram;
+
+	/**
+	 * @param valueReaderFactory
+	 *            the factory of the readers of the values.
+	 * @param histogram
+	 *            the bins of the values.
+	 */
+	public HistogramValueReaderFactory(ValueReaderFactory valueReaderFactory, Histogram histogram)
+	{
+		this.valueReaderFactory = valueReaderFactory;
+		this.histogram = histogram;
+	}
+
+	/**
+	 * Returns a new {@link HistogramValueReader} with a new {@link ValueReader}.
+	 */
+	@Override
+	public VectorValueReader createVectorValueReader()
+	{
+		return new HistogramValueReader(valueReaderFactory.createValueReader(), histogram);
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps.utils;
+
+/**
+ * A histogram of non-negative long values, such as durations in nanoseconds,
+ * with one bucket per power of two.
+ * <p>
+ * Bucket {@code b} counts the values {@code v} with
+ * {@code 2^(b-1) <= v < 2^b}, and bucket 0 the value 0, so that adding a value
+ * takes a count of its leading zero bits and an increment, without
+ * allocation. Quantiles are returned as the upper bound of their bucket, which
+ * is at most twice the true value. Unlike a {@link QuantileSketch}, the
+ * histogram has a fixed size and is meant to be updated on hot paths.
+ * <p>
+ * The histogram is not thread-safe. Histograms can be merged with
+ * {@link #add(Log2Histogram)}.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class Log2Histogram
+{
+	private static final int BUCKETS = Long.SIZE;
+
+	private final long[] counts = new long[BUCKETS];
+	private long n;
+	private long sum;
+	private long max;
+
+	/**
+	 * Creates an empty histogram.
+	 */
+	public Log2Histogram()
+	{
+	}
+
+	/**
+	 * Creates a copy of the given histogram.
+	 */
+	public Log2Histogram(Log2Histogram other)
+	{
+		add(other);
+	}
+
+	/**
+	 * Adds a value. Negative values are counted as 0.
+	 */
+	public void add(long value)
+	{
+		long v = Math.max(value, 0);
+
+		counts[Long.SIZE - Long.numberOfLeadingZeros(v)]++;
+		n++;
+		sum += v;
+
+		if (v > max)
+		{
+			max = v;
+		}
+	}
+
+	/**
+	 * Adds all values of another histogram.
+	 */
+	public void add(Log2Histogram other)
+	{
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			counts[i] += other.counts[i];
+		}
+
+		n += other.n;
+		sum += other.sum;
+		max = Math.max(max, other.max);
+	}
+
+	/**
+	 * Returns the number of values.
+	 */
+	public long getN()
+	{
+		return n;
+	}
+
+	/**
+	 * Returns the sum of the values.
+	 */
+	public long getSum()
+	{
+		return sum;
+	}
+
+	/**
+	 * Returns the mean of the values, or {@code NaN} if there are no values.
+	 */
+	public double getMean()
+	{
+		return (n > 0) ? (double) sum / n : Double.NaN;
+	}
+
+	/**
+	 * Returns the largest value, or 0 if there are no values.
+	 */
+	public long getMax()
+	{
+		return max;
+	}
+
+	/**
+	 * Returns the number of values in the given bucket.
+	 * 
+	 * @param bucket
+	 *            the bucket, between 0 and 63.
+	 */
+	public long getCount(int bucket)
+	{
+		return counts[bucket];
+	}
+
+	/**
+	 * Returns an upper bound of the {@code q}-quantile of the values, that is
+	 * the upper bound of the bucket holding the smallest value that is greater
+	 * than or equal to a fraction {@code q} of the values, but not more than
+	 * the largest value. Returns 0 if there are no values.
+	 * 
+	 * @param q
+	 *            the quantile, between 0 and 1.
+	 */
+	public long getQuantile(double q)
+	{
+		if (!(q >= 0. && q <= 1.))
+		{
+			throw new IllegalArgumentException("q must be between 0 and 1.");
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(q * n));
+		long count = 0;
+
+		for (int i = 0; i < BUCKETS && n > 0; i++)
+		{
+			count += counts[i];
+
+			if (count >= rank)
+			{
+				return (i < Long.SIZE - 1) ? Math.min((1L << i) - 1, max) : max;
+			}
+		}
+
+		return max;
+	}
+
+	/**
+	 * Returns a string of the number of values, the mean, the 50th and 99th
+	 * percentiles and the maximum.
+	 */
+	@Override
+	public String toString()
+	{
+		return String.format("n=%d mean=%.1f p50<=%d p99<=%d max=%d", n, getMean(), getQuantile(.5), getQuantile(.99), max);
+	}
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps.utils;
+
+import java.util.Arrays;
+
+/**
+ * A mergeable sketch of the distribution of non-negative values, for
+ * estimating quantiles without keeping or sorting the values.
+ * <p>
+ * Like an HDR histogram, the values are counted in buckets whose width grows
+ * with the magnitude of the values: a bucket is given by the exponent and the
+ * most significant {@code precisionBits} bits of the mantissa of a value, so
+ * that adding a value takes a shift of its bit pattern. Since the bit
+ * patterns of non-negative doubles are ordered like the values, the buckets
+ * are ordered as well. A quantile is returned as the midpoint of its bucket,
+ * with a relative error of at most {@code 2^-(precisionBits + 1)}. The
+ * buckets cover only the range between the smallest and the largest value
+ * added so far.
+ * <p>
+ * Sketches with the same precision can be merged with
+ * {@link #add(QuantileSketch)}, for example to combine the sketches of
+ * different partitions of the nodes.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class QuantileSketch
+{
+	/**
+	 * The quantiles reported by {@link #toString()}.
+	 */
+	public static final double[] QUANTILES = { .5, .95, .99, .999 };
+
+	private static final int MANTISSA_BITS = 52;
+	private static final int DEFAULT_PRECISION_BITS = 7;
+
+	/**
+	 * Returns a header with column names, each followed by {@code suffix},
+	 * matching the format of the {@code toString} implementation of this class.
+	 */
+	public static String header(String suffix)
+	{
+		return String.format("%16s %16s %16s %16s", "p50" + suffix, "p95" + suffix, "p99" + suffix, "p99.9" + suffix);
+	}
+
+	private final int shift;
+
+	private long[] counts = new long[0];
+	private int offset;
+	private long n;
+	private double min;
+	private double max;
+
+	/**
+	 * Creates a sketch with a relative error of less than 0.4%.
+	 */
+	public QuantileSketch()
+	{
+		this(DEFAULT_PRECISION_BITS);
+	}
+
+	/**
+	 * @param precisionBits
+	 *            the number of bits of the mantissa that distinguish the
+	 *            buckets, between 0 and 20. Each additional bit halves the
+	 *            relative error and doubles the number of buckets.
+	 */
+	public QuantileSketch(int precisionBits)
+	{
+		if (precisionBits < 0 || precisionBits > 20)
+		{
+			throw new IllegalArgumentException("precisionBits must be between 0 and 20.");
+		}
+
+		this.shift = MANTISSA_BITS - precisionBits;
+	}
+
+	/**
+	 * Removes all values.
+	 */
+	public void clear()
+	{
+		Arrays.fill(counts, 0);
+		n = 0;
+	}
+
+	/**
+	 * Adds a value.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             If the value is negative, infinite or {@code NaN}.
+	 */
+	public void add(double x)
+	{
+		if (!(x >= 0. && x <= Double.MAX_VALUE))
+		{
+			throw new IllegalArgumentException("Cannot add " + x + ", only finite non-negative values.");
+		}
+
+		// adding 0. turns -0. into 0.
+		int bucket = bucket(x + 0.);
+
+		ensureRange(bucket, bucket);
+		counts[bucket - offset]++;
+
+		if (n == 0 || x < min)
+		{
+			min = x;
+		}
+
+		if (n == 0 || x > max)
+		{
+			max = x;
+		}
+
+		n++;
+	}
+
+	/**
+	 * Adds all values of another sketch with the same precision.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             If the precision of the other sketch differs.
+	 */
+	public void add(QuantileSketch other)
+	{
+		if (other.shift != shift)
+		{
+			throw new IllegalArgumentException("Cannot merge sketches of different precision.");
+		}
+
+		if (other.n == 0)
+		{
+			return;
+		}
+
+		ensureRange(other.offset, other.offset + other.counts.length - 1);
+
+		for (int i = 0; i < other.counts.length; i++)
+		{
+			counts[other.offset + i - offset] += other.counts[i];
+		}
+
+		min = (n == 0) ? other.min : Math.min(min, other.min);
+		max = (n == 0) ? other.max : Math.max(max, other.max);
+		n += other.n;
+	}
+
+	/**
+	 * Returns the number of values.
+	 */
+	public long getN()
+	{
+		return n;
+	}
+
+	/**
+	 * Returns the upper bound of the relative error of the quantiles.
+	 */
+	public double getRelativeError()
+	{
+		return Math.scalb(1., -(MANTISSA_BITS - shift + 1));
+	}
+
+	/**
+	 * Returns an estimate of the {@code q}-quantile of the values, that is,
+	 * of the smallest value that is greater than or equal to a fraction
+	 * {@code q} of the values, or {@code NaN} if there are no values.
+	 * 
+	 * @param q
+	 *            the quantile, between 0 and 1.
+	 */
+	public double getQuantile(double q)
+	{
+		if (!(q >= 0. && q <= 1.))
+		{
+			throw new IllegalArgumentException("q must be between 0 and 1.");
+		}
+
+		if (n == 0)
+		{
+			return Double.NaN;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(q * n));
+		long count = 0;
+
+		// the extremes are known exactly
+		if (rank == 1)
+		{
+			return min;
+		}
+
+		if (rank == n)
+		{
+			return max;
+		}
+
+		for (int i = 0; i < counts.length; i++)
+		{
+			count += counts[i];
+
+			if (count >= rank)
+			{
+				double lower = Double.longBitsToDouble((long) (offset + i) << shift);
+				double upper = Double.longBitsToDouble((long) (offset + i + 1) << shift);
+
+				return Math.max(min, Math.min(lower + (upper - lower) / 2, max));
+			}
+		}
+
+		return max;
+	}
+
+	/**
+	 * Returns a string of the estimates of the {@link #QUANTILES}.
+	 */
+	@Override
+	public String toString()
+	{
+		return String.format("%16e %16e %16e %16e", getQuantile(QUANTILES[0]), getQuantile(QUANTILES[1]), getQuantile(QUANTILES[2]),
+				getQuantile(QUANTILES[3]));
+	}
+
+	private int bucket(double x)
+	{
+		return (int) (Double.doubleToRawLongBits(x) >>> shift);
+	}
+
+	/**
+	 * Grows the array of counts to include the buckets from {@code first} to
+	 * {@code last}.
+	 */
+	private void ensureRange(int first, int last)
+	{
+		if (counts.length == 0)
+		{
+			counts = new long[last - first + 1];
+			offset = first;
+			return;
+		}
+
+		int currentLast = offset + counts.length - 1;
+
+		if (first >= offset && last <= currentLast)
+		{
+			return;
+		}
+
+		// grow by at least half of the current size, to add values in O(1)
+		// amortized time
+		int slack = counts.length / 2;
+		int newFirst = (first < offset) ? Math.max(0, Math.min(first, offset - slack)) : offset;
+		int newLast = (last > currentLast) ? Math.max(last, currentLast + slack) : currentLast;
+
+		long[] grown = new long[newLast - newFirst + 1];
+		System.arraycopy(counts, 0, grown, offset - newFirst, counts.length);
+
+		counts = grown;
+		offset = newFirst;
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps.utils;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import rice.environment.random.RandomSource;
+import rice.pastry.Id;
+import rice.pastry.standard.RandomNodeIdFactory;
+
+/**
+ * Generates random Pastry ids, uniformly distributed over the id space.
+ * <p>
+ * The ids are the same as those of a new {@link RandomNodeIdFactory} per id:
+ * one {@link RandomSource#nextLong()} per id, incremented by one and hashed
+ * with SHA-1, so that runs with the same random seed yield the same ids.
+ * Unlike {@link RandomNodeIdFactory}, which looks up a new
+ * {@link MessageDigest} and allocates several temporary arrays for every id,
+ * this class reuses one digest and its buffers. The only allocations left are
+ * the ones made by {@link Id#build(byte[])} itself.
+ * <p>
+ * Instances of this class are not thread-safe. They are meant to be owned by a
+ * single node and used from the selector thread.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class RandomIdGenerator
+{
+	private final RandomSource randomSource;
+	private final MessageDigest digest;
+	private final byte[] input = new byte[Long.SIZE / Byte.SIZE];
+	private final byte[] material;
+
+	/**
+	 * @param randomSource
+	 *            an instance of {@link RandomSource} used for generating the
+	 *            random ids.
+	 * @throws IllegalStateException
+	 *             If SHA-1 is not supported.
+	 */
+	public RandomIdGenerator(RandomSource randomSource)
+	{
+		this.randomSource = randomSource;
+
+		try
+		{
+			digest = MessageDigest.getInstance("SHA");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException("No SHA support!", e);
+		}
+
+		material = new byte[digest.getDigestLength()];
+	}
+
+	/**
+	 * Returns a new random id.
+	 */
+	public Id generateId()
+	{
+		long next = randomSource.nextLong() + 1;
+
+		for (int i = 0; i < input.length; i++)
+		{
+			input[i] = (byte) (next & 0xff);
+			next >>= 8;
+		}
+
+		digest.update(input);
+
+		try
+		{
+			digest.digest(material, 0, material.length);
+		}
+		catch (DigestException e)
+		{
+			// cannot happen, the buffer has the length of the digest
+			throw new IllegalStateException(e);
+		}
+
+		return Id.build(material);
+	}
+}
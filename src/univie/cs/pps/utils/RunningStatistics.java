@@ -0,0 +1,390 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps.utils;
+
+/**
+ * Statistics of a set of values that is updated incrementally: values can be
+ * added, removed and replaced in constant time, and the count, mean, standard
+ * deviation and root-mean-square are available at any time in constant time.
+ * <p>
+ * The sums are kept relative to a shift, chosen by {@link #clear(double)}
+ * close to the expected mean, to avoid cancellation. Since the rounding errors
+ * of removed values are never cancelled exactly, {@link #isAccurate()} reports
+ * when the accumulated error becomes significant compared to the spread of the
+ * current values, in which case the statistics should be rebuilt from
+ * scratch.
+ * <p>
+ * The minimum and maximum are maintained as long as possible, but become
+ * unknown when a value equal to the minimum or maximum is removed or moved
+ * inwards, which in Push-Sum happens at almost every step. They are found
+ * again only when {@link #getMin()} or {@link #getMax()} is called, by asking
+ * the {@link ExtremesSource}, if one is set, to scan the current values. The
+ * other statistics do not depend on the extremes and stay accurate.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class RunningStatistics
+{
+	/**
+	 * The accepted ratio between the estimated rounding error and the sum of
+	 * squared deviations of the current values.
+	 */
+	private static final double TOLERANCE = 1e-9;
+
+	private static final double EPSILON = Math.ulp(1.);
+
+	private long n;
+	private double shift;
+	private double sum;
+	private double sumsq;
+	private double min;
+	private double max;
+	private boolean extremesKnown;
+	private ExtremesSource extremesSource;
+
+	private long updates;
+	private double maxSquare;
+
+	/**
+	 * Creates an empty instance, with a shift of 0.
+	 */
+	public RunningStatistics()
+	{
+		clear(0.);
+	}
+
+	/**
+	 * Removes all values and sets the shift for the values added thereafter.
+	 * 
+	 * @param shift
+	 *            a value close to the expected mean. The sums are kept for the
+	 *            differences between the values and the shift.
+	 */
+	public void clear(double shift)
+	{
+		this.shift = shift;
+
+		n = 0;
+		sum = 0.;
+		sumsq = 0.;
+		min = Double.NaN;
+		max = Double.NaN;
+		extremesKnown = true;
+
+		updates = 0;
+		maxSquare = 0.;
+	}
+
+	/**
+	 * Sets the source that finds the minimum and maximum when they became
+	 * unknown. It is kept by {@link #clear(double)}.
+	 */
+	public void setExtremesSource(ExtremesSource extremesSource)
+	{
+		this.extremesSource = extremesSource;
+	}
+
+	/**
+	 * Sets the minimum and maximum of the current values, as found by an
+	 * {@link ExtremesSource}.
+	 */
+	public void setExtremes(double min, double max)
+	{
+		this.min = min;
+		this.max = max;
+		extremesKnown = true;
+	}
+
+	/**
+	 * Adds a value.
+	 */
+	public void add(double x)
+	{
+		double d = x - shift;
+
+		n++;
+		sum += d;
+		sumsq += d * d;
+
+		track(d);
+
+		if (n == 1)
+		{
+			min = x;
+			max = x;
+		}
+		else
+		{
+			min = Math.min(min, x);
+			max = Math.max(max, x);
+		}
+	}
+
+	/**
+	 * Adds all values of another instance, for example to combine statistics
+	 * collected in parallel. The sums of the other instance are moved to the
+	 * shift of this instance.
+	 */
+	public void add(RunningStatistics other)
+	{
+		if (other.n == 0)
+		{
+			return;
+		}
+
+		double c = other.shift - shift;
+
+		findExtremes();
+		other.findExtremes();
+
+		if (n == 0)
+		{
+			min = other.min;
+			max = other.max;
+			extremesKnown = other.extremesKnown;
+		}
+		else
+		{
+			min = Math.min(min, other.min);
+			max = Math.max(max, other.max);
+			extremesKnown = extremesKnown && other.extremesKnown;
+		}
+
+		sum += other.sum + other.n * c;
+		sumsq += other.sumsq + 2 * c * other.sum + other.n * c * c;
+		n += other.n;
+
+		double maxD = Math.sqrt(other.maxSquare) + Math.abs(c);
+
+		updates += other.updates;
+		maxSquare = Math.max(maxSquare, maxD * maxD);
+	}
+
+	/**
+	 * Removes a value, which must have been added before.
+	 */
+	public void remove(double x)
+	{
+		if (n == 1)
+		{
+			clear(shift);
+			return;
+		}
+
+		double d = x - shift;
+
+		n--;
+		sum -= d;
+		sumsq -= d * d;
+
+		track(d);
+
+		if (x <= min || x >= max)
+		{
+			extremesKnown = false;
+		}
+	}
+
+	/**
+	 * Replaces a value, which must have been added before, with a new value.
+	 */
+	public void replace(double oldX, double newX)
+	{
+		if (oldX == newX)
+		{
+			return;
+		}
+
+		double oldD = oldX - shift;
+		double newD = newX - shift;
+
+		sum += newD - oldD;
+		sumsq += newD * newD - oldD * oldD;
+
+		track(oldD);
+		track(newD);
+
+		if (n == 1)
+		{
+			min = newX;
+			max = newX;
+			extremesKnown = true;
+		}
+		else
+		{
+			if ((oldX <= min && newX > oldX) || (oldX >= max && newX < oldX))
+			{
+				extremesKnown = false;
+			}
+
+			min = Math.min(min, newX);
+			max = Math.max(max, newX);
+		}
+	}
+
+	/**
+	 * Returns {@code false} if the rounding errors of the updates since the
+	 * last call of {@link #clear(double)} might be significant.
+	 */
+	public boolean isAccurate()
+	{
+		if (n < 2)
+		{
+			return true;
+		}
+
+		return EPSILON * updates * maxSquare <= TOLERANCE * (sumsq - sum * sum / n);
+	}
+
+	/**
+	 * Returns the number of values.
+	 */
+	public long getN()
+	{
+		return n;
+	}
+
+	/**
+	 * Returns the mean of the values, or {@code NaN} if there are none.
+	 */
+	public double getMean()
+	{
+		return n > 0 ? shift + sum / n : Double.NaN;
+	}
+
+	/**
+	 * Returns the sample variance of the values, or {@code NaN} if there are
+	 * none.
+	 */
+	public double getVariance()
+	{
+		if (n == 0)
+		{
+			return Double.NaN;
+		}
+		else if (n == 1)
+		{
+			return 0.;
+		}
+
+		return Math.max(0., (sumsq - sum * sum / n) / (n - 1));
+	}
+
+	/**
+	 * Returns the sample standard deviation of the values, or {@code NaN} if
+	 * there are none.
+	 */
+	public double getStandardDeviation()
+	{
+		return Math.sqrt(getVariance());
+	}
+
+	/**
+	 * Returns the root-mean-square of the values.
+	 */
+	public double getRMS()
+	{
+		return getRMS(0.);
+	}
+
+	/**
+	 * Returns the root-mean-square of the values minus {@code offset}.
+	 */
+	public double getRMS(double offset)
+	{
+		double c = shift - offset;
+
+		return Math.sqrt(Math.max(0., (sumsq + 2 * c * sum + n * c * c) / n));
+	}
+
+	/**
+	 * Returns the minimum of the values, or {@code NaN} if there are none or
+	 * the minimum is unknown and there is no {@link ExtremesSource}.
+	 */
+	public double getMin()
+	{
+		findExtremes();
+
+		return extremesKnown ? min : Double.NaN;
+	}
+
+	/**
+	 * Returns the maximum of the values, or {@code NaN} if there are none or
+	 * the maximum is unknown and there is no {@link ExtremesSource}.
+	 */
+	public double getMax()
+	{
+		findExtremes();
+
+		return extremesKnown ? max : Double.NaN;
+	}
+
+	/**
+	 * Returns a string of the following statistics of the values, in the
+	 * format of {@link FormattedStatistics}: count, minimum, maximum, mean,
+	 * standard deviation, and root-mean-square.
+	 */
+	@Override
+	public String toString()
+	{
+		return toString(0.);
+	}
+
+	/**
+	 * Returns a string of the statistics of the values minus {@code offset},
+	 * in the format of {@link FormattedStatistics}.
+	 */
+	public String toString(double offset)
+	{
+		return FormattedStatistics.format(n, getMin() - offset, getMax() - offset, getMean() - offset, getStandardDeviation(),
+				getRMS(offset));
+	}
+
+	private void findExtremes()
+	{
+		if (!extremesKnown && extremesSource != null)
+		{
+			extremesSource.findExtremes(this);
+		}
+	}
+
+	private void track(double d)
+	{
+		updates++;
+		maxSquare = Math.max(maxSquare, d * d);
+	}
+
+	/**
+	 * Finds the minimum and maximum of the current values of a
+	 * {@link RunningStatistics}, when they are needed but unknown.
+	 */
+	public interface ExtremesSource
+	{
+		/**
+		 * Scans the current values and passes their minimum and maximum to
+		 * {@link RunningStatistics#setExtremes(double, double)}.
+		 */
+		void findExtremes(RunningStatistics statistics);
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps.utils;
+
+/**
+ * An implementation of the {@link ValueReader} interface, replaying the
+ * recorded values of one column of a {@link ValueTraceFile}. Each call returns
+ * the value of the next row. After the last row, the last value is returned.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class TraceValueReader implements ValueReader
+{
+	private final ValueTraceFile trace;
+	private final int column;
+	private long row;
+
+	/**
+	 * @param trace
+	 *            the file with the recorded values.
+	 * @param column
+	 *            the column to replay.
+	 * @throws IndexOutOfBoundsException
+	 *             If the file has no such column.
+	 */
+	public TraceValueReader(ValueTraceFile trace, int column)
+	{
+		if (column < 0 || column >= trace.getColumns())
+		{
+			throw new IndexOutOfBoundsException("No column " + column + " in a trace of " + trace.getColumns() + " columns.");
+		}
+
+		this.trace = trace;
+		this.column = column;
+	}
+
+	@Override
+	public double getCurrentValue()
+	{
+		double value = trace.get(column, row);
+
+		if (row < trace.getRows() - 1)
+		{
+			row++;
+		}
+
+		return value;
+	}
+}
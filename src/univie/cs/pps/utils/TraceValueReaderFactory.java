@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps.utils;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A Factory for creating {@link TraceValueReader} instances, which replay the
+ * columns of a {@link ValueTraceFile} in order. If more readers than columns
+ * are created, the columns are used again from the first.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class TraceValueReaderFactory implements ValueReaderFactory
+{
+	private final ValueTraceFile trace;
+	private int next;
+
+	/**
+	 * Sets up a factory for the given value trace file.
+	 * 
+	 * @param file
+	 *            the value trace file, as created by
+	 *            {@link ValueTraceFile#convert(File, File)}.
+	 * @throws IOException
+	 *             If the file cannot be read or is not a value trace file.
+	 */
+	public TraceValueReaderFactory(File file) throws IOException
+	{
+		this.trace = new ValueTraceFile(file);
+	}
+
+	/**
+	 * Returns a new {@link TraceValueReader} for the next column.
+	 */
+	@Override
+	public ValueReader createValueReader()
+	{
+		ValueReader valueReader = new TraceValueReader(trace, next);
+		next = (next + 1) % trace.getColumns();
+
+		return valueReader;
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps.utils;
+
+import java.util.Arrays;
+
+/**
+ * A {@link ValueSource} to which a data source publishes its values, from any
+ * thread. The listener is only notified when the published values differ from
+ * the current values.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class ValuePublisher implements ValueSource
+{
+	private final double[] values;
+	private ValueListener listener;
+
+	/**
+	 * Creates a publisher with the given initial values.
+	 * 
+	 * @param initialValues
+	 *            the initial values, which also determine the dimension.
+	 * @throws IllegalArgumentException
+	 *             If no value is given.
+	 */
+	public ValuePublisher(double... initialValues)
+	{
+		if (initialValues.length == 0)
+		{
+			throw new IllegalArgumentException("At least one value is required.");
+		}
+
+		this.values = initialValues.clone();
+	}
+
+	/**
+	 * Sets the current values and notifies the listener, if any value has
+	 * changed. The listener is called on the current thread.
+	 * 
+	 * @param newValues
+	 *            the new values.
+	 * @throws IllegalArgumentException
+	 *             If the number of values differs from the dimension.
+	 */
+	public void publish(double... newValues)
+	{
+		ValueListener notify;
+
+		synchronized (this)
+		{
+			if (newValues.length != values.length)
+			{
+				throw new IllegalArgumentException("Expected " + values.length + " values, but got " + newValues.length + ".");
+			}
+
+			if (Arrays.equals(values, newValues))
+			{
+				return;
+			}
+
+			System.arraycopy(newValues, 0, values, 0, values.length);
+			notify = listener;
+		}
+
+		if (notify != null)
+		{
+			notify.valuesChanged(this);
+		}
+	}
+
+	@Override
+	public int getDimension()
+	{
+		return values.length;
+	}
+
+	/**
+	 * Returns a copy of the current values.
+	 */
+	@Override
+	public synchronized double[] getCurrentValues()
+	{
+		return values.clone();
+	}
+
+	@Override
+	public synchronized void setValueListener(ValueListener listener)
+	{
+		this.listener = listener;
+	}
+}
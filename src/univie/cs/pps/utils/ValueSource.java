@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps.utils;
+
+import univie.cs.pps.PastryPushSum;
+
+/**
+ * A {@link VectorValueReader} that notifies a listener when its values
+ * change, so that the values need not be polled.
+ * <p>
+ * A {@link PastryPushSum} node that is given a value source registers itself
+ * as the listener and reads the values only at the next step after a change.
+ * Changes between two steps are coalesced into one update. Since the node
+ * reads the values on its own thread, while the changes may be reported from
+ * any thread, {@link #getCurrentValues()} must be thread-safe and return an
+ * array that is not modified afterwards.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public interface ValueSource extends VectorValueReader
+{
+	/**
+	 * Sets the listener to notify about changes, replacing the previous
+	 * listener.
+	 * 
+	 * @param listener
+	 *            the listener, or {@code null} to stop notifying.
+	 */
+	void setValueListener(ValueListener listener);
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright (c) 2013 Faculty of Computer Science, University of Vienna
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package univie.cs.pps.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * A file of recorded values, with one column per node and one row per update
+ * interval, which is read through memory mapping, so that the values are not
+ * loaded onto the heap.
+ * <p>
+ * The values are stored column by column, so that the values of one node are
+ * contiguous:
+ * 
+ * <pre>
+ * int    magic
+ * int    version
+ * int    columns
+ * int    reserved, 0
+ * long   rows
+ * double value         (rows times for column 0, then for column 1, ...)
+ * </pre>
+ * 
+ * Since a single {@link MappedByteBuffer} is limited to 2 GB, the file is
+ * mapped in segments of 1 GB. Files are created from CSV files by
+ * {@link #convert(File, File)} or the {@link #main(String[])} method of this
+ * class.
+ * <p>
+ * Instances of this class are thread-safe for reading.
+ * 
+ * @author Dario Seidl
+ * 
+ */
+public class ValueTraceFile
+{
+	private static final int MAGIC = 0x50505354;
+	private static final int VERSION = 0;
+	private static final int HEADER_SIZE = 24;
+
+	private static final int SEGMENT_BITS = 30;
+	private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+	private final int columns;
+	private final long rows;
+	private final MappedByteBuffer[] segments;
+
+	/**
+	 * Converts a CSV file to a value trace file.
+	 * 
+	 * @param args
+	 *            the names of the CSV file and of the value trace file.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length != 2)
+		{
+			System.err.println("Usage: " + ValueTraceFile.class.getCanonicalName() + " <csv file> <value trace file>");
+			return;
+		}
+
+		ValueTraceFile trace = convert(new File(args[0]), new File(args[1]));
+
+		System.out.format("Converted %d rows of %d columns.%n", trace.getRows(), trace.getColumns());
+	}
+
+	/**
+	 * Converts a CSV file with one row per update interval and one column per
+	 * node to a value trace file. An optional first line with column names is
+	 * skipped, as are empty lines.
+	 * <p>
+	 * The CSV file is read twice, first to count the rows and columns, then to
+	 * write the values through the mapped output file, so that the conversion
+	 * does not hold the values in memory.
+	 * 
+	 * @param csv
+	 *            the CSV file to read.
+	 * @param file
+	 *            the value trace file to create, which is replaced if it
+	 *            exists.
+	 * @return the created file, opened for reading.
+	 * @throws IOException
+	 *             If a file cannot be read or written, a value is not a
+	 *             number, or the rows have different numbers of columns.
+	 */
+	public static ValueTraceFile convert(File csv, File file) throws IOException
+	{
+		// count rows and columns
+		int columns = -1;
+		long rows = 0;
+
+		BufferedReader in = new BufferedReader(new FileReader(csv));
+
+		try
+		{
+			boolean first = true;
+			String line;
+
+			while ((line = in.readLine()) != null)
+			{
+				String[] fields = split(line);
+
+				if (fields == null || (first && !isNumber(fields[0])))
+				{
+					first = false;
+					continue;
+				}
+
+				first = false;
+
+				if (columns >= 0 && fields.length != columns)
+				{
+					throw new IOException("Expected " + columns + " columns, but found " + fields.length + " in row " + rows + " of " + csv
+							+ ".");
+				}
+
+				columns = fields.length;
+				rows++;
+			}
+		}
+		finally
+		{
+			IOUtils.closeQuietly(in);
+		}
+
+		if (rows == 0)
+		{
+			throw new IOException("No values in " + csv + ".");
+		}
+
+		// write values
+		ValueTraceFile trace = new ValueTraceFile(file, columns, rows);
+
+		in = new BufferedReader(new FileReader(csv));
+
+		try
+		{
+			boolean first = true;
+			long row = 0;
+			String line;
+
+			while ((line = in.readLine()) != null)
+			{
+				String[] fields = split(line);
+
+				if (fields == null || (first && !isNumber(fields[0])))
+				{
+					first = false;
+					continue;
+				}
+
+				first = false;
+
+				for (int column = 0; column < columns; column++)
+				{
+					try
+					{
+						trace.put(column, row, Double.parseDouble(fields[column].trim()));
+					}
+					catch (NumberFormatException e)
+					{
+						throw new IOException("Not a number in row " + row + ", column " + column + " of " + csv + ": " + fields[column]);
+					}
+				}
+
+				row++;
+			}
+		}
+		finally
+		{
+			IOUtils.closeQuietly(in);
+		}
+
+		for (MappedByteBuffer segment : trace.segments)
+		{
+			segment.force();
+		}
+
+		return trace;
+	}
+
+	/**
+	 * Opens a value trace file for reading.
+	 * 
+	 * @param file
+	 *            the file to read.
+	 * @throws IOException
+	 *             If the file cannot be read or is not a value trace file.
+	 */
+	public ValueTraceFile(File file) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+		try
+		{
+			if (raf.length() < HEADER_SIZE || raf.readInt() != MAGIC || raf.readInt() != VERSION)
+			{
+				throw new IOException("Not a value trace file: " + file);
+			}
+
+			columns = raf.readInt();
+			raf.readInt();
+			rows = raf.readLong();
+
+			if (columns < 1 || rows < 1 || raf.length() != size(columns, rows))
+			{
+				throw new IOException("Invalid size of value trace file " + file + " for " + rows + " rows of " + columns + " columns.");
+			}
+
+			segments = map(raf.getChannel(), MapMode.READ_ONLY, raf.length());
+		}
+		finally
+		{
+			// the mapping stays valid after closing the file
+			IOUtils.closeQuietly(raf);
+		}
+	}
+
+	/**
+	 * Creates a new value trace file with all values set to 0.
+	 */
+	private ValueTraceFile(File file, int columns, long rows) throws IOException
+	{
+		this.columns = columns;
+		this.rows = rows;
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+		try
+		{
+			raf.setLength(0);
+			raf.setLength(size(columns, rows));
+
+			raf.writeInt(MAGIC);
+			raf.writeInt(VERSION);
+			raf.writeInt(columns);
+			raf.writeInt(0);
+			raf.writeLong(rows);
+
+			segments = map(raf.getChannel(), MapMode.READ_WRITE, raf.length());
+		}
+		finally
+		{
+			IOUtils.closeQuietly(raf);
+		}
+	}
+
+	/**
+	 * Returns the number of columns, that is, of recorded nodes.
+	 */
+	public int getColumns()
+	{
+		return columns;
+	}
+
+	/**
+	 * Returns the number of rows, that is, of values per node.
+	 */
+	public long getRows()
+	{
+		return rows;
+	}
+
+	/**
+	 * Returns the value at the given row of the given column.
+	 */
+	public double get(int column, long row)
+	{
+		long position = position(column, row);
+
+		return segments[(int) (position >>> SEGMENT_BITS)].getDouble((int) (position & SEGMENT_MASK));
+	}
+
+	private void put(int column, long row, double value)
+	{
+		long position = position(column, row);
+
+		segments[(int) (position >>> SEGMENT_BITS)].putDouble((int) (position & SEGMENT_MASK), value);
+	}
+
+	/**
+	 * Returns the position of a value in the file. Since the header and the
+	 * segments are multiples of 8 bytes, a value never spans two segments.
+	 */
+	private long position(int column, long row)
+	{
+		if (column < 0 || column >= columns || row < 0 || row >= rows)
+		{
+			throw new IndexOutOfBoundsException("No value at row " + row + " of column " + column + ".");
+		}
+
+		return HEADER_SIZE + (column * rows + row) * 8;
+	}
+
+	private static long size(int columns, long rows)
+	{
+		return HEADER_SIZE + columns * rows * 8;
+	}
+
+	private static MappedByteBuffer[] map(FileChannel channel, MapMode mode, long size) throws IOException
+	{
+		MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + SEGMENT_MASK) >>> SEGMENT_BITS)];
+
+		for (int i = 0; i < segments.length; i++)
+		{
+			long start = (long) i << SEGMENT_BITS;
+			segments[i] = channel.map(mode, start, Math.min(size - start, SEGMENT_MASK + 1));
+		}
+
+		return segments;
+	}
+
+	/**
+	 * Returns the comma-separated fields of a line, or {@code null} if the
+	 * line is empty.
+	 */
+	private static String[] split(String line)
+	{
+		return line.trim().isEmpty() ? null : line.split(",", -1);
+	}
+
+	private static boolean isNumber(String field)
+	{
+		try
+		{
+			Double.parseDouble(field.trim());
+			return true;
+		}
+		catch (NumberFormatException e)
+		{
+			return false;
+		}
+	}
+}